@@ -3,10 +3,13 @@ package com.example.claquetteai.Advice;
 import com.example.claquetteai.Api.ApiException;
 
 import com.example.claquetteai.Api.ApiResponse;
+import com.example.claquetteai.Api.ServiceUnavailableException;
+import com.example.claquetteai.Api.TooManyRequestsException;
 import jakarta.validation.UnexpectedTypeException;
 import org.springframework.http.HttpStatus;
 import com.fasterxml.jackson.core.io.JsonEOFException;
 import jakarta.validation.UnexpectedTypeException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.orm.jpa.JpaSystemException;
@@ -21,6 +24,7 @@ import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.servlet.resource.NoResourceFoundException;
 
 import java.sql.SQLIntegrityConstraintViolationException;
@@ -34,6 +38,22 @@ public class ControllerAdvice {
         return ResponseEntity.status(400).body(new ApiResponse(ex.getMessage()));
     }
 
+    // AI capacity exhausted: tell the client when to come back instead of holding the request
+    @ExceptionHandler(value = TooManyRequestsException.class)
+    public ResponseEntity<ApiResponse> TooManyRequestsException(TooManyRequestsException ex){
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ApiResponse(ex.getMessage()));
+    }
+
+    // OpenAI circuit breaker is open
+    @ExceptionHandler(value = ServiceUnavailableException.class)
+    public ResponseEntity<ApiResponse> ServiceUnavailableException(ServiceUnavailableException ex){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ApiResponse(ex.getMessage()));
+    }
+
     // Server Validation Exception
     @ExceptionHandler(value = MethodArgumentNotValidException.class)
     public ResponseEntity<ApiResponse> MethodArgumentNotValidException(MethodArgumentNotValidException e) {
@@ -111,6 +131,12 @@ public class ControllerAdvice {
         return ResponseEntity.status(400).body(new ApiResponse(IllegalArgumentException.getMessage()));
     }
 
+    // Refused by the multipart limits (spring.servlet.multipart.*) before the body is read
+    @ExceptionHandler(value = MaxUploadSizeExceededException.class)
+    public ResponseEntity<ApiResponse> MaxUploadSizeExceededException(MaxUploadSizeExceededException e){
+        return ResponseEntity.status(400).body(new ApiResponse("File too large"));
+    }
+
     @ExceptionHandler(value = NoResourceFoundException.class)
     public ResponseEntity<ApiResponse>NoResourceFoundException (NoResourceFoundException NoResourceFoundException){
         return ResponseEntity.status(400).body(new ApiResponse(NoResourceFoundException.getMessage()));
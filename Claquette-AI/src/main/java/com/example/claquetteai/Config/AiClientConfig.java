@@ -0,0 +1,100 @@
+package com.example.claquetteai.Config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One long-lived, pooled HTTP client for every call to the OpenAI API
+ * (chat completions, image generation and image downloads).
+ */
+@Configuration
+public class AiClientConfig {
+
+    @Value("${openai.base-url:https://api.openai.com}")
+    private String baseUrl;
+
+    @Value("${openai.client.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${openai.client.pending-acquire-max:200}")
+    private int pendingAcquireMax;
+
+    @Value("${openai.client.pending-acquire-timeout-seconds:30}")
+    private long pendingAcquireTimeoutSeconds;
+
+    @Value("${openai.client.max-idle-time-seconds:55}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${openai.client.max-life-time-seconds:600}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${openai.client.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${openai.client.read-timeout-seconds:180}")
+    private int readTimeoutSeconds;
+
+    @Value("${openai.client.write-timeout-seconds:30}")
+    private int writeTimeoutSeconds;
+
+    @Value("${openai.client.response-timeout-seconds:180}")
+    private long responseTimeoutSeconds;
+
+    @Value("${openai.client.http2-enabled:true}")
+    private boolean http2Enabled;
+
+    @Value("${openai.client.max-in-memory-size-mb:50}")
+    private int maxInMemorySizeMb;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider openAiConnectionProvider() {
+        return ConnectionProvider.builder("openai")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+                // Close idle sockets before the upstream load balancer does, so we never reuse a dead one
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(30))
+                // Exposes reactor.netty.connection.provider.* gauges (active, idle, pending) under /actuator/metrics
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient openAiWebClient(WebClient.Builder webClientBuilder, ConnectionProvider openAiConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(openAiConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds))
+                .doOnConnected(conn -> conn
+                        .addHandlerLast(new ReadTimeoutHandler(readTimeoutSeconds, TimeUnit.SECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(writeTimeoutSeconds, TimeUnit.SECONDS)))
+                // Keep the tag cardinality bounded: image download URLs are unique per call
+                .metrics(true, uri -> uri.startsWith("/v1/") ? uri : "/external");
+
+        // HTTP/2 needs TLS (ALPN); plain http base URLs (local stand-ins) stay on HTTP/1.1
+        if (http2Enabled && baseUrl.startsWith("https")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        return webClientBuilder.clone()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(maxInMemorySizeMb * 1024 * 1024))
+                .build();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.claquetteai.Config;
+
+import com.example.claquetteai.Model.FilmCharacters;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.Scene;
+import com.example.claquetteai.Service.CompanyStatsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps company_stats in step with the rows it counts. Inserts, updates and deletes of projects,
+ * characters and scenes are collected per session while the transaction runs (whichever service
+ * or cascade made them) and applied by Hibernate right before that transaction commits, after
+ * its last flush, so the statistics commit or roll back together with the change.
+ */
+@Component
+public class CompanyStatsListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    // Project fields the statistics are made from; a new poster or description changes nothing
+    private static final Set<String> COUNTED_FIELDS =
+            Set.of("status", "projectType", "genre", "budget", "startProjectDate", "episodeCount", "company");
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final CompanyStatsService companyStatsService;
+
+    // Changes of the transaction each session is in
+    private final Map<SessionImplementor, CompanyStatsService.Changes> pending = new ConcurrentHashMap<>();
+
+    public CompanyStatsListener(EntityManagerFactory entityManagerFactory, CompanyStatsService companyStatsService) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.companyStatsService = companyStatsService;
+    }
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getSession(), event.getEntity(), 1);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getSession(), event.getEntity(), -1);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Project project) || event.getDirtyProperties() == null) {
+            return;
+        }
+        String[] names = event.getPersister().getPropertyNames();
+        for (int index : event.getDirtyProperties()) {
+            if (COUNTED_FIELDS.contains(names[index])) {
+                Integer companyId = companyId(project);
+                if (companyId != null) {
+                    changes(event.getSession()).recount(companyId);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void changed(EventSource session, Object entity, int delta) {
+        if (entity instanceof Project project) {
+            Integer companyId = companyId(project);
+            if (companyId != null) {
+                changes(session).recount(companyId);
+            }
+        } else if (entity instanceof FilmCharacters character) {
+            Integer companyId = companyId(character.getProject());
+            if (companyId != null) {
+                changes(session).addCharacters(companyId, delta);
+            }
+        } else if (entity instanceof Scene scene && scene.getEpisode() != null) {
+            // Film scenes are not part of the scene count
+            Integer companyId = companyId(scene.getEpisode().getProject());
+            if (companyId != null) {
+                changes(session).addScenes(companyId, delta);
+            }
+        }
+    }
+
+    private CompanyStatsService.Changes changes(EventSource session) {
+        return pending.computeIfAbsent(session, key -> {
+            ActionQueue actions = session.getActionQueue();
+            actions.registerProcess((BeforeTransactionCompletionProcess) completing -> {
+                CompanyStatsService.Changes changes = pending.remove(key);
+                if (changes != null && !changes.isEmpty()) {
+                    companyStatsService.apply(changes);
+                    completing.flush();
+                }
+            });
+            // Rolled back, or failed before the step above ran
+            actions.registerProcess((AfterTransactionCompletionProcess) (success, completed) -> pending.remove(key));
+            return new CompanyStatsService.Changes();
+        });
+    }
+
+    private static Integer companyId(Project project) {
+        if (project == null || project.getCompany() == null) {
+            return null;
+        }
+        return project.getCompany().getId();
+    }
+}
@@ -43,8 +43,11 @@ public class ConfigSecurity {
                 // ADMIN only endpoints
                 .requestMatchers("/api/v1/company/companies",
                         "/api/v1/company/delete/**",
+                        "/api/v1/company/stats/rebuild",
                         "/api/v1/subscription/get",
-                        "/api/v1/project/get").hasAuthority("ADMIN")
+                        "/api/v1/project/get",
+                        "/api/v1/ai-route/**",
+                        "/actuator/**").hasAuthority("ADMIN")
 
                 // COMPANY only endpoints - Project Management
                 .requestMatchers("/api/v1/project/add",
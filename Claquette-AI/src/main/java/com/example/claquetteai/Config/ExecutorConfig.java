@@ -0,0 +1,96 @@
+package com.example.claquetteai.Config;
+
+import com.example.claquetteai.Service.AiCallLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bounded thread pools for background work. Their model calls wait for a limiter permit
+ * instead of timing out, see AiCallLimiter.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${generation.jobs.workers:4}")
+    private int generationWorkers;
+
+    @Value("${generation.jobs.queue-capacity:100}")
+    private int generationQueueCapacity;
+
+    @Value("${generation.stages.workers:8}")
+    private int stageWorkers;
+
+    @Value("${generation.episodes.parallelism:4}")
+    private int episodeParallelism;
+
+    @Value("${generation.episodes.queue-capacity:200}")
+    private int episodeQueueCapacity;
+
+    @Value("${generation.poster.workers:2}")
+    private int posterWorkers;
+
+    @Value("${generation.poster.queue-capacity:50}")
+    private int posterQueueCapacity;
+
+    // Runs screenplay generation jobs; the request thread only submits
+    @Bean(name = "generationJobExecutor")
+    public ThreadPoolTaskExecutor generationJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(generationWorkers);
+        executor.setMaxPoolSize(generationWorkers);
+        executor.setQueueCapacity(generationQueueCapacity);
+        executor.setThreadNamePrefix("generation-");
+        executor.setTaskDecorator(AiCallLimiter.backgroundTasks());
+        // Interrupted jobs stay RUNNING in the table and are picked up again on the next start
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Builds series episodes side by side for a generation; the width is shared by all running generations.
+    // When the queue is full the generation's own thread builds the episode instead of failing it.
+    @Bean(name = "episodeGenerationExecutor")
+    public ThreadPoolTaskExecutor episodeGenerationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, episodeParallelism));
+        executor.setMaxPoolSize(Math.max(1, episodeParallelism));
+        executor.setQueueCapacity(episodeQueueCapacity);
+        executor.setThreadNamePrefix("episode-");
+        executor.setTaskDecorator(AiCallLimiter.backgroundTasks());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Runs the stages of a generation that do not depend on the script (casting, poster)
+    // next to it. Small tasks, one or two per running generation.
+    @Bean(name = "generationStageExecutor")
+    public ThreadPoolTaskExecutor generationStageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, stageWorkers));
+        executor.setMaxPoolSize(Math.max(1, stageWorkers));
+        executor.setQueueCapacity(generationQueueCapacity);
+        executor.setThreadNamePrefix("generation-stage-");
+        executor.setTaskDecorator(AiCallLimiter.backgroundTasks());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Image model calls for posters; a full queue is reported to the client instead of blocking the request
+    @Bean(name = "posterExecutor")
+    public ThreadPoolTaskExecutor posterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, posterWorkers));
+        executor.setMaxPoolSize(Math.max(1, posterWorkers));
+        executor.setQueueCapacity(posterQueueCapacity);
+        executor.setThreadNamePrefix("poster-");
+        executor.setTaskDecorator(AiCallLimiter.backgroundTasks());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.claquetteai.Config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Scene, Episode, FilmCharacters and CastingRecommendation take their ids from the id_generator
+ * table instead of AUTO_INCREMENT. Rows created before that switch keep their ids, so on start
+ * every counter is moved past the highest existing id before anything is inserted.
+ * Runs once all singletons exist (the EntityManagerFactory has updated the schema by then) but
+ * before the context is refreshed, i.e. before Tomcat accepts requests and @Scheduled tasks
+ * start. An insert ahead of this would have Hibernate create a missing row at its initial value
+ * and hand out ids that are already taken.
+ */
+@Component
+public class IdGeneratorInitializer implements SmartInitializingSingleton {
+
+    // Same as allocationSize on the entities' @TableGenerator
+    private static final int ALLOCATION_SIZE = 50;
+
+    // id_generator row -> entity table
+    private static final Map<String, String> TABLES = Map.of(
+            "scene", "scene",
+            "episode", "episode",
+            "film_characters", "film_characters",
+            "casting_recommendation", "casting_recommendation"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdGeneratorInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        TABLES.forEach((entityName, table) -> {
+            // Never moves a counter backwards
+            jdbcTemplate.update("INSERT INTO id_generator (entity_name, next_val) "
+                    + "SELECT ?, COALESCE(MAX(id), 0) + ? + 1 FROM " + table + " "
+                    + "ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val))",
+                    entityName, ALLOCATION_SIZE);
+        });
+        System.out.println("Id generator counters checked for " + TABLES.keySet());
+    }
+}
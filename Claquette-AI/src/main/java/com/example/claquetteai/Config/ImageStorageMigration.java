@@ -0,0 +1,94 @@
+package com.example.claquetteai.Config;
+
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Service.ImageStorageService;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Posters and profile photos used to live base64 encoded in project.poster_image_base64 and
+ * user.profile_image_base64. On start, every row still holding an old image gets it moved to the
+ * image store and the old column cleared. Rows are read a few at a time by id, so a large table
+ * never has all of its images in memory at once. Once nothing is left the old columns can be dropped;
+ * a schema without them has nothing to migrate.
+ */
+@Component
+public class ImageStorageMigration implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 20;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImageStorageService imageStorageService;
+
+    public ImageStorageMigration(JdbcTemplate jdbcTemplate, ImageStorageService imageStorageService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.imageStorageService = imageStorageService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int posters = migrate("project", "poster_image_base64", null, "poster_id");
+        int photos = migrate("user", "profile_image_base64", "profile_image_content_type", "profile_image_id");
+        System.out.println("Image storage migration: " + posters + " posters, " + photos + " profile photos moved");
+    }
+
+    private int migrate(String table, String dataColumn, String typeColumn, String refColumn) {
+        String type = typeColumn != null ? typeColumn : "NULL";
+        int moved = 0;
+        int lastId = 0;
+        try {
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT id, " + dataColumn + " AS data, " + type + " AS content_type FROM " + table
+                                + " WHERE id > ? AND " + dataColumn + " IS NOT NULL ORDER BY id LIMIT " + BATCH_SIZE,
+                        lastId);
+                if (rows.isEmpty()) {
+                    return moved;
+                }
+                for (Map<String, Object> row : rows) {
+                    lastId = ((Number) row.get("id")).intValue();
+                    if (moveRow(table, dataColumn, refColumn, lastId, (String) row.get("data"), (String) row.get("content_type"))) {
+                        moved++;
+                    }
+                }
+            }
+        } catch (BadSqlGrammarException e) {
+            // The old column is gone (fresh or already cleaned schema)
+            return moved;
+        }
+    }
+
+    // A row that cannot be decoded keeps its old value and is reported; the others still move
+    private boolean moveRow(String table, String dataColumn, String refColumn, int id, String base64, String contentType) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getMimeDecoder().decode(base64);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Image storage migration: " + table + " " + id + " has an unreadable image, left as is");
+            return false;
+        }
+        if (bytes.length == 0) {
+            jdbcTemplate.update("UPDATE " + table + " SET " + dataColumn + " = NULL WHERE id = ?", id);
+            return false;
+        }
+        // Runs while the server is up: an image uploaded since the row was read wins over the old one,
+        // which is only dropped. COALESCE keeps that true for an upload between the check and the update.
+        Integer current = jdbcTemplate.queryForObject("SELECT " + refColumn + " FROM " + table + " WHERE id = ?",
+                Integer.class, id);
+        if (current != null) {
+            jdbcTemplate.update("UPDATE " + table + " SET " + dataColumn + " = NULL WHERE id = ?", id);
+            return false;
+        }
+        StoredImage image = imageStorageService.store(bytes, contentType);
+        jdbcTemplate.update("UPDATE " + table + " SET " + refColumn + " = COALESCE(" + refColumn + ", ?), "
+                + dataColumn + " = NULL WHERE id = ?", image.getId(), id);
+        return true;
+    }
+}
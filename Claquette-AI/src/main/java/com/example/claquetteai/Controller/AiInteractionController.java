@@ -1,8 +1,7 @@
 package com.example.claquetteai.Controller;
 
-import com.example.claquetteai.Api.ApiResponse;
 import com.example.claquetteai.Model.User;
-import com.example.claquetteai.Service.AiInteractionService;
+import com.example.claquetteai.Service.GenerationJobService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -13,13 +12,26 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class AiInteractionController {
 
-    private final AiInteractionService aiInteractionService;
+    private final GenerationJobService generationJobService;
 
     // Hussam
+    // Queues the generation and returns the job right away; poll the job endpoints for progress
     @PostMapping("/project/{projectId}")
     public ResponseEntity<?> generateScreenplay(@AuthenticationPrincipal User user,
-                                                @PathVariable Integer projectId) throws Exception {
-        aiInteractionService.generateFullScreenplay(projectId, user.getId());
-        return ResponseEntity.ok(new ApiResponse("Screenplay generated successfully"));
+                                                @PathVariable Integer projectId) {
+        return ResponseEntity.status(202).body(generationJobService.submit(user.getId(), projectId));
+    }
+
+    @GetMapping("/job/{jobId}")
+    public ResponseEntity<?> getJob(@AuthenticationPrincipal User user,
+                                    @PathVariable Integer jobId) {
+        return ResponseEntity.ok(generationJobService.getJob(user.getId(), jobId));
+    }
+
+    // Latest job of the project, for clients that lost the job id
+    @GetMapping("/project/{projectId}/job")
+    public ResponseEntity<?> getLatestProjectJob(@AuthenticationPrincipal User user,
+                                                 @PathVariable Integer projectId) {
+        return ResponseEntity.ok(generationJobService.getLatestProjectJob(user.getId(), projectId));
     }
 }
\ No newline at end of file
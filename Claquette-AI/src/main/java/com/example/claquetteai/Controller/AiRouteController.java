@@ -0,0 +1,36 @@
+package com.example.claquetteai.Controller;
+
+import com.example.claquetteai.Api.ApiResponse;
+import com.example.claquetteai.DTO.AiRouteDTOIN;
+import com.example.claquetteai.Service.AiRoutingService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/v1/ai-route")
+@RequiredArgsConstructor
+public class AiRouteController {
+
+    private final AiRoutingService aiRoutingService;
+
+    // ADMIN ONLY - Model routing table
+    @GetMapping("/get")
+    public ResponseEntity<?> getRoutes() {
+        return ResponseEntity.ok(aiRoutingService.getRoutes());
+    }
+
+    // ADMIN ONLY - Add or replace the route of a stage / plan; applies to the next call
+    @PutMapping("/save")
+    public ResponseEntity<?> saveRoute(@RequestBody @Valid AiRouteDTOIN dto) {
+        return ResponseEntity.ok(aiRoutingService.saveRoute(dto));
+    }
+
+    // ADMIN ONLY - Remove a route; the stage falls back to the ALL row or the defaults
+    @DeleteMapping("/delete/{id}")
+    public ResponseEntity<?> deleteRoute(@PathVariable Integer id) {
+        aiRoutingService.deleteRoute(id);
+        return ResponseEntity.ok(new ApiResponse("AI route deleted successfully"));
+    }
+}
@@ -33,8 +33,9 @@ public class CastingRecommendationController {
     // Hussam
     @PostMapping("/generate-casting/{projectId}")
     public ResponseEntity<?> generateCasting(@AuthenticationPrincipal User user,
-                                             @PathVariable Integer projectId) throws Exception {
-        castingService.generateCastingRecommendations(user.getId(), projectId);
+                                             @PathVariable Integer projectId,
+                                             @RequestParam(defaultValue = "false") boolean refresh) throws Exception {
+        castingService.generateCastingRecommendations(user.getId(), projectId, refresh);
         return ResponseEntity.ok(new ApiResponse("Casting recommendations generated successfully"));
     }
 }
\ No newline at end of file
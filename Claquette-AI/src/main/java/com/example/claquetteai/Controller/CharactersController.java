@@ -24,8 +24,9 @@ public class CharactersController {
     // Hussam
     @PostMapping("/generate-characters/{projectId}")
     public ResponseEntity<?> generateCharacters(@AuthenticationPrincipal User user,
-                                                @PathVariable Integer projectId) throws Exception {
-        characterService.generateCharacterOnly(user.getId(), projectId);
+                                                @PathVariable Integer projectId,
+                                                @RequestParam(defaultValue = "false") boolean refresh) throws Exception {
+        characterService.generateCharacterOnly(user.getId(), projectId, refresh);
         return ResponseEntity.ok(new ApiResponse("Characters generated successfully"));
     }
 
@@ -4,9 +4,12 @@ import com.example.claquetteai.Api.ApiResponse;
 import com.example.claquetteai.DTO.CompanyDTOIN;
 import com.example.claquetteai.Model.User;
 import com.example.claquetteai.Service.CompanyService;
+import com.example.claquetteai.Service.CompanyStatsService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -19,6 +22,7 @@ import org.springframework.web.multipart.MultipartFile;
 public class CompanyController {
 
     private final CompanyService companyService;
+    private final CompanyStatsService companyStatsService;
 
     // PUBLIC - No authentication required
     //  Mohammed Shamhani
@@ -37,6 +41,13 @@ public class CompanyController {
         return ResponseEntity.ok(new ApiResponse("Reset password email sent successfully"));
     }
 
+    // ADMIN ONLY - Recount every company's dashboard statistics (also runs nightly)
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<?> rebuildStats() {
+        int companies = companyStatsService.rebuildAll();
+        return ResponseEntity.ok(new ApiResponse("Statistics rebuilt for " + companies + " companies"));
+    }
+
     // ADMIN ONLY - Get all companies in system
     //  Mohammed Shamhani
     @GetMapping("/companies")
@@ -110,7 +121,9 @@ public class CompanyController {
             MediaType.IMAGE_PNG_VALUE,
             "image/webp"
     })
-    public ResponseEntity<byte[]> getProfile(@AuthenticationPrincipal User user) {
-        return companyService.getUserPhotoResponse(user.getId());
+    public ResponseEntity<Resource> getProfile(@AuthenticationPrincipal User user,
+                                               @RequestParam(required = false) Integer size,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return companyService.getUserPhotoResponse(user.getId(), size, ifNoneMatch);
     }
 }
\ No newline at end of file
@@ -3,9 +3,11 @@ package com.example.claquetteai.Controller;
 import com.example.claquetteai.Api.ApiResponse;
 import com.example.claquetteai.Model.Project;
 import com.example.claquetteai.Model.User;  // Your User entity
+import com.example.claquetteai.Service.PosterService;
 import com.example.claquetteai.Service.ProjectService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -19,6 +21,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ProjectController {
     private final ProjectService projectService;
+    private final PosterService posterService;
 
     // ADMIN only - get all projects in system
     @GetMapping("/get")
@@ -86,19 +89,36 @@ public class ProjectController {
 
     // COMPANY only - generate poster for their project
     // Hussam
+    // 202 with the poster status; poll /{projectId}/poster-status until it is COMPLETED
     @PostMapping("/generate-poster/{projectId}")
     public ResponseEntity<?> generateAIPoster(@AuthenticationPrincipal User user,
-                                              @PathVariable Integer projectId) throws Exception {
-        projectService.generateAndAttachPoster(user.getId(), projectId);
-        return ResponseEntity.ok(new ApiResponse("poster generated successfully"));
+                                              @PathVariable Integer projectId,
+                                              @RequestParam(defaultValue = "false") boolean regenerate) {
+        return ResponseEntity.status(202).body(posterService.submit(user.getId(), projectId, regenerate));
+    }
+
+    // COMPANY only - poster generation status: NONE, PENDING, COMPLETED or FAILED
+    @GetMapping("/{projectId}/poster-status")
+    public ResponseEntity<?> getPosterStatus(@AuthenticationPrincipal User user,
+                                             @PathVariable Integer projectId) {
+        return ResponseEntity.ok(posterService.getStatus(user.getId(), projectId));
     }
 
     // COMPANY only - get poster for their project
     // Hussam
-    @GetMapping(value = "/{projectId}/poster.png", produces = MediaType.IMAGE_PNG_VALUE)
+    // Served with the type it was stored with; generated posters are PNG.
+    // ?size=128|256|512 gives a thumbnail (the smallest one at least that large)
+    @GetMapping(value = "/{projectId}/poster.png", produces = {
+            MediaType.IMAGE_PNG_VALUE,
+            MediaType.IMAGE_JPEG_VALUE,
+            MediaType.IMAGE_GIF_VALUE,
+            "image/webp"
+    })
     public ResponseEntity<?> getPosterPng(@AuthenticationPrincipal User user,
-                                          @PathVariable Integer projectId) {
-        return projectService.getPosterPngResponse(user.getId(), projectId);
+                                          @PathVariable Integer projectId,
+                                          @RequestParam(required = false) Integer size,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return projectService.getPosterPngResponse(user.getId(), projectId, size, ifNoneMatch);
     }
 
     // COMPANY only - upload poster for their project
@@ -16,8 +16,10 @@ public class SceneController {
     // Hussam
     @GetMapping("/project/{projectId}")
     public ResponseEntity<?> scenes(@AuthenticationPrincipal User user,
-                                    @PathVariable Integer projectId) {
-        return ResponseEntity.ok(sceneService.getScenes(user.getId(), projectId));
+                                    @PathVariable Integer projectId,
+                                    @RequestParam(defaultValue = "0") int page,
+                                    @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(sceneService.getScenes(user.getId(), projectId, page, size));
     }
     // Hussam
     @GetMapping("/project/{projectId}/characters-count")
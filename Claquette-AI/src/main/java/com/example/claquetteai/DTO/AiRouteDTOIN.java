@@ -0,0 +1,42 @@
+package com.example.claquetteai.DTO;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class AiRouteDTOIN {
+
+    @NotEmpty(message = "Stage cannot be empty")
+    @Pattern(regexp = "CHARACTERS|EPISODE|FILM|CASTING|POSTER|OTHER",
+            message = "Stage must be: CHARACTERS, EPISODE, FILM, CASTING, POSTER or OTHER")
+    private String stage;
+
+    @NotEmpty(message = "Plan type cannot be empty")
+    @Pattern(regexp = "ALL|FREE|ADVANCED", message = "Plan type must be: ALL, FREE or ADVANCED")
+    private String planType;
+
+    @NotEmpty(message = "Model cannot be empty")
+    @Size(max = 50, message = "Model must be at most 50 characters")
+    private String model;
+
+    @DecimalMin(value = "0.0", message = "Temperature must be between 0 and 2")
+    @DecimalMax(value = "2.0", message = "Temperature must be between 0 and 2")
+    private Double temperature;
+
+    @Positive(message = "Max tokens must be positive")
+    private Integer maxTokens;
+
+    @Positive(message = "Timeout must be positive")
+    private Integer timeoutSeconds;
+}
@@ -0,0 +1,25 @@
+package com.example.claquetteai.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompanyStatsDTOOUT {
+    private Integer projectCount;
+    private Double totalBudget;
+    private Integer characterCount;
+    private Integer episodeCount;
+    private Integer sceneCount;
+    private Map<String, Long> statusCounts;
+    private Map<String, Long> typeCounts;
+    private Map<String, Long> genreCounts;
+    private Map<Integer, Long> yearCounts;
+    private Map<String, Double> averageBudgetByType;
+}
@@ -0,0 +1,27 @@
+package com.example.claquetteai.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationJobDTOOUT {
+    private Integer jobId;
+    private Integer projectId;
+    private String status;
+    private String stage;
+    private Integer completedSteps;
+    private Integer totalSteps;
+    private Integer progressPercent;
+    private Long elapsedSeconds;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,20 @@
+package com.example.claquetteai.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PosterStatusDTOOUT {
+    private Integer projectId;
+    // NONE, PENDING, COMPLETED or FAILED
+    private String status;
+    private String errorMessage;
+    private LocalDateTime requestedAt;
+}
@@ -0,0 +1,23 @@
+package com.example.claquetteai.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// One row of the dashboard aggregate: the user's projects sharing a status, type, genre and start year
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProjectGroupCountDTO {
+    private String status;
+    private String projectType;
+    private String genre;
+    private Integer startYear;
+    private Long projects;
+    // Sum of the budgets that are set, and how many are set, for averages
+    private Double budgetTotal;
+    private Long budgetedProjects;
+    private Long episodeTotal;
+}
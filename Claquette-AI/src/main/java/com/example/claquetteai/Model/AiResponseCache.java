@@ -0,0 +1,41 @@
+package com.example.claquetteai.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "idx_ai_response_cache_key", columnList = "cacheKey", unique = true))
+public class AiResponseCache {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    // SHA-256 of model + system prompt + user prompt + temperature
+    @Column(columnDefinition = "char(64) not null")
+    private String cacheKey;
+
+    @Column(columnDefinition = "varchar(50) not null")
+    private String model;
+
+    // Raw model output, gzip compressed
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(columnDefinition = "LONGBLOB not null")
+    private byte[] responseGzip;
+
+    @Column(columnDefinition = "int not null")
+    private Integer responseLength;
+
+    @Column(columnDefinition = "int default 0")
+    private Integer hitCount = 0;
+
+    // Set on every store, also when a refresh overwrites the row
+    @Column(columnDefinition = "datetime not null")
+    private LocalDateTime createdAt;
+}
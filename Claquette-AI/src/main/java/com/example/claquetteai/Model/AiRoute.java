@@ -0,0 +1,47 @@
+package com.example.claquetteai.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of the model routing table: which model serves a generation stage for a plan.
+ * planType ALL applies to every plan that has no row of its own.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_ai_route_stage_plan", columnNames = {"stage", "planType"}))
+public class AiRoute {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(columnDefinition = "varchar(20) not null")
+    private String stage;
+
+    @Column(columnDefinition = "varchar(20) not null")
+    private String planType;
+
+    @Column(columnDefinition = "varchar(50) not null")
+    private String model;
+
+    // Not sent when null (image models)
+    @Column
+    private Double temperature;
+
+    // Upper bound on max_completion_tokens; the token budget may still ask for less
+    @Column
+    private Integer maxTokens;
+
+    @Column
+    private Integer timeoutSeconds;
+
+    @UpdateTimestamp
+    @Column
+    private LocalDateTime updatedAt;
+}
@@ -18,7 +18,10 @@ import java.util.Set;
 @Entity
 public class CastingRecommendation {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids (50 per round trip) instead of IDENTITY so Hibernate can batch the inserts
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "casting_recommendation_id")
+    @TableGenerator(name = "casting_recommendation_id", table = "id_generator", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "casting_recommendation", allocationSize = 50)
     private Integer id;
 
     @NotEmpty(message = "Recommended actor name cannot be null")
@@ -0,0 +1,61 @@
+package com.example.claquetteai.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Dashboard figures of one company, kept up to date as its projects, characters and scenes change
+ * so a dashboard is one lookup by id. The breakdowns are small JSON objects (key -> count).
+ * Nothing reads it as the source of truth: it can always be rebuilt from the tables it counts.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "company_stats")
+public class CompanyStats {
+    // The company's id (which is its user's id); no foreign key, so the row never blocks a delete
+    @Id
+    private Integer companyId;
+
+    // Plain not-null columns: the counters are updated with arithmetic in JPQL (see CompanyStatsRepository)
+    @Column(nullable = false)
+    private Integer projectCount;
+
+    @Column(nullable = false)
+    private Double totalBudget;
+
+    @Column(nullable = false)
+    private Integer characterCount;
+
+    // Sum of the projects' episode counts
+    @Column(nullable = false)
+    private Integer episodeCount;
+
+    // Scenes of series episodes
+    @Column(nullable = false)
+    private Integer sceneCount;
+
+    @Column(columnDefinition = "text")
+    private String statusCounts;
+
+    @Column(columnDefinition = "text")
+    private String typeCounts;
+
+    @Column(columnDefinition = "text")
+    private String genreCounts;
+
+    @Column(columnDefinition = "text")
+    private String yearCounts;
+
+    @Column(columnDefinition = "text")
+    private String averageBudgetByType;
+
+    @UpdateTimestamp
+    @Column
+    private LocalDateTime updatedAt;
+}
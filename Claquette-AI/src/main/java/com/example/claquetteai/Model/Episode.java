@@ -18,7 +18,10 @@ import java.util.Set;
 @Entity
 public class Episode {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids (50 per round trip) instead of IDENTITY so Hibernate can batch the inserts
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "episode_id")
+    @TableGenerator(name = "episode_id", table = "id_generator", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "episode", allocationSize = 50)
     private Integer id;
 
     @NotNull(message = "Episode number cannot be null")
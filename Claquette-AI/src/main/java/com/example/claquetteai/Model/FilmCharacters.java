@@ -16,7 +16,10 @@ import java.util.Set;
 @Entity
 public class FilmCharacters {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids (50 per round trip) instead of IDENTITY so Hibernate can batch the inserts
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "film_characters_id")
+    @TableGenerator(name = "film_characters_id", table = "id_generator", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "film_characters", allocationSize = 50)
     private Integer id;
 
     @NotEmpty(message = "FilmCharacters name cannot be null")
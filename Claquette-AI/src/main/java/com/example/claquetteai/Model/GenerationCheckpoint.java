@@ -0,0 +1,35 @@
+package com.example.claquetteai.Model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row per finished stage of a screenplay generation (characters, film, episode N, casting).
+ * A failed run that is started again skips the stages recorded here.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_generation_checkpoint_stage", columnNames = {"project_id", "stage"}))
+public class GenerationCheckpoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(columnDefinition = "varchar(50) not null")
+    private String stage;
+
+    @CreationTimestamp
+    @Column
+    private LocalDateTime completedAt;
+
+    @ManyToOne
+    @JsonIgnore
+    private Project project;
+}
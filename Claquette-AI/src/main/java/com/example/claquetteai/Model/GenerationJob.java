@@ -0,0 +1,73 @@
+package com.example.claquetteai.Model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.Pattern;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "idx_generation_job_status", columnList = "status"))
+public class GenerationJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Pattern(regexp = "QUEUED|RUNNING|COMPLETED|FAILED", message = "Status must be: QUEUED, RUNNING, COMPLETED or FAILED")
+    @Column(columnDefinition = "varchar(20) not null")
+    private String status;
+
+    // characters, film, episode N, casting ...
+    @Column(columnDefinition = "varchar(50)")
+    private String stage;
+
+    @Column(columnDefinition = "int default 0")
+    private Integer completedSteps = 0;
+
+    @Column(columnDefinition = "int default 0")
+    private Integer totalSteps = 0;
+
+    @Column(columnDefinition = "int default 0")
+    private Integer attempts = 0;
+
+    @Column(columnDefinition = "text")
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column
+    private LocalDateTime createdAt;
+
+    @Column
+    private LocalDateTime startedAt;
+
+    @Column
+    private LocalDateTime finishedAt;
+
+    @UpdateTimestamp
+    @Column
+    private LocalDateTime updatedAt;
+
+    // Who submitted the job; the worker runs the generation on their behalf
+    @Column(columnDefinition = "int not null")
+    private Integer userId;
+
+    // The project id while the job is QUEUED or RUNNING, null once it finished: the unique key
+    // lets the database turn away a second active job for the same project
+    @Column(unique = true)
+    private Integer activeProjectId;
+
+    // Node that claimed the job, so a restarting node only takes back its own RUNNING jobs
+    @Column(columnDefinition = "varchar(100)")
+    private String nodeId;
+
+    @ManyToOne
+    @JsonIgnore
+    private Project project;
+}
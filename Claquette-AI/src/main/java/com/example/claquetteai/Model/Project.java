@@ -80,10 +80,28 @@ public class Project {
     @Column(columnDefinition = "int not null")
     private Integer episodeCount;
 
-    @Lob
-    @Basic(fetch = FetchType.LAZY)
-    @Column(columnDefinition = "longtext")
-    private String posterImageBase64;
+    // Bytes are on disk, see ImageStorageService
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JsonIgnore
+    private StoredImage poster;
+
+    // PENDING while a poster is being generated, then COMPLETED or FAILED; null when never requested
+    @Pattern(regexp = "PENDING|COMPLETED|FAILED", message = "Poster status must be: PENDING, COMPLETED or FAILED")
+    @Column(columnDefinition = "varchar(20)")
+    private String posterStatus;
+
+    @Column(columnDefinition = "varchar(500)")
+    @JsonIgnore
+    private String posterError;
+
+    @Column
+    @JsonIgnore
+    private LocalDateTime posterRequestedAt;
+
+    // Hash of the description the poster was generated from, see PosterService
+    @Column(columnDefinition = "char(64)")
+    @JsonIgnore
+    private String posterPromptSha256;
 
     @CreationTimestamp
     @Column
@@ -113,4 +131,12 @@ public class Project {
 
     @OneToMany(mappedBy = "project", cascade = CascadeType.ALL)
     private Set<CastingRecommendation> castingRecommendations;
+
+    @OneToMany(mappedBy = "project", cascade = CascadeType.REMOVE)
+    @JsonIgnore
+    private Set<GenerationJob> generationJobs;
+
+    @OneToMany(mappedBy = "project", cascade = CascadeType.REMOVE)
+    @JsonIgnore
+    private Set<GenerationCheckpoint> generationCheckpoints;
 }
\ No newline at end of file
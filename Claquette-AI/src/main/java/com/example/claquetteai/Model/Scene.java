@@ -15,7 +15,10 @@ import java.util.Set;
 @Entity
 public class Scene {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids (50 per round trip) instead of IDENTITY so Hibernate can batch the inserts
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "scene_id")
+    @TableGenerator(name = "scene_id", table = "id_generator", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "scene", allocationSize = 50)
     private Integer id;
 
     @Column(columnDefinition = "int")
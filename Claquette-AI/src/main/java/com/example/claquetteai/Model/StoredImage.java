@@ -0,0 +1,37 @@
+package com.example.claquetteai.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * An image file kept by ImageStorageService. The bytes live on disk under their SHA-256,
+ * this row only describes them; the same picture uploaded twice is stored once.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_stored_image_sha256", columnNames = "sha256"))
+public class StoredImage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    // Hex SHA-256 of the bytes, also the file name
+    @Column(columnDefinition = "char(64) not null")
+    private String sha256;
+
+    @Column(columnDefinition = "varchar(64) not null")
+    private String contentType;
+
+    @Column(columnDefinition = "bigint not null")
+    private Long sizeBytes;
+
+    @CreationTimestamp
+    @Column
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,38 @@
+package com.example.claquetteai.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A smaller copy of a stored image, made by ImageVariantService. The copy is a stored image of its
+ * own (own file, own hash); an original already small enough is its own variant.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_stored_image_variant", columnNames = {"original_id", "longest_side"}))
+public class StoredImageVariant {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "original_id")
+    private StoredImage original;
+
+    // Width or height, whichever is larger, in pixels
+    @Column(name = "longest_side", columnDefinition = "int not null")
+    private Integer longestSide;
+
+    @ManyToOne(optional = false)
+    private StoredImage image;
+
+    @CreationTimestamp
+    @Column
+    private LocalDateTime createdAt;
+}
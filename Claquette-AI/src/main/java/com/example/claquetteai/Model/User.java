@@ -52,12 +52,10 @@ public class User implements UserDetails {
     private String role;
 
 
-    @Lob @Basic(fetch = FetchType.LAZY)
-    @Column(columnDefinition = "LONGTEXT")
-    private String profileImageBase64;
-
-    @Column(length = 64)
-    private String profileImageContentType;
+    // Bytes are on disk, see ImageStorageService
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JsonIgnore
+    private StoredImage profileImage;
 
     private Integer useAI = 1;
 
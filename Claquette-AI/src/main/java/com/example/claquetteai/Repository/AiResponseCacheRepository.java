@@ -0,0 +1,22 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.AiResponseCache;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface AiResponseCacheRepository extends JpaRepository<AiResponseCache, Integer> {
+    AiResponseCache findAiResponseCacheByCacheKey(String cacheKey);
+
+    @Modifying
+    @Query("update AiResponseCache c set c.hitCount = c.hitCount + 1 where c.id = ?1")
+    void incrementHitCount(Integer id);
+
+    @Modifying
+    @Query("delete from AiResponseCache c where c.createdAt < ?1")
+    int deleteAiResponseCacheByCreatedAtBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,12 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.AiRoute;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AiRouteRepository extends JpaRepository<AiRoute, Integer> {
+    AiRoute findAiRouteById(Integer id);
+
+    AiRoute findAiRouteByStageAndPlanType(String stage, String planType);
+}
@@ -3,11 +3,17 @@ package com.example.claquetteai.Repository;
 import com.example.claquetteai.Model.Company;
 import com.example.claquetteai.Model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface CompanyRepository extends JpaRepository<Company, Integer> {
     Company findCompanyById(Integer id);
 
     Company findCompanyByUser(User user);
+
+    @Query("select c.id from Company c order by c.id")
+    List<Integer> findCompanyIds();
 }
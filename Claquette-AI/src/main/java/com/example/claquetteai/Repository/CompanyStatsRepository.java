@@ -0,0 +1,29 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.CompanyStats;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CompanyStatsRepository extends JpaRepository<CompanyStats, Integer> {
+    CompanyStats findCompanyStatsByCompanyId(Integer companyId);
+
+    // Holds the row until the transaction ends, so counter updates wait for a recount in progress
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from CompanyStats s where s.companyId = ?1")
+    CompanyStats findCompanyStatsForUpdate(Integer companyId);
+
+    // Applied in the database, so concurrent changes of the same company add up
+    @Modifying
+    @Query("update CompanyStats s set s.characterCount = s.characterCount + ?2, s.sceneCount = s.sceneCount + ?3, " +
+            "s.updatedAt = CURRENT_TIMESTAMP where s.companyId = ?1")
+    int addCounts(Integer companyId, int characters, int scenes);
+
+    @Modifying
+    @Query("delete from CompanyStats s where s.companyId not in (select c.id from Company c)")
+    int deleteCompanyStatsOfRemovedCompanies();
+}
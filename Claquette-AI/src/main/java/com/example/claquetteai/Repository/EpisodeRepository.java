@@ -21,4 +21,6 @@ public interface EpisodeRepository extends JpaRepository<Episode, Integer> {
     List<Episode> findByProjectIdOrderByEpisodeNumber(Integer projectId);
 
     List<Episode> findEpisodesByProjectIn(Collection<Project> projects);
+
+    boolean existsByProjectId(Integer projectId);
 }
@@ -0,0 +1,21 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.GenerationCheckpoint;
+import com.example.claquetteai.Model.Project;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface GenerationCheckpointRepository extends JpaRepository<GenerationCheckpoint, Integer> {
+    List<GenerationCheckpoint> findGenerationCheckpointsByProject(Project project);
+
+    boolean existsByProjectAndStage(Project project, String stage);
+
+    @Modifying
+    @Query("delete from GenerationCheckpoint c where c.project = ?1")
+    void deleteGenerationCheckpointsByProject(Project project);
+}
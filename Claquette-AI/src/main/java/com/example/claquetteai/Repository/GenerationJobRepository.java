@@ -0,0 +1,32 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.GenerationJob;
+import com.example.claquetteai.Model.Project;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface GenerationJobRepository extends JpaRepository<GenerationJob, Integer> {
+    GenerationJob findGenerationJobById(Integer id);
+
+    GenerationJob findTopByProjectOrderByIdDesc(Project project);
+
+    List<GenerationJob> findGenerationJobsByStatusInOrderByIdAsc(List<String> statuses);
+
+    // Atomically claims a queued job, so it never runs twice; a resumed job starts over from step 0
+    @Modifying
+    @Query("update GenerationJob j set j.status = 'RUNNING', j.startedAt = CURRENT_TIMESTAMP, j.attempts = j.attempts + 1, " +
+            "j.nodeId = ?2, j.completedSteps = 0 where j.id = ?1 and j.status = 'QUEUED'")
+    int claim(Integer id, String nodeId);
+
+    // Stages report from several threads at once: a report that arrives late never moves progress back.
+    // Bulk updates skip @UpdateTimestamp, and updatedAt tells a stale RUNNING job from a live one
+    @Modifying
+    @Query("update GenerationJob j set j.stage = ?2, j.completedSteps = ?3, j.totalSteps = ?4, j.updatedAt = CURRENT_TIMESTAMP " +
+            "where j.id = ?1 and j.completedSteps <= ?3")
+    int updateProgress(Integer id, String stage, int completedSteps, int totalSteps);
+}
@@ -1,9 +1,15 @@
 package com.example.claquetteai.Repository;
 
+import com.example.claquetteai.DTO.ProjectDTOOUT;
+import com.example.claquetteai.DTO.ProjectGroupCountDTO;
 import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.StoredImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -11,4 +17,45 @@ public interface ProjectRepository extends JpaRepository<Project, Integer> {
     Project findProjectById(Integer id);
 
     List<Project> findProjectsByCompany_User_Id(Integer companyUserId);
+
+    Integer countProjectsByCompany_User_Id(Integer companyUserId);
+
+    @Query("select coalesce(sum(p.budget), 0) from Project p where p.company.user.id = ?1")
+    Double sumBudgetByCompanyUserId(Integer companyUserId);
+
+    // Counts and budget totals of the user's projects in one grouped query; the service rolls the
+    // few rows up into the status, type, genre and year breakdowns
+    @Query("select new com.example.claquetteai.DTO.ProjectGroupCountDTO(p.status, p.projectType, p.genre, " +
+            "extract(year from p.startProjectDate), count(p), sum(p.budget), count(p.budget), sum(p.episodeCount)) " +
+            "from Project p where p.company.user.id = ?1 " +
+            "group by p.status, p.projectType, p.genre, extract(year from p.startProjectDate)")
+    List<ProjectGroupCountDTO> countProjectGroupsByCompanyUserId(Integer companyUserId);
+
+    @Query("select new com.example.claquetteai.DTO.ProjectDTOOUT(p.title, p.description, p.projectType, p.genre, p.budget, " +
+            "p.targetAudience, p.location, p.status, p.startProjectDate, p.endProjectDate) " +
+            "from Project p where p.company.user.id = ?1 order by p.startProjectDate desc")
+    List<ProjectDTOOUT> findProjectDTOsByCompanyUserIdOrderByStartDesc(Integer companyUserId);
+
+    // Hash of the poster when the project belongs to the user, without loading project or user
+    @Query("select p.poster.sha256 from Project p where p.id = ?1 and p.company.user.id = ?2")
+    String findPosterSha256(Integer projectId, Integer companyUserId);
+
+    // Marks a poster as requested unless one is already being generated; a request older than staleBefore was abandoned
+    @Modifying
+    @Query("update Project p set p.posterStatus = 'PENDING', p.posterError = null, p.posterRequestedAt = CURRENT_TIMESTAMP " +
+            "where p.id = ?1 and (p.posterStatus is null or p.posterStatus <> 'PENDING' or p.posterRequestedAt < ?2)")
+    int claimPoster(Integer projectId, LocalDateTime staleBefore);
+
+    @Modifying
+    @Query("update Project p set p.poster = ?2, p.posterPromptSha256 = ?3, p.posterStatus = 'COMPLETED', p.posterError = null " +
+            "where p.id = ?1")
+    int completePoster(Integer projectId, StoredImage poster, String promptSha256);
+
+    @Modifying
+    @Query("update Project p set p.posterStatus = 'FAILED', p.posterError = ?2 where p.id = ?1")
+    int failPoster(Integer projectId, String error);
+
+    // Posters the company already has for a description
+    @Query("select p.poster from Project p where p.company.id = ?1 and p.posterPromptSha256 = ?2 and p.poster is not null")
+    List<StoredImage> findPostersByPrompt(Integer companyId, String promptSha256);
 }
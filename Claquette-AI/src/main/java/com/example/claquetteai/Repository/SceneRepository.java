@@ -1,10 +1,13 @@
 package com.example.claquetteai.Repository;
 
+import com.example.claquetteai.DTO.SceneDTOOUT;
 import com.example.claquetteai.Model.Episode;
 import com.example.claquetteai.Model.Film;
 import com.example.claquetteai.Model.Project;
 import com.example.claquetteai.Model.Scene;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -19,4 +22,16 @@ public interface SceneRepository extends JpaRepository<Scene, Integer> {
     Scene findSceneById(Integer id);
 
     List<Scene> findScenesByEpisode(Episode episode);
+
+    // Every scene of a project (film or series) as its DTO in one statement; no entities, so the
+    // eager characters are never loaded. Film scenes have no episode, so those columns are null.
+    @Query("select new com.example.claquetteai.DTO.SceneDTOOUT(s.dialogue, e.episodeNumber, e.title) " +
+            "from Scene s left join s.episode e " +
+            "where e.project.id = :projectId or s.film.id = :projectId " +
+            "order by e.episodeNumber, s.sceneNumber, s.id")
+    List<SceneDTOOUT> findSceneDTOsByProjectId(Integer projectId, Pageable pageable);
+
+    // Episode scenes of all the user's series
+    @Query("select count(s) from Scene s where s.episode.project.company.user.id = ?1")
+    Integer countEpisodeScenesByCompanyUserId(Integer companyUserId);
 }
@@ -0,0 +1,10 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.StoredImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StoredImageRepository extends JpaRepository<StoredImage, Integer> {
+    StoredImage findStoredImageBySha256(String sha256);
+}
@@ -0,0 +1,15 @@
+package com.example.claquetteai.Repository;
+
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Model.StoredImageVariant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StoredImageVariantRepository extends JpaRepository<StoredImageVariant, Integer> {
+    StoredImageVariant findStoredImageVariantByOriginalAndLongestSide(StoredImage original, Integer longestSide);
+
+    @Query("select v.image.sha256 from StoredImageVariant v where v.original.sha256 = ?1 and v.longestSide = ?2")
+    String findVariantSha256(String originalSha256, Integer longestSide);
+}
@@ -3,6 +3,7 @@ package com.example.claquetteai.Repository;
 import com.example.claquetteai.Model.CompanySubscription;
 import com.example.claquetteai.Model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -11,4 +12,7 @@ public interface UserRepository extends JpaRepository<User, Integer> {
 
     User findUserByCompany_ActiveSubscription(CompanySubscription companyActiveSubscription);
     User findUserByEmail(String email);
+
+    @Query("select u.profileImage.sha256 from User u where u.id = ?1")
+    String findProfileImageSha256(Integer userId);
 }
@@ -0,0 +1,13 @@
+package com.example.claquetteai.Service;
+
+/**
+ * How a single model call uses the prompt/response cache
+ */
+public enum AiCacheMode {
+    // Return a cached answer when there is one, otherwise call the model and store the answer
+    DEFAULT,
+    // Skip the cache completely: always call the model and do not store the answer
+    BYPASS,
+    // Always call the model and overwrite whatever is cached for this prompt
+    REFRESH
+}
@@ -0,0 +1,244 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Api.TooManyRequestsException;
+import com.example.claquetteai.Model.CompanySubscription;
+import com.example.claquetteai.Repository.CompanySubscriptionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for outgoing model calls.
+ * A call needs one permit from its company (cap depends on the subscription plan) and one
+ * from the node-wide pool. At most queue-max callers may wait; beyond that, or after
+ * max-wait-seconds, the call is rejected with a 429 instead of blocking a Tomcat thread.
+ * Calls made by background work (threads of the pools decorated with backgroundTasks())
+ * wait for their permits as long as it takes: nobody is holding a request open for them,
+ * their number is bounded by the pools, and a generation job should not fail only because
+ * its own episodes hold the company's permits for longer than max-wait-seconds.
+ */
+@Service
+public class AiCallLimiter {
+
+    @FunctionalInterface
+    public interface AiCall<T> {
+        T call() throws Exception;
+    }
+
+    private static final ThreadLocal<Boolean> BACKGROUND = ThreadLocal.withInitial(() -> false);
+
+    private final CompanySubscriptionRepository companySubscriptionRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final Semaphore globalPermits;
+    private final int globalMax;
+    private final int queueMax;
+    private final long maxWaitMillis;
+    private final long retryAfterSeconds;
+    private final int freePlanMax;
+    private final int advancedPlanMax;
+    private final long planRefreshMillis;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Map<Integer, CompanyPermits> companyPermits = new ConcurrentHashMap<>();
+    private final Timer waitTimer;
+
+    private record CompanyPermits(Semaphore permits, String planType, long checkedAt) {
+    }
+
+    public AiCallLimiter(CompanySubscriptionRepository companySubscriptionRepository,
+                         MeterRegistry meterRegistry,
+                         @Value("${openai.limiter.global-max:16}") int globalMax,
+                         @Value("${openai.limiter.queue-max:64}") int queueMax,
+                         @Value("${openai.limiter.max-wait-seconds:60}") long maxWaitSeconds,
+                         @Value("${openai.limiter.retry-after-seconds:15}") long retryAfterSeconds,
+                         @Value("${openai.limiter.free-plan-max:1}") int freePlanMax,
+                         @Value("${openai.limiter.advanced-plan-max:4}") int advancedPlanMax,
+                         @Value("${openai.limiter.plan-refresh-seconds:60}") long planRefreshSeconds) {
+        this.companySubscriptionRepository = companySubscriptionRepository;
+        this.meterRegistry = meterRegistry;
+        this.globalPermits = new Semaphore(globalMax, true);
+        this.globalMax = globalMax;
+        this.queueMax = queueMax;
+        this.maxWaitMillis = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.freePlanMax = freePlanMax;
+        this.advancedPlanMax = advancedPlanMax;
+        this.planRefreshMillis = TimeUnit.SECONDS.toMillis(planRefreshSeconds);
+
+        Gauge.builder("ai.limiter.queue.depth", waiting, AtomicInteger::get)
+                .description("Model calls waiting for a permit")
+                .register(meterRegistry);
+        Gauge.builder("ai.limiter.active", globalPermits, s -> globalMax - s.availablePermits())
+                .description("Model calls in flight on this node")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("ai.limiter.wait")
+                .description("Time spent waiting for a permit")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Marks the tasks of an executor as background work for the limiter, see the class comment
+     */
+    public static TaskDecorator backgroundTasks() {
+        return task -> () -> {
+            boolean previous = BACKGROUND.get();
+            BACKGROUND.set(true);
+            try {
+                task.run();
+            } finally {
+                BACKGROUND.set(previous);
+            }
+        };
+    }
+
+    public <T> T run(Integer companyId, AiCall<T> call) throws Exception {
+        Semaphore company = companyId == null ? null : permitsFor(companyId);
+        boolean background = BACKGROUND.get();
+
+        if (waiting.incrementAndGet() > queueMax && !background) {
+            waiting.decrementAndGet();
+            throw reject("queue_full", "AI service is busy, please try again shortly");
+        }
+
+        boolean companyAcquired = false;
+        long start = System.nanoTime();
+        try {
+            if (company != null) {
+                if (background) {
+                    company.acquire();
+                } else if (!company.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                    throw reject("company_timeout", "Too many AI generations running for your company, please wait for one to finish");
+                }
+                companyAcquired = true;
+            }
+            long remaining = maxWaitMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (background) {
+                globalPermits.acquire();
+            } else if (!globalPermits.tryAcquire(Math.max(remaining, 0), TimeUnit.MILLISECONDS)) {
+                throw reject("global_timeout", "AI service is busy, please try again shortly");
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            if (companyAcquired) {
+                company.release();
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            return call.call();
+        } finally {
+            globalPermits.release();
+            if (company != null) {
+                company.release();
+            }
+        }
+    }
+
+    /**
+     * Takes a company and a node-wide permit only if both are free right now, for an extra
+     * request that is worth sending only when it does not have to wait (a hedge).
+     * Returns what gives them back, or null when there are none.
+     */
+    public Runnable tryAcquire(Integer companyId) {
+        Semaphore company = companyId == null ? null : permitsFor(companyId);
+        // Never ahead of a call that is already waiting
+        if (company != null && (company.hasQueuedThreads() || !company.tryAcquire())) {
+            return null;
+        }
+        if (globalPermits.hasQueuedThreads() || !globalPermits.tryAcquire()) {
+            if (company != null) {
+                company.release();
+            }
+            return null;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            // Cancel and error can both end the request that holds them
+            if (released.compareAndSet(false, true)) {
+                globalPermits.release();
+                if (company != null) {
+                    company.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Subscription plan of the company as last read by the limiter (FREE without a company).
+     * Shares the refresh interval of the per-company caps, so callers do not add a query per call.
+     */
+    public String planType(Integer companyId) {
+        return companyId == null ? "FREE" : companyPermits(companyId).planType();
+    }
+
+    /**
+     * Model calls the company may have in flight at once (the node-wide pool without a company).
+     * Background work sizes its fan-out from this, so its calls do not queue behind each other.
+     */
+    public int companyCap(Integer companyId) {
+        if (companyId == null) {
+            return globalMax;
+        }
+        return "ADVANCED".equals(planType(companyId)) ? advancedPlanMax : freePlanMax;
+    }
+
+    private Semaphore permitsFor(Integer companyId) {
+        return companyPermits(companyId).permits();
+    }
+
+    // Re-reads the plan now and then, so an upgrade takes effect without a restart
+    private CompanyPermits companyPermits(Integer companyId) {
+        long now = System.currentTimeMillis();
+        CompanyPermits current = companyPermits.get(companyId);
+        if (current != null && now - current.checkedAt() < planRefreshMillis) {
+            return current;
+        }
+
+        String planType = activePlan(companyId);
+        CompanyPermits updated = companyPermits.compute(companyId, (id, existing) -> {
+            if (existing != null && existing.planType().equals(planType)) {
+                return new CompanyPermits(existing.permits(), planType, now);
+            }
+            // In-flight calls still release into the semaphore they acquired from
+            int max = "ADVANCED".equals(planType) ? advancedPlanMax : freePlanMax;
+            return new CompanyPermits(new Semaphore(max, true), planType, now);
+        });
+        return updated;
+    }
+
+    private String activePlan(Integer companyId) {
+        CompanySubscription subscription = companySubscriptionRepository.findCompanySubscriptionById(companyId);
+        if (subscription == null || !"ACTIVE".equals(subscription.getStatus())) {
+            return "FREE";
+        }
+        return subscription.getPlanType();
+    }
+
+    private TooManyRequestsException reject(String reason, String message) {
+        Counter.builder("ai.limiter.rejected")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        System.out.println("AI call rejected (" + reason + "), waiting=" + waiting.get());
+        return new TooManyRequestsException(message, retryAfterSeconds);
+    }
+}
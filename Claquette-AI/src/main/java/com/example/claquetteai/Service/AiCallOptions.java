@@ -0,0 +1,39 @@
+package com.example.claquetteai.Service;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Per-call settings for AiClientService
+ */
+@Getter
+@Builder
+public class AiCallOptions {
+
+    // Company the call is made for; selects the per-company concurrency cap (null = no company cap)
+    private final Integer companyId;
+
+    @Builder.Default
+    private final AiCacheMode cacheMode = AiCacheMode.DEFAULT;
+
+    // Shape of the expected answer, sent as a strict response_format (null = free-form JSON)
+    private final AiResponseSchema responseSchema;
+
+    // Scenes the answer should contain; sizes max_completion_tokens (see AiTokenBudget)
+    private final Integer expectedScenes;
+
+    // Part of the prompt that may be shortened when prompt + answer exceed the context window
+    private final String context;
+
+    public static AiCallOptions defaults() {
+        return AiCallOptions.builder().build();
+    }
+
+    public static AiCallOptions forCompany(Integer companyId) {
+        return AiCallOptions.builder().companyId(companyId).build();
+    }
+
+    public static AiCallOptions forCompany(Integer companyId, AiResponseSchema responseSchema) {
+        return AiCallOptions.builder().companyId(companyId).responseSchema(responseSchema).build();
+    }
+}
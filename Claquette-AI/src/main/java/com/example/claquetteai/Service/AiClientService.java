@@ -1,16 +1,33 @@
 package com.example.claquetteai.Service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
@@ -19,37 +36,85 @@ public class AiClientService {
     @Value("${spring.ai.openai.api-key}")
     private String API_KEY;
 
-    private static final String ENDPOINT = "https://api.openai.com/v1/chat/completions";
+    private static final String CHAT_COMPLETIONS_PATH = "/v1/chat/completions";
+    // Model, temperature, max_tokens and timeout come from the stage's route (AiRoutingService)
+    private static final String SYSTEM_PROMPT = "You are a professional Saudi screenwriter. CRITICAL RULES: 1) Return ONLY valid JSON. 2) 'assumptions' must be an ARRAY of strings, not an object. 3) No explanations, no markdown, no code blocks. 4) Start with { and end with }. 5) No trailing commas.";
+    // The response_format enforces the shape, so the formatting rules above are not needed
+    private static final String STRUCTURED_SYSTEM_PROMPT = "You are a professional Saudi screenwriter.";
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    // Free-form answers may still carry a trailing comma; the parsers accept it instead of a regex pass
+    private final ObjectMapper mapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_TRAILING_COMMA).build();
 
-    // Inject WebClient.Builder via Spring Boot
-    private final WebClient.Builder webClientBuilder;
+    // Send AiCallOptions.responseSchema as a strict json_schema response_format
+    @Value("${openai.structured-output.enabled:true}")
+    private boolean structuredOutputEnabled;
+
+    // Shared pooled client, see AiClientConfig
+    private final WebClient openAiWebClient;
+
+    private final AiResponseCacheService aiResponseCacheService;
+
+    private final AiCallLimiter aiCallLimiter;
+
+    private final AiResilienceService aiResilienceService;
+
+    private final AiTokenBudget aiTokenBudget;
+
+    private final AiRoutingService aiRoutingService;
+
+    private final AiExchangeRecorder aiExchangeRecorder;
 
     public String askModel(String prompt) throws Exception {
-        // Build the request body
-        String requestBody = """
-        {
-          "model": "gpt-4.1-mini",
-          "messages": [
-            {"role": "system", "content": "You are a professional Saudi screenwriter. CRITICAL RULES: 1) Return ONLY valid JSON. 2) 'assumptions' must be an ARRAY of strings, not an object. 3) No explanations, no markdown, no code blocks. 4) Start with { and end with }. 5) No trailing commas."},
-            {"role": "user", "content": %s}
-          ],
-          "temperature": 0.7
+        return askModel(prompt, AiCallOptions.defaults());
+    }
+
+    public String askModel(String prompt, AiCallOptions options) throws Exception {
+        AiResponseSchema schema = responseSchema(options);
+        AiRoutingService.Route route = aiRoutingService.route(AiStage.of(options.getResponseSchema()), options.getCompanyId());
+        AiTokenBudget.Plan plan = aiTokenBudget.plan(systemPrompt(schema), prompt, options, route);
+        AiCacheMode cacheMode = options.getCacheMode();
+        boolean useCache = aiResponseCacheService.isEnabled() && cacheMode != AiCacheMode.BYPASS;
+        String cacheKey = useCache ? cacheKey(route, schema, plan) : null;
+
+        if (useCache && cacheMode == AiCacheMode.DEFAULT) {
+            String cached = aiResponseCacheService.get(cacheKey);
+            if (cached != null) {
+                System.out.println("AI cache hit (" + cached.length() + " chars)");
+                return schema != null ? cached : sanitizeJson(cached);
+            }
         }
-        """.formatted(mapper.writeValueAsString(prompt));
+
+        // Cache hits above do not take a permit; each attempt takes its own, so none is held across a retry backoff
+        String aiContent = aiResilienceService.execute("chat",
+                () -> aiCallLimiter.run(options.getCompanyId(), () -> callModel(route, plan, schema, options.getCompanyId())));
+        // A schema-constrained answer is the JSON document itself
+        String json = schema != null ? aiContent : sanitizeJson(aiContent);
+
+        if (useCache && isValidJson(json)) {
+            aiResponseCacheService.put(cacheKey, route.model(), aiContent);
+        }
+        return json;
+    }
+
+    private String callModel(AiRoutingService.Route route, AiTokenBudget.Plan plan, AiResponseSchema schema,
+                             Integer companyId) throws Exception {
+        // Build the request body
+        String requestBody = chatRequestBody(route, plan, false, schema);
 
         // Use WebClient to call OpenAI
-        String responseBody = webClientBuilder
-                .baseUrl(ENDPOINT)
-                .build()
+        Mono<String> request = openAiWebClient
                 .post()
+                .uri(CHAT_COMPLETIONS_PATH)
                 .contentType(MediaType.APPLICATION_JSON)
-                .header("Authorization", "Bearer " + API_KEY)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + API_KEY)
                 .bodyValue(requestBody)
                 .retrieve()
-                .bodyToMono(String.class)   // reactive -> returns Mono<String>
-                .block();                  // block to make it sync
+                .bodyToMono(String.class)  // reactive -> returns Mono<String>
+                .timeout(route.timeout());
+
+        // Hedged when enabled; block to make it sync
+        long start = System.currentTimeMillis();
+        String responseBody = timed(route, () -> aiResilienceService.hedged(companyId, request).block());
 
         // Parse the response JSON
         JsonNode responseJson = mapper.readTree(responseBody);
@@ -68,139 +133,305 @@ public class AiClientService {
             throw new RuntimeException("No message in OpenAI choice");
         }
 
-        String aiContent = message.get("content").asText();
-        if (aiContent == null || aiContent.trim().isEmpty()) {
+        // With a response_format the model either follows the schema or refuses
+        if (message.path("refusal").isTextual()) {
+            throw new RuntimeException("AI refused the request: " + message.path("refusal").asText());
+        }
+
+        String finishReason = choices.get(0).path("finish_reason").asText(null);
+        aiTokenBudget.recordUsage(plan, responseJson.get("usage"), finishReason);
+
+        // Missing or null content (content_filter stop, tool call) is not an answer, so it is neither recorded nor cached
+        JsonNode content = message.path("content");
+        if (!content.isTextual()) {
+            throw new RuntimeException("No text content in AI response (finish_reason: " + finishReason + ")");
+        }
+        String aiContent = content.asText();
+        if (aiContent.trim().isEmpty()) {
             throw new RuntimeException("Empty content in AI response");
         }
+        aiExchangeRecorder.recordChat(requestBody, aiContent, responseJson.get("usage"), finishReason,
+                System.currentTimeMillis() - start);
 
-        return sanitizeJson(aiContent);
+        return aiContent;
     }
 
-    private String sanitizeJson(String raw) {
-        String cleaned = raw.trim();
+    /**
+     * Streams a chat completion (SSE) and hands every content delta to the consumer as it arrives.
+     * Deltas are delivered on the calling thread, so the consumer may use JPA repositories.
+     */
+    public void streamModel(String prompt, Consumer<String> onDelta) throws Exception {
+        streamModel(prompt, AiCallOptions.defaults(), onDelta);
+    }
+
+    public void streamModel(String prompt, AiCallOptions options, Consumer<String> onDelta) throws Exception {
+        AiResponseSchema schema = responseSchema(options);
+        AiRoutingService.Route route = aiRoutingService.route(AiStage.of(options.getResponseSchema()), options.getCompanyId());
+        AiTokenBudget.Plan plan = aiTokenBudget.plan(systemPrompt(schema), prompt, options, route);
+        AiCacheMode cacheMode = options.getCacheMode();
+        boolean useCache = aiResponseCacheService.isEnabled() && cacheMode != AiCacheMode.BYPASS;
+        String cacheKey = useCache ? cacheKey(route, schema, plan) : null;
+
+        if (useCache && cacheMode == AiCacheMode.DEFAULT) {
+            String cached = aiResponseCacheService.get(cacheKey);
+            if (cached != null) {
+                System.out.println("AI cache hit (" + cached.length() + " chars), replaying as one chunk");
+                onDelta.accept(cached);
+                return;
+            }
+        }
+
+        // Only kept when the answer is going to be cached
+        StringBuilder full = useCache ? new StringBuilder() : null;
+        // A stream is only retried while nothing has reached the consumer yet
+        AtomicBoolean delivered = new AtomicBoolean();
+        Consumer<String> trackingConsumer = delta -> {
+            delivered.set(true);
+            onDelta.accept(delta);
+        };
+        aiResilienceService.execute("chat-stream", () -> aiCallLimiter.run(options.getCompanyId(), () -> {
+            return timed(route, () -> {
+                streamDeltas(route, plan, schema, full, trackingConsumer);
+                return null;
+            });
+        }), () -> !delivered.get());
+
+        if (full != null && isValidJson(schema != null ? full.toString() : sanitizeJson(full.toString()))) {
+            aiResponseCacheService.put(cacheKey, route.model(), full.toString());
+        }
+    }
+
+    // The permit is held for the whole stream, so a slow consumer counts against the caps
+    private void streamDeltas(AiRoutingService.Route route, AiTokenBudget.Plan plan, AiResponseSchema schema,
+                              StringBuilder full, Consumer<String> onDelta) throws Exception {
+        String requestBody = chatRequestBody(route, plan, true, schema);
+        StringBuilder recorded = aiExchangeRecorder.isEnabled() ? new StringBuilder() : null;
+        long start = System.currentTimeMillis();
+
+        Iterable<String> events = openAiWebClient
+                .post()
+                .uri(CHAT_COMPLETIONS_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + API_KEY)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                // Per chunk: a long answer may stream for minutes, a stalled one is cut off
+                .timeout(route.timeout())
+                .mapNotNull(ServerSentEvent::data)
+                .takeWhile(data -> !"[DONE]".equals(data.trim()))
+                .toIterable();
+
+        // Usage arrives in a last chunk without choices (stream_options.include_usage)
+        JsonNode usage = null;
+        String finishReason = null;
+        for (String data : events) {
+            JsonNode chunk = mapper.readTree(data);
+            if (chunk.has("error")) {
+                throw new RuntimeException("OpenAI API Error: " + chunk.path("error").path("message").asText());
+            }
+            if (chunk.path("usage").isObject()) {
+                usage = chunk.get("usage");
+            }
+            if (chunk.path("choices").path(0).path("finish_reason").isTextual()) {
+                finishReason = chunk.path("choices").path(0).path("finish_reason").asText();
+            }
+            JsonNode delta = chunk.path("choices").path(0).path("delta").path("content");
+            if (delta.isTextual()) {
+                if (full != null) {
+                    full.append(delta.asText());
+                }
+                if (recorded != null) {
+                    recorded.append(delta.asText());
+                }
+                onDelta.accept(delta.asText());
+            }
+        }
+        aiTokenBudget.recordUsage(plan, usage, finishReason);
+        if (recorded != null) {
+            aiExchangeRecorder.recordChat(requestBody, recorded.toString(), usage, finishReason,
+                    System.currentTimeMillis() - start);
+        }
+    }
 
-        if (cleaned.startsWith("```")) {
-            cleaned = cleaned.replaceAll("(?s)```(json)?", "").trim();
+    private String chatRequestBody(AiRoutingService.Route route, AiTokenBudget.Plan plan, boolean stream,
+                                   AiResponseSchema schema) throws Exception {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("model", route.model());
+        body.putArray("messages")
+                .add(mapper.createObjectNode().put("role", "system").put("content", systemPrompt(schema)))
+                .add(mapper.createObjectNode().put("role", "user").put("content", plan.prompt()));
+        if (route.temperature() != null) {
+            body.put("temperature", route.temperature());
         }
-        if (cleaned.endsWith("```")) {
-            cleaned = cleaned.substring(0, cleaned.length() - 3).trim();
+        if (plan.maxTokens() != null) {
+            // max_completion_tokens replaces the deprecated max_tokens
+            body.put("max_completion_tokens", plan.maxTokens());
         }
+        body.put("stream", stream);
+        if (stream) {
+            body.putObject("stream_options").put("include_usage", true);
+        }
+        if (schema != null) {
+            ObjectNode jsonSchema = body.putObject("response_format")
+                    .put("type", "json_schema")
+                    .putObject("json_schema");
+            jsonSchema.put("name", schema.getName());
+            jsonSchema.put("strict", true);
+            jsonSchema.set("schema", schema.getSchema());
+        }
+        return mapper.writeValueAsString(body);
+    }
 
-        int firstBrace = cleaned.indexOf('{');
-        int lastBrace = cleaned.lastIndexOf('}');
+    private String systemPrompt(AiResponseSchema schema) {
+        return schema != null ? STRUCTURED_SYSTEM_PROMPT : SYSTEM_PROMPT;
+    }
+
+    private AiResponseSchema responseSchema(AiCallOptions options) {
+        return structuredOutputEnabled ? options.getResponseSchema() : null;
+    }
+
+    // Keyed by the routed model and temperature, so switching a route does not serve the old model's answers
+    private String cacheKey(AiRoutingService.Route route, AiResponseSchema schema, AiTokenBudget.Plan plan) {
+        return aiResponseCacheService.key(route.model(), cacheContext(schema), plan.prompt(),
+                route.temperature() == null ? 0 : route.temperature());
+    }
+
+    // The same prompt answered with and without a schema must not share a cache entry
+    private String cacheContext(AiResponseSchema schema) {
+        return schema == null ? SYSTEM_PROMPT : STRUCTURED_SYSTEM_PROMPT + "\nresponse_format:" + schema.getName();
+    }
+
+    // Truncated or broken answers are not cached, so a retry gets a fresh completion
+    private boolean isValidJson(String json) {
+        try {
+            mapper.readTree(json);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // Free-form answers only: cuts the JSON object out of a markdown fence or surrounding prose
+    private String sanitizeJson(String raw) {
+        int firstBrace = raw.indexOf('{');
+        int lastBrace = raw.lastIndexOf('}');
         if (firstBrace == -1 || lastBrace == -1 || firstBrace >= lastBrace) {
             throw new RuntimeException("No valid JSON object found in AI response");
         }
+        return raw.substring(firstBrace, lastBrace + 1);
+    }
 
-        cleaned = cleaned.substring(firstBrace, lastBrace + 1);
-        cleaned = fixCommonJsonIssues(cleaned);
 
-        if (!cleaned.startsWith("{") || !cleaned.endsWith("}")) {
-            throw new RuntimeException("Invalid JSON format from AI");
-        }
+    /**
+     * Generates an image and hands it to the sink as a writer of its raw bytes: base64 answers are
+     * decoded straight from the response text, URL answers are streamed from the download, so the
+     * sink can write the image to storage without another copy in memory
+     */
+    public <T> T generatePhoto(String prompt, AiCallOptions options, PhotoSink<T> sink) throws Exception {
+        AiRoutingService.Route route = aiRoutingService.route(AiStage.POSTER, options.getCompanyId());
+        return aiResilienceService.execute("image",
+                () -> aiCallLimiter.run(options.getCompanyId(), () -> timed(route, () -> requestPhoto(route, prompt, sink))));
+    }
 
-        return cleaned;
+    @FunctionalInterface
+    public interface PhotoSink<T> {
+        T accept(ImageStorageService.ImageWriter photo) throws Exception;
     }
 
-    private String fixCommonJsonIssues(String json) {
-        if (json.contains("\"assumptions\": {")) {
-            json = json.replaceAll("\"assumptions\"\\s*:\\s*\\{[^}]*\\}", "\"assumptions\": []");
+    // Latency of one attempt, per route
+    private <T> T timed(AiRoutingService.Route route, AiCallLimiter.AiCall<T> call) throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.call();
+            success = true;
+            return result;
+        } finally {
+            aiRoutingService.recordLatency(route, System.nanoTime() - start, success);
         }
-        json = json.replaceAll(",\\s*([}\\]])", "$1");
-        return json;
     }
 
-
-    public String generatePhoto(String prompt) throws Exception {
+    private <T> T requestPhoto(AiRoutingService.Route route, String prompt, PhotoSink<T> sink) throws Exception {
         // Build request body for Images API
         // Build payload as a Map -> Jackson serializes reliably
         Map<String, Object> payload = new HashMap<>();
-        payload.put("model", "dall-e-3");
+        payload.put("model", route.model());
         payload.put("prompt", "you are saudi designer in saudi arabia you will generate photo using your mind as Saudi with all roles of Saudi to generate a photo using this description make it with saudi inspiration: "+prompt);
         payload.put("size", "1024x1024");
         payload.put("n", 1);
         payload.put("response_format", "b64_json");
-
-        // WebClient with baseUrl = https://api.openai.com
-        WebClient client = webClientBuilder
-                .baseUrl("https://api.openai.com")
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + API_KEY)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .codecs(c -> c.defaultCodecs().maxInMemorySize(50 * 1024 * 1024)) // 50MB
-                .build();
-
+        long start = System.currentTimeMillis();
 
         // Try /v1/images first
+        String path = "/v1/images";
+        String resp;
         try {
-            String resp = client.post()
-                    .uri("/v1/images")
-                    .bodyValue(payload) // ✅ no manual JSON strings
-                    .retrieve()
-                    .onStatus(
-                            s -> s.is4xxClientError() || s.is5xxServerError(),
-                            r -> r.bodyToMono(String.class).map(msg ->
-                                    new RuntimeException("OpenAI error (" + r.statusCode() + "): " + msg))
-                    )
-                    .bodyToMono(String.class)
-                    .block();
-            return extractB64OrUrl(resp);
-        } catch (RuntimeException ex) {
-            // If it's not a 404, bubble up
-            if (!String.valueOf(ex.getMessage()).contains("404")) throw ex;
+            resp = postImageRequest(path, payload, route);
+        } catch (WebClientResponseException.NotFound ex) {
+            // Endpoint not available, use the fallback below
+            path = "/v1/images/generations";
+            resp = postImageRequest(path, payload, route);
         }
+        aiExchangeRecorder.recordImage(path, mapper.writeValueAsString(payload), resp,
+                System.currentTimeMillis() - start);
+        return sink.accept(photoWriter(resp, route));
+    }
 
-        // Fallback: /v1/images/generations
-        String resp = client.post()
-                .uri("/v1/images/generations")
-                .bodyValue(payload) // ✅ same payload
+    private String postImageRequest(String path, Map<String, Object> payload, AiRoutingService.Route route) {
+        return openAiWebClient.post()
+                .uri(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + API_KEY)
+                .bodyValue(payload) // ✅ no manual JSON strings
                 .retrieve()
-                .onStatus(
-                        s -> s.is4xxClientError() || s.is5xxServerError(),
-                        r -> r.bodyToMono(String.class).map(msg ->
-                                new RuntimeException("OpenAI error (" + r.statusCode() + "): " + msg))
-                )
+                // Keep status and headers on the exception so retries can read retry-after
+                .onStatus(HttpStatusCode::isError, ClientResponse::createException)
                 .bodyToMono(String.class)
+                .timeout(route.timeout())
                 .block();
-        return extractB64OrUrl(resp);
     }
 
-    private String extractB64OrUrl(String responseBody) {
-        try {
-            JsonNode root = mapper.readTree(responseBody);
-            if (root.has("error")) {
-                throw new RuntimeException(root.path("error").path("message").asText());
-            }
-            JsonNode data = root.path("data");
-            if (!data.isArray() || data.isEmpty()) {
-                throw new RuntimeException("No image data returned");
-            }
-
-            // Try Base64 first (works when response_format = b64_json)
-            String b64 = data.get(0).path("b64_json").asText(null);
-            if (b64 != null && !b64.isBlank()) {
-                return b64;
+    // Reads the answer with the streaming parser, so the base64 text is decoded straight into the sink
+    private ImageStorageService.ImageWriter photoWriter(String responseBody, AiRoutingService.Route route) {
+        return out -> {
+            String url = null;
+            try (JsonParser parser = mapper.getFactory().createParser(responseBody)) {
+                while (parser.nextToken() != null) {
+                    if (parser.currentToken() != JsonToken.FIELD_NAME) {
+                        continue;
+                    }
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    if ("error".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                        throw new RuntimeException(mapper.<JsonNode>readTree(parser).path("message").asText());
+                    }
+                    if ("b64_json".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                        parser.readBinaryValue(out);
+                        return;
+                    }
+                    if ("url".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                        url = parser.getText();
+                    }
+                }
             }
-
-            // Fallback: URL (default for dall-e-3)
-            String url = data.get(0).path("url").asText(null);
             if (url == null || url.isBlank()) {
                 throw new RuntimeException("Image response has neither b64_json nor url");
             }
 
-            // Download the bytes and return Base64 (so you can still store it on Project)
-            byte[] bytes = webClientBuilder.build()
+            // Fallback: URL (default for dall-e-3), streamed as it downloads
+            // Absolute URI overrides the base URL; no Authorization header is sent to the image host
+            Flux<DataBuffer> body = openAiWebClient
                     .get()
-                    .uri(url)
+                    .uri(URI.create(url))
                     .retrieve()
-                    .bodyToMono(byte[].class)
+                    .bodyToFlux(DataBuffer.class)
+                    .timeout(route.timeout());
+            DataBufferUtils.write(body, out)
+                    .map(DataBufferUtils::release)
+                    .then()
                     .block();
-
-            if (bytes == null || bytes.length == 0) {
-                throw new RuntimeException("Failed to download image from returned URL");
-            }
-            return java.util.Base64.getEncoder().encodeToString(bytes);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse image response", e);
-        }
+        };
     }
 }
@@ -0,0 +1,107 @@
+package com.example.claquetteai.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+/**
+ * Record mode: writes every OpenAI request with its answer to openai.recording.dir, one JSON file
+ * per request named after key(request). The load tests replay these files from a local stand-in
+ * server instead of paying for (and waiting on) the real API.
+ * Chat answers are stored as content + usage + finish_reason rather than the raw body, so a
+ * recording made without streaming can be replayed to a streaming call and the other way round.
+ * Off by default; the files contain the prompts, keep them out of version control.
+ */
+@Service
+public class AiExchangeRecorder {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Value("${openai.recording.enabled:false}")
+    private boolean enabled;
+
+    @Value("${openai.recording.dir:recordings}")
+    private String dir;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void recordChat(String requestBody, String content, JsonNode usage, String finishReason, long latencyMillis) {
+        if (!enabled) {
+            return;
+        }
+        ObjectNode answer = MAPPER.createObjectNode();
+        answer.put("content", content);
+        answer.set("usage", usage);
+        answer.put("finish_reason", finishReason);
+        write("/v1/chat/completions", requestBody, answer, latencyMillis);
+    }
+
+    public void recordImage(String path, String requestBody, String responseBody, long latencyMillis) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ObjectNode answer = MAPPER.createObjectNode();
+            answer.set("body", MAPPER.readTree(responseBody));
+            write(path, requestBody, answer, latencyMillis);
+        } catch (IOException e) {
+            System.out.println("Could not record image response: " + e.getMessage());
+        }
+    }
+
+    // A failed recording never fails the call it records
+    private void write(String path, String requestBody, ObjectNode answer, long latencyMillis) {
+        try {
+            ObjectNode exchange = MAPPER.createObjectNode();
+            exchange.put("path", path);
+            exchange.set("request", MAPPER.readTree(requestBody));
+            exchange.set("response", answer);
+            exchange.put("latencyMillis", latencyMillis);
+            exchange.put("recordedAt", LocalDateTime.now().toString());
+
+            Path directory = Path.of(dir);
+            Files.createDirectories(directory);
+            Path target = directory.resolve(key(requestBody) + ".json");
+            // Written aside and moved, so a replay server reading the directory never sees half a file
+            Path temp = Files.createTempFile(directory, "exchange", ".tmp");
+            Files.writeString(temp, MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(exchange), StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not record AI exchange: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recording file name for a request body: SHA-256 of the body without its streaming flags,
+     * so the streamed and the blocking form of the same request share one recording
+     */
+    public static String key(String requestBody) {
+        try {
+            JsonNode request = MAPPER.readTree(requestBody);
+            if (request instanceof ObjectNode object) {
+                object.remove("stream");
+                object.remove("stream_options");
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(MAPPER.writeValueAsBytes(request)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Request body is not JSON", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -3,12 +3,17 @@ package com.example.claquetteai.Service;
 import com.example.claquetteai.Api.ApiException;
 import com.example.claquetteai.Model.*;
 import com.example.claquetteai.Repository.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
@@ -20,13 +25,44 @@ public class AiInteractionService {
     private final EpisodeService episodeService;
     private final CastingService castingService;
     private final UserRepository userRepository;
-    private final SceneRepository sceneRepository;
+    private final ScreenplayPersistenceService screenplayPersistenceService;
+    private final PosterService posterService;
+    private final AiCallLimiter aiCallLimiter;
+    private final MeterRegistry meterRegistry;
+    // resolved by name, see ExecutorConfig
+    private final ThreadPoolTaskExecutor generationStageExecutor;
+
+    @Value("${generation.poster.enabled:false}")
+    private boolean posterEnabled;
+
+    private static final String STAGE_CHARACTERS = "characters";
+    private static final String STAGE_FILM = "film";
+    private static final String STAGE_EPISODES = "episodes";
+    private static final String STAGE_CASTING = "casting";
+    private static final String STAGE_POSTER = "poster";
 
     /**
-     * Main method to generate complete screenplay with character consistency
+     * Main method to generate complete screenplay with character consistency.
+     * Not transactional on purpose: model calls can take minutes, so each stage only opens a
+     * short transaction to save its own result, then records a checkpoint. A rerun after a
+     * failure picks up the saved characters and skips the stages that already completed.
+     *
+     * Stages form a small graph: characters first, then the film or episodes, casting and
+     * (optionally) the poster run side by side since they only need the project and its
+     * characters. Every stage holds one of the company's model-call permits while it runs, so
+     * casting and the poster only start next to the script when the company has permits to spare
+     * for them; on a tighter plan (FREE: one call at a time) they run once the script is written,
+     * instead of waiting behind the episodes. The wall time of every stage is logged and recorded
+     * as generation.stage.duration.
      */
-    @Transactional
     public Project generateFullScreenplay(Integer projectId, Integer userId) throws Exception {
+        return generateFullScreenplay(projectId, userId, GenerationProgressListener.NONE);
+    }
+
+    /**
+     * Same as above, reporting each stage (characters, film / episode N, casting) to the listener
+     */
+    public Project generateFullScreenplay(Integer projectId, Integer userId, GenerationProgressListener progress) throws Exception {
         // Step 1: Get existing project
         Project project = projectRepository.findById(projectId)
                 .orElseThrow(() -> new RuntimeException("Project not found with id: " + projectId));
@@ -38,13 +74,33 @@ public class AiInteractionService {
             throw new ApiException("you cannot generate project using AI subscribe");
         }
 
+        long start = System.currentTimeMillis();
+        Map<String, Long> stageMillis = new ConcurrentHashMap<>();
+        Set<String> completed = screenplayPersistenceService.completedStages(project);
+        if (!completed.isEmpty()) {
+            System.out.println("Resuming generation of project " + projectId + ", completed stages: " + completed);
+            discardUnfinishedStages(project, completed);
+        }
+
+        // characters + film or one step per episode + casting (+ poster)
+        int totalSteps = 2 + ("FILM".equals(project.getProjectType()) ? 1 : project.getEpisodeCount()) + (posterEnabled ? 1 : 0);
+        AtomicInteger doneSteps = new AtomicInteger();
+
         // Step 2: Generate characters for the project using CharacterService
-        Set<FilmCharacters> characters = characterService.generateCharacters(project, project.getDescription());
+        progress.onStage("characters", 0, totalSteps);
+        Set<FilmCharacters> characters;
+        if (completed.contains(STAGE_CHARACTERS)) {
+            characters = screenplayPersistenceService.savedCharacters(project);
+        } else {
+            // saved by CharacterService in its own transaction
+            characters = timed(STAGE_CHARACTERS, stageMillis,
+                    () -> characterService.generateCharacters(project, project.getDescription()));
+            screenplayPersistenceService.markStageCompleted(project, STAGE_CHARACTERS);
+        }
+        doneSteps.incrementAndGet();
+        // kept in memory only, scenes resolve their characters from it
         project.setCharacters(characters);
 
-        // CRITICAL: Save the project with characters first to establish the relationship
-        project = projectRepository.save(project);
-
         // LOGS: Extract character names for consistency
         String characterNames = extractCharacterNames(characters);
         System.out.println("=== CHARACTER CONSISTENCY CHECK ===");
@@ -52,74 +108,194 @@ public class AiInteractionService {
         System.out.println("Character Count: " + characters.size());
         System.out.println("===================================");
 
-        // Step 3: Generate Film OR Episodes based on project type
-        if ("FILM".equals(project.getProjectType())) {
-            // Generate film using FilmService with character names for consistency
-            Film film = filmService.generateFilmWithScenes(project, characterNames);
-            project.setFilms(film);
-
-            // Explicitly save each scene to persist many-to-many relationships
-            if (film.getScenes() != null) {
-                for (Scene scene : film.getScenes()) {
-                    // Make sure the scene has proper character associations
-                    if (scene.getCharacters() != null && !scene.getCharacters().isEmpty()) {
-                        // Save the scene - this will trigger the cascade to persist relationships
-                        sceneRepository.save(scene);
-                        System.out.println("Saved film scene " + scene.getSceneNumber() + " with " +
-                                scene.getCharacters().size() + " characters");
+        // Step 3: casting and the poster only need the project and its characters, so they can
+        // run on the stage pool while the film or the episodes are being written
+        List<StageTask> sideTasks = new ArrayList<>();
+        if (!completed.contains(STAGE_CASTING)) {
+            sideTasks.add(() -> {
+                // Generate casting recommendations using CastingService (replaces any earlier casting)
+                Set<CastingRecommendation> casting = timed(STAGE_CASTING, stageMillis, () -> castingService.generateCasting(project));
+                project.setCastingRecommendations(casting);
+                screenplayPersistenceService.markStageCompleted(project, STAGE_CASTING);
+                progress.onStage(STAGE_CASTING, doneSteps.incrementAndGet(), totalSteps);
+            });
+        } else {
+            doneSteps.incrementAndGet();
+        }
+        if (posterEnabled && !completed.contains(STAGE_POSTER)) {
+            sideTasks.add(() -> {
+                timed(STAGE_POSTER, stageMillis, () -> {
+                    // Shares the call with a poster requested for the same description meanwhile
+                    StoredImage poster;
+                    try {
+                        poster = posterService.render(project.getCompany().getId(), project.getDescription()).get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception cause ? cause : e;
                     }
-                }
-            }
+                    screenplayPersistenceService.savePoster(project.getId(), poster, PosterService.promptKey(project.getDescription()));
+                    return poster;
+                });
+                screenplayPersistenceService.markStageCompleted(project, STAGE_POSTER);
+                progress.onStage(STAGE_POSTER, doneSteps.incrementAndGet(), totalSteps);
+            });
+        } else if (posterEnabled) {
+            doneSteps.incrementAndGet();
+        }
 
-            // Validate film character consistency
-            filmService.validateFilmCharacterConsistency(film, characterNames);
+        // One permit per side stage, the rest for the script
+        int permits = aiCallLimiter.companyCap(project.getCompany().getId());
+        boolean sideStagesAlongside = permits > sideTasks.size();
+        int episodeWidth = sideStagesAlongside ? permits - sideTasks.size() : permits;
+        List<CompletableFuture<?>> sideStages = new ArrayList<>();
+        if (sideStagesAlongside) {
+            sideTasks.forEach(task -> sideStages.add(runStage(task)));
+        } else if (!sideTasks.isEmpty()) {
+            System.out.println("Company plan allows " + permits + " model calls at once, casting/poster run after the script");
+        }
 
-        } else {
-            // For series, determine episode count and generate episodes using EpisodeService
-            int episodeCount = project.getEpisodeCount();
-            Set<Episode> episodes = new HashSet<>();
+        // Step 4: Generate Film OR Episodes based on project type, on this thread
+        Exception failure = null;
+        try {
+            if ("FILM".equals(project.getProjectType())) {
+                progress.onStage("film", doneSteps.get(), totalSteps);
+                if (!completed.contains(STAGE_FILM)) {
+                    // Generate film using FilmService with character names for consistency; it saves the film and its scenes
+                    Film film = timed(STAGE_FILM, stageMillis, () -> filmService.generateFilmWithScenes(project, characterNames));
+                    project.setFilms(film);
+                    screenplayPersistenceService.markStageCompleted(project, STAGE_FILM);
 
-            for (int i = 1; i <= episodeCount; i++) {
-                // Pass character names to episode generation for consistency
-                Episode episode = episodeService.generateEpisodeWithScenes(project, i, characterNames);
-                episodes.add(episode);
+                    // Validate film character consistency
+                    filmService.validateFilmCharacterConsistency(film, characterNames);
+                }
+                doneSteps.incrementAndGet();
 
-                // Explicitly save each scene to persist many-to-many relationships
-                if (episode.getScenes() != null) {
-                    for (Scene scene : episode.getScenes()) {
-                        // Make sure the scene has proper character associations
-                        if (scene.getCharacters() != null && !scene.getCharacters().isEmpty()) {
-                            // Save the scene - this will trigger the cascade to persist relationships
-                            sceneRepository.save(scene);
-                            System.out.println("Saved episode " + i + " scene " + scene.getSceneNumber() +
-                                    " with " + scene.getCharacters().size() + " characters");
-                        }
+            } else {
+                // For series, generate the episodes that are not done yet using EpisodeService.
+                // They run side by side and are saved in episode order; a failed episode does not
+                // stop the others and is the only one generated again when the run is resumed.
+                int episodeCount = project.getEpisodeCount();
+                List<Integer> remaining = new ArrayList<>();
+                for (int i = 1; i <= episodeCount; i++) {
+                    if (!completed.contains(episodeStage(i))) {
+                        remaining.add(i);
                     }
                 }
+                doneSteps.addAndGet(episodeCount - remaining.size());
+                if (!remaining.isEmpty()) {
+                    progress.onStage("episode " + remaining.get(0), doneSteps.get(), totalSteps);
+                }
 
-                // Validate episode character consistency
-                episodeService.validateEpisodeCharacterConsistency(episode, characterNames);
-            }
+                Set<Episode> episodes = ConcurrentHashMap.newKeySet();
+                // Pass character names to episode generation for consistency; it saves each episode and its scenes
+                timed(STAGE_EPISODES, stageMillis, () -> episodeService.generateEpisodes(project, remaining, characterNames, episodeWidth, episode -> {
+                    episodes.add(episode);
+                    screenplayPersistenceService.markStageCompleted(project, episodeStage(episode.getEpisodeNumber()));
+                    progress.onStage("episode " + episode.getEpisodeNumber(), doneSteps.incrementAndGet(), totalSteps);
 
-            project.setEpisodes(episodes);
+                    // Validate episode character consistency
+                    episodeService.validateEpisodeCharacterConsistency(episode, characterNames);
+                }));
+
+                project.setEpisodes(episodes);
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+        if (!sideStagesAlongside) {
+            // Also after a failed script: what they produce is checkpointed for the rerun
+            sideTasks.forEach(task -> sideStages.add(runStage(task)));
         }
 
-        // Step 4: Generate casting recommendations using CastingService
-        Set<CastingRecommendation> casting = castingService.generateCasting(project);
-        project.setCastingRecommendations(casting);
+        // Join: a failed stage does not cancel the others, what finished is checkpointed for the rerun
+        for (CompletableFuture<?> stage : sideStages) {
+            try {
+                stage.get();
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception ex ? ex : new RuntimeException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        logStageTimings(projectId, stageMillis, System.currentTimeMillis() - start);
+        if (failure != null) {
+            throw failure;
+        }
 
-        // Update user AI usage
+        // Update user AI usage, only once the whole screenplay exists
         user.setUseAI(user.getUseAI() - 1);
         userRepository.save(user);
-
-        // Save final project with all relationships
-        Project finalProject = projectRepository.save(project);
+        screenplayPersistenceService.clearCheckpoints(project);
 
         // Run final consistency analysis
         System.out.println("=== FINAL PROJECT ANALYSIS ===");
-        debugCharacterSceneRelationships(finalProject);
+        debugCharacterSceneRelationships(project);
+
+        return project;
+    }
+
+    private interface StageCall<T> {
+        T call() throws Exception;
+    }
+
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    private CompletableFuture<Void> runStage(StageTask task) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, generationStageExecutor);
+    }
+
+    private <T> T timed(String stage, Map<String, Long> stageMillis, StageCall<T> call) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            stageMillis.put(stage, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            Timer.builder("generation.stage.duration")
+                    .description("Wall time of a screenplay generation stage")
+                    .tag("stage", stage)
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // The longest stage after characters is the critical path of the run
+    private void logStageTimings(Integer projectId, Map<String, Long> stageMillis, long totalMillis) {
+        String timings = stageMillis.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                .map(entry -> entry.getKey() + "=" + entry.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+        System.out.println("=== STAGE TIMINGS project " + projectId + ": " + timings + " (total " + totalMillis + "ms) ===");
+    }
+
+    // Drops a film or episodes saved by a failed run whose checkpoint was never written
+    private void discardUnfinishedStages(Project project, Set<String> completed) {
+        if ("FILM".equals(project.getProjectType())) {
+            if (!completed.contains(STAGE_FILM) && project.getFilms() != null) {
+                screenplayPersistenceService.deleteFilm(project.getFilms().getId());
+                project.setFilms(null);
+            }
+            return;
+        }
+        for (Episode episode : screenplayPersistenceService.savedEpisodes(project)) {
+            if (!completed.contains(episodeStage(episode.getEpisodeNumber()))) {
+                screenplayPersistenceService.deleteEpisode(episode.getId());
+            }
+        }
+    }
 
-        return finalProject;
+    private static String episodeStage(int episodeNumber) {
+        return "episode " + episodeNumber;
     }
 
     /**
@@ -168,8 +344,9 @@ public class AiInteractionService {
             }
         }
 
-        // Analyze episode scenes if it's a series
-        if (project.getEpisodes() != null) {
+        // Analyze episode scenes if it's a series; a film's project still holds the lazy episode
+        // collection it was loaded with, and there is no session on the job thread to load it
+        if (project.getEpisodes() != null && Hibernate.isInitialized(project.getEpisodes())) {
             System.out.println("Episode Scenes Analysis:");
             for (Episode episode : project.getEpisodes()) {
                 System.out.println("  Episode " + episode.getEpisodeNumber() + ":");
@@ -0,0 +1,376 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Api.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retry, circuit breaker and hedging for calls to the OpenAI API.
+ * - Retries 429, 5xx and connection/timeout failures with jittered exponential backoff,
+ *   waiting at least as long as retry-after / x-ratelimit-reset-* asks for.
+ * - After failure-threshold consecutive upstream failures the breaker opens and calls fail
+ *   fast (503) for open-seconds; then one trial call decides whether it closes again.
+ * - Optional hedging: a chat call still running past the observed p95 gets a second,
+ *   identical request and the first answer wins. Off by default since it costs tokens.
+ *   The second request needs a limiter permit of its own and is not sent without one.
+ */
+@Service
+public class AiResilienceService {
+
+    private static final Pattern RESET_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+    private final MeterRegistry meterRegistry;
+    private final AiCallLimiter aiCallLimiter;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long maxHeaderWaitMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final boolean hedgingEnabled;
+    private final long hedgingMinDelayMillis;
+
+    private BreakerState state = BreakerState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    // Recent successful chat latencies, used for the hedging deadline
+    private final long[] latencies = new long[200];
+    private int latencyCount;
+    private int latencyNext;
+
+    public AiResilienceService(MeterRegistry meterRegistry,
+                               AiCallLimiter aiCallLimiter,
+                               @Value("${openai.resilience.max-attempts:4}") int maxAttempts,
+                               @Value("${openai.resilience.base-delay-ms:500}") long baseDelayMillis,
+                               @Value("${openai.resilience.max-delay-ms:20000}") long maxDelayMillis,
+                               @Value("${openai.resilience.max-header-wait-seconds:60}") long maxHeaderWaitSeconds,
+                               @Value("${openai.resilience.breaker.failure-threshold:5}") int failureThreshold,
+                               @Value("${openai.resilience.breaker.open-seconds:30}") long openSeconds,
+                               @Value("${openai.resilience.hedging-enabled:false}") boolean hedgingEnabled,
+                               @Value("${openai.resilience.hedging-min-delay-ms:5000}") long hedgingMinDelayMillis) {
+        this.meterRegistry = meterRegistry;
+        this.aiCallLimiter = aiCallLimiter;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxHeaderWaitMillis = Duration.ofSeconds(maxHeaderWaitSeconds).toMillis();
+        this.failureThreshold = failureThreshold;
+        this.openMillis = Duration.ofSeconds(openSeconds).toMillis();
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgingMinDelayMillis = hedgingMinDelayMillis;
+
+        Gauge.builder("ai.breaker.open", this, r -> r.currentState() == BreakerState.CLOSED ? 0 : 1)
+                .description("1 while the OpenAI circuit breaker is open or half-open")
+                .register(meterRegistry);
+    }
+
+    public <T> T execute(String operation, AiCallLimiter.AiCall<T> call) throws Exception {
+        return execute(operation, call, () -> true);
+    }
+
+    /**
+     * Runs the call with retries. retryAllowed is asked before every retry, e.g. a stream
+     * that already delivered data to its consumer must not be restarted. Callers take their
+     * limiter permit inside the call, so it is given back while the backoff sleeps.
+     */
+    public <T> T execute(String operation, AiCallLimiter.AiCall<T> call, BooleanSupplier retryAllowed) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            beforeCall();
+            try {
+                T result = call.call();
+                onSuccess();
+                return result;
+            } catch (Exception e) {
+                boolean upstreamFailure = isUpstreamFailure(e);
+                if (upstreamFailure) {
+                    onFailure();
+                } else {
+                    onNeutralOutcome();
+                }
+
+                if (!isRetryable(e) || attempt >= maxAttempts || !retryAllowed.getAsBoolean()) {
+                    throw e;
+                }
+
+                long delay = backoffMillis(attempt, e);
+                if (delay < 0) {
+                    // The upstream asked us to wait longer than we are willing to block a request
+                    throw e;
+                }
+                Counter.builder("ai.resilience.retries")
+                        .tag("operation", operation)
+                        .tag("reason", reason(e))
+                        .register(meterRegistry)
+                        .increment();
+                System.out.println("OpenAI " + operation + " attempt " + attempt + " failed (" + reason(e) +
+                        "), retrying in " + delay + " ms");
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Sends a second copy of the request when the first is slower than the recent p95.
+     * Sends the request alone when hedging is off or there is not enough history yet.
+     * The caller holds a permit for the first request; the copy is only sent if the company
+     * and the node have another one free right now, so hedging never goes past their caps.
+     * Latency is measured here, on the request itself, so time spent waiting for a limiter
+     * permit does not move the hedging deadline.
+     */
+    public <T> Mono<T> hedged(Integer companyId, Mono<T> request) {
+        Duration deadline = hedgeDeadline();
+        Mono<T> answer = request;
+        if (deadline != null) {
+            // A first request that fails before the deadline is the answer, no copy is sent
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Mono<T> primary = request.doOnError(e -> primaryFailed.tryEmitEmpty());
+            Mono<T> backup = Mono.firstWithSignal(Mono.delay(deadline).thenReturn(true),
+                            primaryFailed.asMono().thenReturn(false))
+                    .filter(launch -> launch)
+                    .flatMap(launch -> {
+                        Runnable release = aiCallLimiter.tryAcquire(companyId);
+                        if (release == null) {
+                            hedgeCounter("skipped").increment();
+                            return Mono.<T>empty();
+                        }
+                        hedgeCounter("launched").increment();
+                        return request.doFinally(signal -> release.run());
+                    })
+                    .doOnNext(v -> hedgeCounter("won").increment());
+            // First answer wins and the other request is cancelled; a failure only ends the
+            // call once neither request can answer any more
+            answer = Mono.firstWithValue(primary, backup)
+                    .onErrorMap(NoSuchElementException.class, AiResilienceService::firstFailure);
+        }
+        Mono<T> timed = answer;
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return timed.doOnSuccess(v -> recordLatency(System.nanoTime() - start));
+        });
+    }
+
+    // firstWithValue reports "no value" with the failures as its cause; retries classify the real one
+    private static Throwable firstFailure(NoSuchElementException e) {
+        if (e.getCause() != null) {
+            for (Throwable failure : Exceptions.unwrapMultiple(e.getCause())) {
+                if (!(failure instanceof NoSuchElementException)) {
+                    return failure;
+                }
+            }
+        }
+        return e;
+    }
+
+    private Counter hedgeCounter(String result) {
+        return Counter.builder("ai.resilience.hedges").tag("result", result).register(meterRegistry);
+    }
+
+    // ---------- breaker ----------
+
+    private synchronized void beforeCall() {
+        if (state == BreakerState.OPEN) {
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            if (remaining > 0) {
+                Counter.builder("ai.resilience.short_circuited").register(meterRegistry).increment();
+                throw new ServiceUnavailableException("AI service is temporarily unavailable, please try again shortly",
+                        Math.max(1, remaining / 1000));
+            }
+            state = BreakerState.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == BreakerState.HALF_OPEN) {
+            if (trialInFlight) {
+                throw new ServiceUnavailableException("AI service is recovering, please try again shortly", 5);
+            }
+            trialInFlight = true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != BreakerState.CLOSED) {
+            System.out.println("OpenAI circuit breaker closed");
+        }
+        state = BreakerState.CLOSED;
+    }
+
+    // Client errors (400, 429, ...) say nothing about upstream health
+    private synchronized void onNeutralOutcome() {
+        if (state == BreakerState.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == BreakerState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != BreakerState.OPEN) {
+                System.out.println("OpenAI circuit breaker opened after " + consecutiveFailures + " failures");
+            }
+            state = BreakerState.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    private synchronized BreakerState currentState() {
+        return state;
+    }
+
+    // ---------- classification ----------
+
+    private boolean isRetryable(Exception e) {
+        if (e instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status == 408 || status >= 500;
+        }
+        return isTransportFailure(e);
+    }
+
+    private boolean isUpstreamFailure(Exception e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError();
+        }
+        return isTransportFailure(e);
+    }
+
+    private boolean isTransportFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof WebClientRequestException || t instanceof TimeoutException
+                    || t instanceof io.netty.handler.timeout.TimeoutException
+                    || t instanceof reactor.netty.http.client.PrematureCloseException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String reason(Exception e) {
+        if (e instanceof WebClientResponseException response) {
+            return String.valueOf(response.getStatusCode().value());
+        }
+        return "transport";
+    }
+
+    // ---------- delays ----------
+
+    private long backoffMillis(int attempt, Exception e) {
+        long exponential = Math.min(maxDelayMillis, baseDelayMillis * (1L << Math.min(attempt - 1, 20)));
+        // Full jitter: anywhere from 0 to the exponential delay, so parallel callers do not retry in lockstep
+        long delay = ThreadLocalRandom.current().nextLong(0, exponential + 1);
+
+        if (e instanceof WebClientResponseException response) {
+            long requested = headerDelayMillis(response.getHeaders());
+            if (requested > maxHeaderWaitMillis) {
+                return -1;
+            }
+            delay = Math.max(delay, requested);
+        }
+        return delay;
+    }
+
+    // Largest wait asked for by retry-after(-ms) or x-ratelimit-reset-requests/tokens
+    private long headerDelayMillis(HttpHeaders headers) {
+        long wait = 0;
+
+        String retryAfterMs = headers.getFirst("retry-after-ms");
+        if (retryAfterMs != null) {
+            wait = Math.max(wait, parseLong(retryAfterMs, 0));
+        }
+
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            long seconds = parseLong(retryAfter, -1);
+            if (seconds >= 0) {
+                wait = Math.max(wait, seconds * 1000);
+            } else {
+                try {
+                    ZonedDateTime at = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+                    wait = Math.max(wait, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+                } catch (Exception ignored) {
+                    // unparseable header, fall back to backoff
+                }
+            }
+        }
+
+        // Only wait for the limit that is actually exhausted
+        if ("0".equals(headers.getFirst("x-ratelimit-remaining-requests"))) {
+            wait = Math.max(wait, resetMillis(headers.getFirst("x-ratelimit-reset-requests")));
+        }
+        if ("0".equals(headers.getFirst("x-ratelimit-remaining-tokens"))) {
+            wait = Math.max(wait, resetMillis(headers.getFirst("x-ratelimit-reset-tokens")));
+        }
+        return wait;
+    }
+
+    // OpenAI reset format: "20ms", "1s", "6m0s", "1h2m3.5s"
+    private long resetMillis(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long total = 0;
+        Matcher m = RESET_PART.matcher(value.trim());
+        while (m.find()) {
+            double amount = Double.parseDouble(m.group(1));
+            total += switch (m.group(2)) {
+                case "ms" -> (long) amount;
+                case "s" -> (long) (amount * 1000);
+                case "m" -> (long) (amount * 60_000);
+                default -> (long) (amount * 3_600_000);
+            };
+        }
+        return total;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // ---------- hedging deadline ----------
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[latencyNext] = nanos;
+        latencyNext = (latencyNext + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+    }
+
+    private synchronized Duration hedgeDeadline() {
+        if (!hedgingEnabled || latencyCount < 20) {
+            return null;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        long p95 = sorted[(int) Math.ceil(latencyCount * 0.95) - 1];
+        return Duration.ofMillis(Math.max(hedgingMinDelayMillis, Duration.ofNanos(p95).toMillis()));
+    }
+}
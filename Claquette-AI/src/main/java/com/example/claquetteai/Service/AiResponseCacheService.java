@@ -0,0 +1,207 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Model.AiResponseCache;
+import com.example.claquetteai.Repository.AiResponseCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed cache for raw model answers.
+ * Small in-memory LRU tier (size + TTL) in front of the ai_response_cache table.
+ * Database access runs in its own transaction so a cached answer survives a rollback of the
+ * generation that asked for it - retrying that generation then skips the model call.
+ * Cache failures are logged and counted, never thrown.
+ */
+@Service
+public class AiResponseCacheService {
+
+    private final AiResponseCacheRepository aiResponseCacheRepository;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate newTransaction;
+
+    @Value("${openai.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${openai.cache.memory-max-entries:200}")
+    private int memoryMaxEntries;
+
+    @Value("${openai.cache.memory-ttl-minutes:60}")
+    private long memoryTtlMinutes;
+
+    @Value("${openai.cache.db-ttl-days:14}")
+    private long dbTtlDays;
+
+    private final Map<String, MemoryEntry> memory = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+            return size() > memoryMaxEntries;
+        }
+    };
+
+    private record MemoryEntry(String response, long expiresAt) {
+    }
+
+    public AiResponseCacheService(AiResponseCacheRepository aiResponseCacheRepository,
+                                  MeterRegistry meterRegistry,
+                                  PlatformTransactionManager transactionManager) {
+        this.aiResponseCacheRepository = aiResponseCacheRepository;
+        this.meterRegistry = meterRegistry;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String key(String model, String systemPrompt, String userPrompt, double temperature) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{model, systemPrompt, userPrompt, Double.toString(temperature)}) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0); // separator, so "ab"+"c" != "a"+"bc"
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached raw answer for the key, or null
+     */
+    public String get(String key) {
+        String fromMemory = getFromMemory(key);
+        if (fromMemory != null) {
+            count("memory", "hit");
+            return fromMemory;
+        }
+        count("memory", "miss");
+
+        try {
+            String response = newTransaction.execute(status -> {
+                AiResponseCache row = aiResponseCacheRepository.findAiResponseCacheByCacheKey(key);
+                if (row == null || row.getCreatedAt().isBefore(LocalDateTime.now().minusDays(dbTtlDays))) {
+                    return null;
+                }
+                aiResponseCacheRepository.incrementHitCount(row.getId());
+                return gunzip(row.getResponseGzip());
+            });
+            if (response == null) {
+                count("db", "miss");
+                return null;
+            }
+            putInMemory(key, response);
+            count("db", "hit");
+            return response;
+        } catch (Exception e) {
+            // The cache must never break generation
+            System.err.println("AI cache lookup failed: " + e.getMessage());
+            count("db", "error");
+            return null;
+        }
+    }
+
+    public void put(String key, String model, String response) {
+        putInMemory(key, response);
+        try {
+            byte[] compressed = gzip(response);
+            newTransaction.executeWithoutResult(status -> {
+                AiResponseCache row = aiResponseCacheRepository.findAiResponseCacheByCacheKey(key);
+                if (row == null) {
+                    row = new AiResponseCache();
+                    row.setCacheKey(key);
+                    row.setModel(model);
+                }
+                row.setResponseGzip(compressed);
+                row.setResponseLength(response.length());
+                row.setHitCount(0);
+                row.setCreatedAt(LocalDateTime.now());
+                aiResponseCacheRepository.save(row);
+            });
+        } catch (Exception e) {
+            // e.g. a concurrent insert of the same key; the memory tier still has the answer
+            System.err.println("AI cache store failed: " + e.getMessage());
+            count("db", "error");
+        }
+    }
+
+    public void evict(String key) {
+        synchronized (memory) {
+            memory.remove(key);
+        }
+    }
+
+    // Purge expired rows once a night
+    @Scheduled(cron = "0 30 3 * * *")
+    public void purgeExpired() {
+        Integer removed = newTransaction.execute(status ->
+                aiResponseCacheRepository.deleteAiResponseCacheByCreatedAtBefore(LocalDateTime.now().minusDays(dbTtlDays)));
+        System.out.println("Purged " + removed + " expired AI cache entries");
+    }
+
+    private String getFromMemory(String key) {
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() < System.currentTimeMillis()) {
+                memory.remove(key);
+                return null;
+            }
+            return entry.response();
+        }
+    }
+
+    private void putInMemory(String key, String response) {
+        long expiresAt = System.currentTimeMillis() + Duration.ofMinutes(memoryTtlMinutes).toMillis();
+        synchronized (memory) {
+            memory.put(key, new MemoryEntry(response, expiresAt));
+        }
+    }
+
+    private void count(String tier, String result) {
+        Counter.builder("ai.cache.lookups")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] bytes) {
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(gz.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt cached AI response", e);
+        }
+    }
+}
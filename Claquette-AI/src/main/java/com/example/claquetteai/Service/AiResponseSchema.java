@@ -0,0 +1,48 @@
+package com.example.claquetteai.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JSON schemas of the answers PromptBuilderService asks for (resources/ai-schemas).
+ * Passed in AiCallOptions, the schema is sent as a strict response_format so the model can only
+ * return a document of that shape: no fences, no prose, no trailing commas to repair.
+ */
+@Getter
+public enum AiResponseSchema {
+
+    CHARACTERS("screenplay_characters", "ai-schemas/characters.schema.json"),
+    EPISODE("screenplay_episode", "ai-schemas/episode.schema.json"),
+    FILM("screenplay_film", "ai-schemas/film.schema.json"),
+    CASTING("screenplay_casting", "ai-schemas/casting.schema.json");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // json_schema.name in the request, part of the cache key as well
+    private final String name;
+    private final String resource;
+    private volatile JsonNode schema;
+
+    AiResponseSchema(String name, String resource) {
+        this.name = name;
+        this.resource = resource;
+    }
+
+    public JsonNode getSchema() {
+        JsonNode loaded = schema;
+        if (loaded == null) {
+            try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+                loaded = MAPPER.readTree(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load response schema " + resource, e);
+            }
+            schema = loaded;
+        }
+        return loaded;
+    }
+}
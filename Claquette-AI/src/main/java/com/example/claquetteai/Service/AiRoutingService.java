@@ -0,0 +1,162 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Api.ApiException;
+import com.example.claquetteai.DTO.AiRouteDTOIN;
+import com.example.claquetteai.Model.AiRoute;
+import com.example.claquetteai.Repository.AiRouteRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the model, temperature, max_tokens and timeout of every call from the ai_route table,
+ * keyed by generation stage and subscription plan: a row for the company's plan wins over
+ * the ALL row of the stage, and without either the openai.routes.* defaults are used.
+ * The table is held in memory and re-read every few seconds, so a route changed through
+ * the admin endpoint (or directly in the table, on any node) applies without a redeploy.
+ */
+@Service
+public class AiRoutingService {
+
+    public static final String ALL_PLANS = "ALL";
+
+    /**
+     * Settings of one call. timeout bounds a whole answer; for a stream it bounds the wait for
+     * each chunk instead, since a full film legitimately streams for minutes.
+     */
+    public record Route(AiStage stage, String planType, String model, Double temperature,
+                        Integer maxTokens, Duration timeout) {
+    }
+
+    private final AiRouteRepository aiRouteRepository;
+    private final AiCallLimiter aiCallLimiter;
+    private final MeterRegistry meterRegistry;
+
+    private final String defaultModel;
+    private final double defaultTemperature;
+    private final String imageModel;
+    private final Duration defaultTimeout;
+
+    // Replaced as a whole on every reload; readers never see a half-loaded table
+    private volatile Map<String, AiRoute> routes;
+
+    public AiRoutingService(AiRouteRepository aiRouteRepository,
+                            AiCallLimiter aiCallLimiter,
+                            MeterRegistry meterRegistry,
+                            @Value("${openai.routes.default-model:gpt-4.1-mini}") String defaultModel,
+                            @Value("${openai.routes.default-temperature:0.7}") double defaultTemperature,
+                            @Value("${openai.routes.image-model:dall-e-3}") String imageModel,
+                            @Value("${openai.routes.default-timeout-seconds:180}") long defaultTimeoutSeconds) {
+        this.aiRouteRepository = aiRouteRepository;
+        this.aiCallLimiter = aiCallLimiter;
+        this.meterRegistry = meterRegistry;
+        this.defaultModel = defaultModel;
+        this.defaultTemperature = defaultTemperature;
+        this.imageModel = imageModel;
+        this.defaultTimeout = Duration.ofSeconds(defaultTimeoutSeconds);
+    }
+
+    public Route route(AiStage stage, Integer companyId) {
+        String planType = aiCallLimiter.planType(companyId);
+        Map<String, AiRoute> table = routes;
+        if (table == null) {
+            table = reload();
+        }
+        AiRoute row = table.get(key(stage.name(), planType));
+        if (row == null) {
+            row = table.get(key(stage.name(), ALL_PLANS));
+        }
+        if (row == null) {
+            return defaultRoute(stage, planType);
+        }
+        // Image models take no temperature
+        Double temperature = row.getTemperature() == null && stage != AiStage.POSTER ? defaultTemperature : row.getTemperature();
+        return new Route(stage, planType, row.getModel(), temperature, row.getMaxTokens(),
+                row.getTimeoutSeconds() != null ? Duration.ofSeconds(row.getTimeoutSeconds()) : defaultTimeout);
+    }
+
+    private Route defaultRoute(AiStage stage, String planType) {
+        if (stage == AiStage.POSTER) {
+            return new Route(stage, planType, imageModel, null, null, defaultTimeout);
+        }
+        return new Route(stage, planType, defaultModel, defaultTemperature, null, defaultTimeout);
+    }
+
+    /**
+     * Latency of one model call (a single attempt, retries are timed separately) per stage, model and plan
+     */
+    public void recordLatency(Route route, long nanos, boolean success) {
+        Timer.builder("ai.route.latency")
+                .description("Model call latency per route")
+                .tag("stage", route.stage().key())
+                .tag("model", route.model())
+                .tag("plan", route.planType())
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Scheduled(fixedDelayString = "${openai.routes.refresh-ms:30000}")
+    public void refresh() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Keep the last table; the next refresh tries again
+            System.out.println("Failed to reload AI routes: " + e.getMessage());
+        }
+    }
+
+    private Map<String, AiRoute> reload() {
+        Map<String, AiRoute> table = new HashMap<>();
+        for (AiRoute row : aiRouteRepository.findAll()) {
+            table.put(key(row.getStage(), row.getPlanType()), row);
+        }
+        routes = table;
+        return table;
+    }
+
+    // ADMIN - routing table
+
+    public List<AiRoute> getRoutes() {
+        return aiRouteRepository.findAll();
+    }
+
+    public AiRoute saveRoute(AiRouteDTOIN dto) {
+        AiRoute route = aiRouteRepository.findAiRouteByStageAndPlanType(dto.getStage(), dto.getPlanType());
+        if (route == null) {
+            route = new AiRoute();
+            route.setStage(dto.getStage());
+            route.setPlanType(dto.getPlanType());
+        }
+        route.setModel(dto.getModel());
+        route.setTemperature(dto.getTemperature());
+        route.setMaxTokens(dto.getMaxTokens());
+        route.setTimeoutSeconds(dto.getTimeoutSeconds());
+        AiRoute saved = aiRouteRepository.save(route);
+        reload();
+        System.out.println("AI route " + saved.getStage() + "/" + saved.getPlanType() + " -> " + saved.getModel());
+        return saved;
+    }
+
+    public void deleteRoute(Integer id) {
+        AiRoute route = aiRouteRepository.findAiRouteById(id);
+        if (route == null) {
+            throw new ApiException("AI route not found");
+        }
+        aiRouteRepository.delete(route);
+        reload();
+    }
+
+    private static String key(String stage, String planType) {
+        return stage + ":" + planType;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.claquetteai.Service;
+
+/**
+ * Generation stage a model call belongs to; keys the routing table (AiRoutingService)
+ * and tags the per-stage token and latency metrics.
+ */
+public enum AiStage {
+    CHARACTERS,
+    EPISODE,
+    FILM,
+    CASTING,
+    POSTER,
+    OTHER;
+
+    public static AiStage of(AiResponseSchema schema) {
+        if (schema == null) {
+            return OTHER;
+        }
+        return switch (schema) {
+            case CHARACTERS -> CHARACTERS;
+            case EPISODE -> EPISODE;
+            case FILM -> FILM;
+            case CASTING -> CASTING;
+        };
+    }
+
+    // Tag value used in metrics and logs
+    public String key() {
+        return name().toLowerCase();
+    }
+}
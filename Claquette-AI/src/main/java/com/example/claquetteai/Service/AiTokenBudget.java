@@ -0,0 +1,153 @@
+package com.example.claquetteai.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sizes every chat call before it is sent.
+ * The answer gets max_completion_tokens from what the stage is expected to produce
+ * (a fixed part plus tokens-per-scene for each expected scene, with headroom), capped at the
+ * model's output limit. If prompt + answer would not fit the context window, the call's
+ * context (AiCallOptions.context, e.g. the project description) is shortened to make room.
+ * The route's max_tokens (AiRoutingService) caps that budget further.
+ * After the call the real prompt / completion usage is recorded per stage and model.
+ */
+@Service
+public class AiTokenBudget {
+
+    // Chat message framing added by the API on top of the text itself
+    private static final int MESSAGE_OVERHEAD_TOKENS = 12;
+    private static final String TRIM_MARKER = " …";
+
+    /**
+     * What a call will send: the (possibly trimmed) prompt and its output budget
+     */
+    public record Plan(String stage, String model, String prompt, Integer maxTokens, int estimatedPromptTokens) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final int contextWindow;
+    private final int maxOutputTokens;
+    private final int tokensPerScene;
+    private final double headroom;
+
+    public AiTokenBudget(MeterRegistry meterRegistry,
+                         @Value("${openai.tokens.context-window:1047576}") int contextWindow,
+                         @Value("${openai.tokens.max-output:32768}") int maxOutputTokens,
+                         @Value("${openai.tokens.per-scene:700}") int tokensPerScene,
+                         @Value("${openai.tokens.headroom:1.25}") double headroom) {
+        this.meterRegistry = meterRegistry;
+        this.contextWindow = contextWindow;
+        this.maxOutputTokens = maxOutputTokens;
+        this.tokensPerScene = tokensPerScene;
+        this.headroom = headroom;
+    }
+
+    public Plan plan(String systemPrompt, String prompt, AiCallOptions options, AiRoutingService.Route route) {
+        String stage = route.stage().key();
+        Integer maxTokens = maxTokens(options.getResponseSchema(), options.getExpectedScenes());
+        if (route.maxTokens() != null && (maxTokens == null || route.maxTokens() < maxTokens)) {
+            maxTokens = route.maxTokens();
+        }
+
+        int promptTokens = TokenEstimator.estimate(systemPrompt) + TokenEstimator.estimate(prompt) + MESSAGE_OVERHEAD_TOKENS;
+        int available = contextWindow - (maxTokens == null ? 0 : maxTokens);
+        String context = options.getContext();
+        // The estimate is not linear in length (rounding per class), so re-check after trimming
+        while (promptTokens > available) {
+            if (context == null || !prompt.contains(context)) {
+                throw new RuntimeException("Prompt of the " + stage + " stage does not fit the model context window ("
+                        + contextWindow + " tokens)");
+            }
+            String trimmed = trimContext(stage, context, promptTokens - available);
+            prompt = prompt.replace(context, trimmed);
+            context = trimmed;
+            promptTokens = TokenEstimator.estimate(systemPrompt) + TokenEstimator.estimate(prompt) + MESSAGE_OVERHEAD_TOKENS;
+        }
+
+        System.out.println("AI budget [" + stage + "]: prompt ~" + promptTokens + " tokens, max completion "
+                + (maxTokens == null ? "model default" : maxTokens));
+        return new Plan(stage, route.model(), prompt, maxTokens, promptTokens);
+    }
+
+    /**
+     * Output budget for a stage; null leaves the model default (free-form calls)
+     */
+    Integer maxTokens(AiResponseSchema schema, Integer expectedScenes) {
+        if (schema == null) {
+            return null;
+        }
+        int expected = switch (schema) {
+            case CHARACTERS -> 4000;
+            case CASTING -> 6000;
+            case EPISODE, FILM -> 800 + (expectedScenes == null ? 0 : expectedScenes) * tokensPerScene;
+        };
+        int budget = (int) Math.ceil(expected * headroom);
+        if (budget > maxOutputTokens) {
+            System.out.println("WARNING: " + stage(schema) + " is expected to need ~" + budget
+                    + " tokens, more than the model's " + maxOutputTokens + " output limit");
+            meterRegistry.counter("ai.tokens.budget.capped", "stage", stage(schema)).increment();
+            return maxOutputTokens;
+        }
+        return budget;
+    }
+
+    // Shortens the call's context by about excessTokens; the instructions around it are kept
+    private String trimContext(String stage, String context, int excessTokens) {
+        int contextTokens = TokenEstimator.estimate(context);
+        int keepChars = contextTokens <= excessTokens ? 0
+                : (int) ((long) context.length() * (contextTokens - excessTokens) / contextTokens);
+        if (keepChars <= TRIM_MARKER.length()) {
+            throw new RuntimeException("Prompt of the " + stage + " stage does not fit the model context window ("
+                    + contextWindow + " tokens)");
+        }
+        String trimmed = context.substring(0, keepChars - TRIM_MARKER.length()) + TRIM_MARKER;
+        System.out.println("AI budget [" + stage + "]: context trimmed from " + context.length() + " to "
+                + trimmed.length() + " characters");
+        meterRegistry.counter("ai.tokens.context.trimmed", "stage", stage).increment();
+        return trimmed;
+    }
+
+    /**
+     * Records the usage block of a chat completion ({"prompt_tokens", "completion_tokens"})
+     */
+    public void recordUsage(Plan plan, JsonNode usage, String finishReason) {
+        if ("length".equals(finishReason)) {
+            meterRegistry.counter("ai.completions.truncated", "stage", plan.stage()).increment();
+        }
+        if (usage == null || !usage.has("prompt_tokens")) {
+            return;
+        }
+        int promptTokens = usage.path("prompt_tokens").asInt();
+        int completionTokens = usage.path("completion_tokens").asInt();
+        tokens(plan, "prompt").record(promptTokens);
+        tokens(plan, "completion").record(completionTokens);
+        if (plan.estimatedPromptTokens() > 0) {
+            DistributionSummary.builder("ai.tokens.estimate.ratio")
+                    .description("Actual prompt tokens / estimated prompt tokens")
+                    .tag("stage", plan.stage())
+                    .register(meterRegistry)
+                    .record((double) promptTokens / plan.estimatedPromptTokens());
+        }
+        System.out.println("AI usage [" + plan.stage() + ", " + plan.model() + "]: prompt " + promptTokens + " tokens (estimated "
+                + plan.estimatedPromptTokens() + "), completion " + completionTokens
+                + (plan.maxTokens() == null ? "" : " / " + plan.maxTokens()) + ", finish " + finishReason);
+    }
+
+    private DistributionSummary tokens(Plan plan, String type) {
+        return DistributionSummary.builder("ai.tokens")
+                .description("Tokens per model call")
+                .baseUnit("tokens")
+                .tag("stage", plan.stage())
+                .tag("model", plan.model())
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    private static String stage(AiResponseSchema schema) {
+        return AiStage.of(schema).key();
+    }
+}
@@ -28,6 +28,10 @@ public class CastingService {
 
     // UPDATED: AI Generation method for One-to-Many relationship
     public Set<CastingRecommendation> generateCasting(Project project) throws Exception {
+        return generateCasting(project, AiCacheMode.DEFAULT);
+    }
+
+    public Set<CastingRecommendation> generateCasting(Project project, AiCacheMode cacheMode) throws Exception {
         // Check if casting already exists for this project
         List<CastingRecommendation> existingCasting = castingRepository.findCastingRecommendationByProject(project);
         if (!existingCasting.isEmpty()) {
@@ -51,7 +55,12 @@ public class CastingService {
         String prompt = promptBuilderService.castingPrompt(projectInfo);
 
         // Get AI response and extract casting recommendations
-        String json = aiClientService.askModel(prompt);
+        String json = aiClientService.askModel(prompt, AiCallOptions.builder()
+                .companyId(project.getCompany().getId())
+                .cacheMode(cacheMode)
+                .responseSchema(AiResponseSchema.CASTING)
+                .context(projectInfo)
+                .build());
         Set<CastingRecommendation> casting = jsonExtractor.extractCasting(json, project);
 
         System.out.println("Generated casting recommendations: " + casting.size());
@@ -60,7 +69,8 @@ public class CastingService {
         return new HashSet<>(castingRepository.saveAll(casting));
     }
     // NEW: Generate casting recommendations with character validation (for controller use)
-    public void generateCastingRecommendations(Integer userId, Integer projectId) throws Exception {
+    // refresh = true asks the model again instead of reusing a cached answer for the same prompt
+    public void generateCastingRecommendations(Integer userId, Integer projectId, boolean refresh) throws Exception {
         User user = userRepository.findUserById(userId);
         if (user == null) {
             throw new ApiException("user not found");
@@ -89,7 +99,7 @@ public class CastingService {
         System.out.println("Available Characters: " + project.getCharacters().size());
 
         // Generate casting recommendations
-        generateCasting(project);
+        generateCasting(project, refresh ? AiCacheMode.REFRESH : AiCacheMode.DEFAULT);
 
         System.out.println("=== CASTING GENERATION COMPLETE ===");
     }
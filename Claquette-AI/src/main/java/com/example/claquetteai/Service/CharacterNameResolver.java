@@ -0,0 +1,267 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Model.FilmCharacters;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.*;
+
+/**
+ * Links speaker names from model output ("سارة", "ساره العتيبي", "SARA (whispering)") to the
+ * project's characters. Built once per generation call from Project.getCharacters().
+ *
+ * Lookup order:
+ *  1. normalized exact index (case, whitespace, Arabic diacritics / tatweel, alef, ta marbuta,
+ *     alef maqsura and hamza-seat folding, parenthetical stage directions removed)
+ *  2. token / prefix index: every query token must point at the same single character
+ *  3. bounded Levenshtein against names and name tokens, accepted only above MIN_SIMILARITY
+ *     and when the best candidate is unique
+ * Results are memoized per raw name, so a speaker repeated across dialogue lines is O(1).
+ * Every lookup is counted by match type (ai.character.links{match}) so mis-links show up.
+ */
+public class CharacterNameResolver {
+
+    public enum MatchType { EXACT, TOKEN, FUZZY, AMBIGUOUS, UNRESOLVED }
+
+    // 1 - distance / length of the longer string
+    private static final double MIN_SIMILARITY = 0.75;
+    private static final int MAX_DISTANCE = 2;
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    private record Resolution(FilmCharacters character, MatchType type) { }
+
+    private final Map<String, FilmCharacters> exactIndex = new HashMap<>();
+    private final NavigableMap<String, Set<FilmCharacters>> tokenIndex = new TreeMap<>();
+    private final List<Map.Entry<String, FilmCharacters>> fuzzyCandidates = new ArrayList<>();
+    private final Map<String, Resolution> memo = new HashMap<>();
+    private final EnumMap<MatchType, Integer> stats = new EnumMap<>(MatchType.class);
+    private final Map<MatchType, Counter> counters = new EnumMap<>(MatchType.class);
+
+    public CharacterNameResolver(Collection<FilmCharacters> characters, MeterRegistry meterRegistry) {
+        if (characters != null) {
+            for (FilmCharacters character : characters) {
+                if (character.getName() == null || character.getName().isBlank()) {
+                    continue;
+                }
+                String normalized = normalize(character.getName());
+                exactIndex.putIfAbsent(normalized, character);
+                fuzzyCandidates.add(Map.entry(normalized, character));
+                for (String token : normalized.split(" ")) {
+                    if (token.length() >= 2) {
+                        tokenIndex.computeIfAbsent(token, t -> new HashSet<>()).add(character);
+                        fuzzyCandidates.add(Map.entry(token, character));
+                    }
+                }
+            }
+        }
+        for (MatchType type : MatchType.values()) {
+            stats.put(type, 0);
+            if (meterRegistry != null) {
+                counters.put(type, Counter.builder("ai.character.links")
+                        .description("Dialogue speakers / casting names linked to project characters")
+                        .tag("match", type.name().toLowerCase())
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Returns the matching character, or null when the name is unknown or ambiguous
+     */
+    public synchronized FilmCharacters resolve(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        Resolution resolution = memo.computeIfAbsent(name, this::lookup);
+        stats.merge(resolution.type(), 1, Integer::sum);
+        Counter counter = counters.get(resolution.type());
+        if (counter != null) {
+            counter.increment();
+        }
+        return resolution.character();
+    }
+
+    public synchronized Map<MatchType, Integer> getStats() {
+        return new EnumMap<>(stats);
+    }
+
+    /**
+     * One line for the generation log, e.g. "exact=40 token=3 fuzzy=1 ambiguous=0 unresolved=2"
+     */
+    public synchronized String summary() {
+        StringJoiner joiner = new StringJoiner(" ");
+        stats.forEach((type, count) -> joiner.add(type.name().toLowerCase() + "=" + count));
+        return joiner.toString();
+    }
+
+    public boolean isEmpty() {
+        return exactIndex.isEmpty();
+    }
+
+    private Resolution lookup(String name) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return new Resolution(null, MatchType.UNRESOLVED);
+        }
+
+        FilmCharacters exact = exactIndex.get(normalized);
+        if (exact != null) {
+            return new Resolution(exact, MatchType.EXACT);
+        }
+
+        // Every token of the query has to agree on one character ("سارة" -> "سارة العتيبي")
+        Set<FilmCharacters> candidates = null;
+        for (String token : normalized.split(" ")) {
+            if (token.length() < 2) {
+                // initials and titles such as "د."
+                continue;
+            }
+            Set<FilmCharacters> forToken = charactersForToken(token);
+            if (forToken.isEmpty()) {
+                candidates = null;
+                break;
+            }
+            if (candidates == null) {
+                candidates = new HashSet<>(forToken);
+            } else {
+                candidates.retainAll(forToken);
+            }
+        }
+        if (candidates != null && candidates.size() == 1) {
+            return new Resolution(candidates.iterator().next(), MatchType.TOKEN);
+        }
+        if (candidates != null && candidates.size() > 1) {
+            System.out.println("Character '" + name + "' matches " + candidates.size() + " characters, not linked");
+            return new Resolution(null, MatchType.AMBIGUOUS);
+        }
+
+        return fuzzy(name, normalized);
+    }
+
+    private Set<FilmCharacters> charactersForToken(String token) {
+        Set<FilmCharacters> exact = tokenIndex.get(token);
+        if (exact != null) {
+            return exact;
+        }
+        if (token.length() < MIN_PREFIX_LENGTH) {
+            return Set.of();
+        }
+        // Prefix of a name token ("عبدال" -> "عبدالله")
+        Set<FilmCharacters> result = new HashSet<>();
+        for (Set<FilmCharacters> characters : tokenIndex.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+            result.addAll(characters);
+        }
+        return result;
+    }
+
+    private Resolution fuzzy(String name, String normalized) {
+        FilmCharacters best = null;
+        double bestSimilarity = 0;
+        boolean tie = false;
+        for (Map.Entry<String, FilmCharacters> candidate : fuzzyCandidates) {
+            String target = candidate.getKey();
+            int maxLength = Math.max(normalized.length(), target.length());
+            int distance = boundedLevenshtein(normalized, target, MAX_DISTANCE);
+            if (distance > MAX_DISTANCE) {
+                continue;
+            }
+            double similarity = 1.0 - (double) distance / maxLength;
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = candidate.getValue();
+                tie = false;
+            } else if (similarity == bestSimilarity && candidate.getValue() != best) {
+                tie = true;
+            }
+        }
+        if (best == null || bestSimilarity < MIN_SIMILARITY) {
+            System.out.println("✗ Character '" + name + "' not found in project characters");
+            return new Resolution(null, MatchType.UNRESOLVED);
+        }
+        if (tie) {
+            System.out.println("Character '" + name + "' is equally close to several characters, not linked");
+            return new Resolution(null, MatchType.AMBIGUOUS);
+        }
+        System.out.println("Character '" + name + "' linked by similarity to " + best.getName()
+                + " (" + Math.round(bestSimilarity * 100) + "%)");
+        return new Resolution(best, MatchType.FUZZY);
+    }
+
+    /**
+     * Folds the spelling variations the model produces for the same Arabic / Latin name
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(name.length());
+        int parentheses = 0;
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '(' || c == '[') {
+                parentheses++;
+                continue;
+            }
+            if (c == ')' || c == ']') {
+                parentheses = Math.max(0, parentheses - 1);
+                continue;
+            }
+            if (parentheses > 0) {
+                continue;
+            }
+            // Harakat, superscript alef, tatweel
+            if ((c >= 'ً' && c <= 'ٟ') || c == 'ٰ' || c == 'ـ') {
+                continue;
+            }
+            c = switch (c) {
+                case 'أ', 'إ', 'آ', 'ٱ' -> 'ا';
+                case 'ة' -> 'ه';
+                case 'ى' -> 'ي';
+                case 'ؤ' -> 'و';
+                case 'ئ' -> 'ي';
+                default -> Character.toLowerCase(c);
+            };
+            if (Character.isWhitespace(c) || c == '_' || c == '-' || c == '.' || c == ':' || c == '،' || c == ',') {
+                space = out.length() > 0;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Levenshtein distance, giving up (returning max + 1) as soon as it must exceed max
+     */
+    static int boundedLevenshtein(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
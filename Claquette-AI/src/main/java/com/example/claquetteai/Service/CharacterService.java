@@ -7,8 +7,6 @@ import com.example.claquetteai.Model.User;
 import com.example.claquetteai.Repository.CharacterRepository;
 import com.example.claquetteai.Repository.ProjectRepository;
 import com.example.claquetteai.Repository.UserRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -29,13 +27,21 @@ public class CharacterService {
 
     // AI Generation method
     public Set<FilmCharacters> generateCharacters(Project project, String storyDescription) throws Exception {
+        return generateCharacters(project, storyDescription, AiCacheMode.DEFAULT);
+    }
+
+    public Set<FilmCharacters> generateCharacters(Project project, String storyDescription, AiCacheMode cacheMode) throws Exception {
         // Build character generation prompt
         String prompt = promptBuilderService.charactersPrompt(storyDescription);
 
         // Get AI response and extract characters
-        String json = aiClientService.askModel(prompt);
-        JsonNode root = new ObjectMapper().readTree(json);
-        Set<FilmCharacters> characters = jsonExtractor.extractCharacters(root, project);
+        String json = aiClientService.askModel(prompt, AiCallOptions.builder()
+                .companyId(project.getCompany().getId())
+                .cacheMode(cacheMode)
+                .responseSchema(AiResponseSchema.CHARACTERS)
+                .context(storyDescription)
+                .build());
+        Set<FilmCharacters> characters = jsonExtractor.extractCharacters(json, project);
 
         // Save all characters
         return new HashSet<>(characterRepository.saveAll(characters));
@@ -46,7 +52,8 @@ public class CharacterService {
     }
 
 
-    public void generateCharacterOnly(Integer userId, Integer projectId) throws Exception {
+    // refresh = true asks the model again instead of reusing a cached answer for the same prompt
+    public void generateCharacterOnly(Integer userId, Integer projectId, boolean refresh) throws Exception {
         User user = userRepository.findUserById(userId);
         if (user == null){
             throw new ApiException("user not found");
@@ -61,7 +68,7 @@ public class CharacterService {
         if (!project.getCompany().getUser().equals(user)){
             throw new ApiException("not authorized");
         }
-        generateCharacters(project, project.getDescription());
+        generateCharacters(project, project.getDescription(), refresh ? AiCacheMode.REFRESH : AiCacheMode.DEFAULT);
     }
 
     public List<FilmCharactersDTOOUT> getProjectCharacters(Integer userId, Integer projectId) {
@@ -4,21 +4,19 @@ import com.example.claquetteai.Api.ApiException;
 import com.example.claquetteai.DTO.CompanyDTOIN;
 import com.example.claquetteai.DTO.CompanyDTOOUT;
 import com.example.claquetteai.Model.Company;
+import com.example.claquetteai.Model.StoredImage;
 import com.example.claquetteai.Model.User;
 import com.example.claquetteai.Repository.CompanyRepository;
 import com.example.claquetteai.Repository.UserRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +33,8 @@ public class CompanyService {
     private final  PasswordResetService passwordResetService;
     private final JwtUtil  jwtUtil;
     private final WatheqService watheqService;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
 
 
 
@@ -217,57 +217,32 @@ public class CompanyService {
         User user = userRepository.findUserById(userId);
         if (user == null) throw new ApiException("user not found");
 
-        byte[] bytes;
-        try { bytes = file.getBytes(); }
-        catch (IOException e) { throw new RuntimeException("Failed to read upload", e); }
-
-        // sanity: ensure real image
-        try (var in = new ByteArrayInputStream(bytes)) {
-            var img = javax.imageio.ImageIO.read(in);
-            if (img == null || img.getWidth() <= 0 || img.getHeight() <= 0) {
-                throw new IllegalArgumentException("Invalid image");
-            }
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid image", e);
-        }
-
-        String b64 = java.util.Base64.getEncoder().encodeToString(bytes);
-
-        // ✅ store in the correct fields on User
-        user.setProfileImageBase64(b64);          // LONGTEXT
-        user.setProfileImageContentType(ct);      // "image/png" | "image/jpeg" | "image/webp"
-
+        // streamed to storage and checked from its header; stored with the type found in the file
+        StoredImage photo = imageStorageService.storeUpload(file, MAX_BYTES, ALLOWED);
+        imageVariantService.createVariants(photo);
+        user.setProfileImage(photo);
         userRepository.save(user);
     }
 
     @Transactional
-    public ResponseEntity<byte[]> getUserPhotoResponse(Integer userId) {
+    public ResponseEntity<Resource> getUserPhotoResponse(Integer userId, Integer size, String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String sha256 = imageVariantService.variantSha256(userRepository.findProfileImageSha256(userId), size);
+            if (imageStorageService.isCurrent(ifNoneMatch, sha256)) {
+                return imageStorageService.notModified(sha256);
+            }
+        }
+
         User u = userRepository.findUserById(userId);
         if (u == null) return ResponseEntity.notFound().build();
 
-        String b64 = u.getProfileImageBase64();
-        if (b64 == null || b64.isBlank()) return ResponseEntity.notFound().build();
-
-        byte[] bytes;
-        try { bytes = java.util.Base64.getDecoder().decode(b64); }
-        catch (IllegalArgumentException e) { return ResponseEntity.status(500).build(); }
-
-        MediaType mediaType = MediaType.IMAGE_PNG; // default
-        if (u.getProfileImageContentType() != null) {
-            try { mediaType = MediaType.parseMediaType(u.getProfileImageContentType()); }
-            catch (Exception ignored) { /* keep default */ }
-        }
-
-        return ResponseEntity.ok()
-                .contentType(mediaType) // ✅ critical so browser renders the image
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"user-" + userId + imageExt(mediaType) + "\"")
-                .body(bytes);
-    }
+        StoredImage photo = u.getProfileImage();
+        if (photo == null) return ResponseEntity.notFound().build();
 
-    private static String imageExt(MediaType mt) {
-        if (MediaType.IMAGE_JPEG.equals(mt)) return ".jpg";
-        if (MediaType.valueOf("image/webp").equals(mt)) return ".webp";
-        return ".png";
+        // streamed from storage as stored, with its own content type
+        Integer variantSize = imageVariantService.sizeFor(size);
+        return imageStorageService.imageResponse(imageVariantService.variant(photo, size),
+                "user-" + userId + (variantSize == null ? "" : "-" + variantSize));
     }
 
 
@@ -0,0 +1,223 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.DTO.CompanyStatsDTOOUT;
+import com.example.claquetteai.DTO.ProjectGroupCountDTO;
+import com.example.claquetteai.Model.CompanyStats;
+import com.example.claquetteai.Repository.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The company_stats read model behind the dashboards.
+ * Every transaction that adds or removes a character or an episode scene moves the counters in
+ * the same commit (see Config/CompanyStatsListener); one that changes a project recounts that
+ * company with the grouped queries. A company without a row gets one the first time it is read,
+ * and the nightly rebuild recounts every company to repair any drift.
+ */
+@Service
+public class CompanyStatsService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final CompanyStatsRepository companyStatsRepository;
+    private final CompanyRepository companyRepository;
+    private final ProjectRepository projectRepository;
+    private final CharacterRepository characterRepository;
+    private final SceneRepository sceneRepository;
+    private final TransactionTemplate newTransaction;
+
+    public CompanyStatsService(CompanyStatsRepository companyStatsRepository,
+                               CompanyRepository companyRepository,
+                               ProjectRepository projectRepository,
+                               CharacterRepository characterRepository,
+                               SceneRepository sceneRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.companyStatsRepository = companyStatsRepository;
+        this.companyRepository = companyRepository;
+        this.projectRepository = projectRepository;
+        this.characterRepository = characterRepository;
+        this.sceneRepository = sceneRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // What one transaction changed, applied just before it commits
+    public static class Changes {
+        private final Set<Integer> recount = new HashSet<>();
+        private final Map<Integer, int[]> counters = new HashMap<>();
+
+        public void recount(Integer companyId) {
+            recount.add(companyId);
+        }
+
+        public void addCharacters(Integer companyId, int delta) {
+            counters.computeIfAbsent(companyId, id -> new int[2])[0] += delta;
+        }
+
+        public void addScenes(Integer companyId, int delta) {
+            counters.computeIfAbsent(companyId, id -> new int[2])[1] += delta;
+        }
+
+        public boolean isEmpty() {
+            return recount.isEmpty() && counters.isEmpty();
+        }
+    }
+
+    // A single lookup by id once the row exists
+    public CompanyStatsDTOOUT getStats(Integer companyId) {
+        CompanyStats stats = companyStatsRepository.findCompanyStatsByCompanyId(companyId);
+        if (stats == null) {
+            stats = create(companyId);
+        }
+        return toDTO(stats);
+    }
+
+    /**
+     * Runs inside the committing transaction. Companies without a row are left for their first
+     * read, so a write never races another one to insert it.
+     */
+    public void apply(Changes changes) {
+        for (Integer companyId : changes.recount) {
+            CompanyStats stats = companyStatsRepository.findCompanyStatsByCompanyId(companyId);
+            if (stats != null) {
+                count(stats);
+            }
+        }
+        changes.counters.forEach((companyId, delta) -> {
+            if (!changes.recount.contains(companyId) && (delta[0] != 0 || delta[1] != 0)) {
+                companyStatsRepository.addCounts(companyId, delta[0], delta[1]);
+            }
+        });
+    }
+
+    // Repair job: recounts every company, one transaction each, and drops rows of removed companies
+    @Scheduled(cron = "${stats.rebuild-cron:0 0 4 * * *}")
+    public int rebuildAll() {
+        List<Integer> companyIds = companyRepository.findCompanyIds();
+        for (Integer companyId : companyIds) {
+            newTransaction.executeWithoutResult(status -> {
+                CompanyStats stats = companyStatsRepository.findCompanyStatsByCompanyId(companyId);
+                if (stats == null) {
+                    stats = new CompanyStats();
+                    stats.setCompanyId(companyId);
+                }
+                count(stats);
+                companyStatsRepository.save(stats);
+            });
+        }
+        Integer removed = newTransaction.execute(status -> companyStatsRepository.deleteCompanyStatsOfRemovedCompanies());
+        System.out.println("Company statistics rebuilt for " + companyIds.size() + " companies, " + removed + " stale rows removed");
+        return companyIds.size();
+    }
+
+    /**
+     * Inserts the row, then recounts it under the row lock, each in its own transaction. A change
+     * that commits before the lock is in the recount; one that commits after it finds the row and
+     * moves the counters itself when it commits, so nothing is lost until the nightly rebuild.
+     */
+    private CompanyStats create(Integer companyId) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                // Zeros until the recount below fills it in
+                CompanyStats stats = new CompanyStats();
+                stats.setCompanyId(companyId);
+                stats.setProjectCount(0);
+                stats.setTotalBudget(0.0);
+                stats.setCharacterCount(0);
+                stats.setEpisodeCount(0);
+                stats.setSceneCount(0);
+                companyStatsRepository.saveAndFlush(stats);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Made at the same time by another request, recounted below all the same
+        }
+        return newTransaction.execute(status -> {
+            CompanyStats stats = companyStatsRepository.findCompanyStatsForUpdate(companyId);
+            count(stats);
+            return stats;
+        });
+    }
+
+    private void count(CompanyStats stats) {
+        Integer companyId = stats.getCompanyId();
+        // Company ids are their user's ids
+        List<ProjectGroupCountDTO> groups = projectRepository.countProjectGroupsByCompanyUserId(companyId);
+
+        stats.setProjectCount((int) groups.stream().mapToLong(ProjectGroupCountDTO::getProjects).sum());
+        stats.setTotalBudget(totalBudget(groups));
+        stats.setCharacterCount(characterRepository.countFilmCharactersByProject_Company_User_Id(companyId));
+        stats.setEpisodeCount((int) groups.stream().mapToLong(ProjectGroupCountDTO::getEpisodeTotal).sum());
+        stats.setSceneCount(sceneRepository.countEpisodeScenesByCompanyUserId(companyId));
+
+        stats.setStatusCounts(toJson(countBy(groups, ProjectGroupCountDTO::getStatus)));
+        stats.setTypeCounts(toJson(countBy(groups, ProjectGroupCountDTO::getProjectType)));
+        stats.setGenreCounts(toJson(countBy(groups.stream()
+                .filter(g -> g.getGenre() != null && !g.getGenre().trim().isEmpty())
+                .toList(), ProjectGroupCountDTO::getGenre)));
+        stats.setYearCounts(toJson(countBy(groups.stream()
+                .filter(g -> g.getStartYear() != null)
+                .toList(), ProjectGroupCountDTO::getStartYear)));
+
+        // Average of the budgets that are set, per type
+        Map<String, Double> averageBudgetByType = new HashMap<>();
+        groups.stream()
+                .collect(Collectors.groupingBy(ProjectGroupCountDTO::getProjectType))
+                .forEach((type, typeGroups) -> {
+                    long budgeted = typeGroups.stream().mapToLong(ProjectGroupCountDTO::getBudgetedProjects).sum();
+                    averageBudgetByType.put(type, budgeted == 0 ? 0.0 : totalBudget(typeGroups) / budgeted);
+                });
+        stats.setAverageBudgetByType(toJson(averageBudgetByType));
+    }
+
+    // Rolls the grouped rows up into counts by one of their columns
+    private static <K> Map<K, Long> countBy(List<ProjectGroupCountDTO> groups, Function<ProjectGroupCountDTO, K> key) {
+        return groups.stream().collect(Collectors.groupingBy(key, Collectors.summingLong(ProjectGroupCountDTO::getProjects)));
+    }
+
+    private static double totalBudget(List<ProjectGroupCountDTO> groups) {
+        return groups.stream()
+                .filter(g -> g.getBudgetTotal() != null)
+                .mapToDouble(ProjectGroupCountDTO::getBudgetTotal)
+                .sum();
+    }
+
+    private static CompanyStatsDTOOUT toDTO(CompanyStats stats) {
+        return new CompanyStatsDTOOUT(stats.getProjectCount(), stats.getTotalBudget(), stats.getCharacterCount(),
+                stats.getEpisodeCount(), stats.getSceneCount(),
+                fromJson(stats.getStatusCounts(), new TypeReference<Map<String, Long>>() {}),
+                fromJson(stats.getTypeCounts(), new TypeReference<Map<String, Long>>() {}),
+                fromJson(stats.getGenreCounts(), new TypeReference<Map<String, Long>>() {}),
+                fromJson(stats.getYearCounts(), new TypeReference<Map<Integer, Long>>() {}),
+                fromJson(stats.getAverageBudgetByType(), new TypeReference<Map<String, Double>>() {}));
+    }
+
+    private static String toJson(Map<?, ?> map) {
+        try {
+            return MAPPER.writeValueAsString(map);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write company statistics", e);
+        }
+    }
+
+    private static <K, V> Map<K, V> fromJson(String json, TypeReference<Map<K, V>> type) {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        try {
+            return MAPPER.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read company statistics", e);
+        }
+    }
+}
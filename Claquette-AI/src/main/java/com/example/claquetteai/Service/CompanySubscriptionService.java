@@ -1,6 +1,7 @@
 package com.example.claquetteai.Service;
 
 import com.example.claquetteai.Api.ApiException;
+import com.example.claquetteai.DTO.CompanyStatsDTOOUT;
 import com.example.claquetteai.DTO.CompanySubscriptionDTOIN;
 import com.example.claquetteai.DTO.CompanySubscriptionDTOOUT;
 import com.example.claquetteai.DTO.HistorySubscription;
@@ -35,6 +36,7 @@ public class CompanySubscriptionService {
     private final PaymentRepository paymentRepository;
     private final UserRepository userRepository;
     private final PaymentService paymentService;
+    private final CompanyStatsService companyStatsService;
 
     private static final Double ADVANCED_PRICE = 1999.99;
 
@@ -314,6 +316,15 @@ public class CompanySubscriptionService {
 
         dashboard.put("paymentStatistics", paymentStats);
 
+        // What the company has made so far, from its company_stats row
+        CompanyStatsDTOOUT stats = companyStatsService.getStats(company.getId());
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("projects", stats.getProjectCount());
+        usage.put("characters", stats.getCharacterCount());
+        usage.put("episodes", stats.getEpisodeCount());
+        usage.put("scenes", stats.getSceneCount());
+        dashboard.put("usageStatistics", usage);
+
         // Subscription alerts
         List<String> alerts = new ArrayList<>();
         if (activeSubscription != null) {
@@ -8,12 +8,20 @@ import com.example.claquetteai.Repository.CharacterRepository;
 import com.example.claquetteai.Repository.EpisodeRepository;
 import com.example.claquetteai.Repository.ProjectRepository;
 import com.example.claquetteai.Repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 @RequiredArgsConstructor
@@ -22,33 +30,179 @@ public class EpisodeService {
     private final JsonExtractor jsonExtractor;
     private final PromptBuilderService promptBuilderService;
     private final AiClientService aiClientService;
+    private final AiCallLimiter aiCallLimiter;
     private final UserRepository userRepository;
     private final ProjectRepository projectRepository;
     private final CharacterRepository characterRepository;
+    private final ScreenplayPersistenceService screenplayPersistenceService;
+    private final MeterRegistry meterRegistry;
+    // resolved by name, see ExecutorConfig
+    private final ThreadPoolTaskExecutor episodeGenerationExecutor;
+
+    @Value("${openai.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    // 1 keeps the old one-episode-at-a-time behaviour; never wider than the company's limiter cap
+    @Value("${generation.episodes.parallelism:4}")
+    private int episodeParallelism;
+
+    // Follow-up prompts asking for the missing scenes of a truncated episode; 0 keeps what was recovered
+    @Value("${generation.recovery.max-continuations:2}")
+    private int maxContinuations;
 
     // UPDATED METHOD: AI Generation method with character consistency
     public Episode generateEpisodeWithScenes(Project project, int episodeNumber, String characterNames) throws Exception {
+        if (streamingEnabled) {
+            return generateEpisodeWithScenesStreaming(project, episodeNumber, characterNames);
+        }
+
+        Episode episode = buildEpisode(project, episodeNumber, characterNames);
+
+        // Save and return the episode (short transaction, the model call above ran outside it)
+        Episode savedEpisode = screenplayPersistenceService.saveEpisodeWithScenes(episode);
+        System.out.println("Episode saved with ID: " + savedEpisode.getId());
+        System.out.println("=== EPISODE GENERATION COMPLETE ===");
+
+        return savedEpisode;
+    }
+
+    /**
+     * Generates the given episodes, several at a time when generation.episodes.parallelism > 1.
+     * Episodes are model calls that only depend on the project and its characters, so they are
+     * fanned out on episodeGenerationExecutor, at most as many at once as the company may have
+     * model calls in flight (AiCallLimiter.companyCap); on a plan capped at one call they run one
+     * after another on the calling thread. With streaming on, each worker streams its episode
+     * and saves every scene as it is parsed, as a single episode does; otherwise the worker keeps
+     * the episode in memory and the fan-in saves it. Either way the fan-in hands the saved episodes
+     * to onSaved in episode order. A failed episode does not stop the others: the rest are still
+     * saved and the first failure (in episode order) is rethrown at the end, with the later ones
+     * attached as suppressed.
+     */
+    public List<Episode> generateEpisodes(Project project, List<Integer> episodeNumbers, String characterNames,
+                                          Consumer<Episode> onSaved) throws Exception {
+        return generateEpisodes(project, episodeNumbers, characterNames,
+                aiCallLimiter.companyCap(project.getCompany().getId()), onSaved);
+    }
+
+    /**
+     * Same as above with at most maxWidth episodes at once, for a caller that keeps some of the
+     * company's permits for its own calls
+     */
+    public List<Episode> generateEpisodes(Project project, List<Integer> episodeNumbers, String characterNames,
+                                          int maxWidth, Consumer<Episode> onSaved) throws Exception {
+        List<Episode> saved = new ArrayList<>();
+        Exception failure = null;
+        int width = Math.min(episodeParallelism, maxWidth);
+
+        if (width <= 1 || episodeNumbers.size() <= 1) {
+            for (Integer episodeNumber : episodeNumbers) {
+                try {
+                    Episode episode = generateEpisodeWithScenes(project, episodeNumber, characterNames);
+                    saved.add(episode);
+                    onSaved.accept(episode);
+                } catch (Exception e) {
+                    failure = recordEpisodeFailure(failure, episodeNumber, e);
+                }
+            }
+        } else {
+            System.out.println("=== GENERATING " + episodeNumbers.size() + " EPISODES IN PARALLEL (width "
+                    + width + ") ===");
+            Map<Integer, CompletableFuture<Episode>> pending = new LinkedHashMap<>();
+            episodeNumbers.forEach(episodeNumber -> pending.put(episodeNumber, new CompletableFuture<>()));
+
+            // width lanes, each taking the next episode when it is done with one, so this generation
+            // never has more model calls in flight than its company's permits
+            Queue<Integer> next = new ConcurrentLinkedQueue<>(episodeNumbers);
+            List<Future<?>> lanes = new ArrayList<>();
+            for (int lane = 0; lane < Math.min(width, episodeNumbers.size()); lane++) {
+                lanes.add(episodeGenerationExecutor.submit(() -> {
+                    Integer episodeNumber;
+                    while (!Thread.currentThread().isInterrupted() && (episodeNumber = next.poll()) != null) {
+                        CompletableFuture<Episode> result = pending.get(episodeNumber);
+                        try {
+                            result.complete(streamingEnabled
+                                    ? generateEpisodeWithScenesStreaming(project, episodeNumber, characterNames)
+                                    : buildEpisode(project, episodeNumber, characterNames));
+                        } catch (Throwable e) {
+                            result.completeExceptionally(e);
+                        }
+                    }
+                }));
+            }
+
+            // Ordered fan-in: episode 2 waits for episode 1 to be saved even if it finished first
+            try {
+                for (Map.Entry<Integer, CompletableFuture<Episode>> entry : pending.entrySet()) {
+                    try {
+                        Episode episode = entry.getValue().get();
+                        if (!streamingEnabled) {
+                            episode = screenplayPersistenceService.saveEpisodeWithScenes(episode);
+                        }
+                        System.out.println("Episode " + entry.getKey() + " saved with ID: " + episode.getId());
+                        saved.add(episode);
+                        onSaved.accept(episode);
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        failure = recordEpisodeFailure(failure, entry.getKey(),
+                                cause instanceof Exception ex ? ex : new RuntimeException(cause));
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        failure = recordEpisodeFailure(failure, entry.getKey(), e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                lanes.forEach(lane -> lane.cancel(true));
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return saved;
+    }
+
+    private Exception recordEpisodeFailure(Exception failure, int episodeNumber, Exception e) {
+        System.err.println("Episode " + episodeNumber + " failed: " + e.getMessage());
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    // Model call and extraction only, nothing is saved
+    private Episode buildEpisode(Project project, int episodeNumber, String characterNames) throws Exception {
         System.out.println("=== GENERATING EPISODE " + episodeNumber + " ===");
         System.out.println("Project: " + project.getTitle());
         System.out.println("Available Characters: " + characterNames);
 
-        // Build prompt for specific episode with scenes using consistent character names
-        String prompt = promptBuilderService.episodePrompt(project.getDescription(), episodeNumber, characterNames);
+        // Build prompt for this one episode with scenes using consistent character names
+        String prompt = episodePrompt(project, episodeNumber, characterNames);
 
         System.out.println("=== EPISODE PROMPT PREVIEW ===");
         System.out.println("Character Names Injected: " + characterNames);
-        System.out.println("Prompt Length: " + prompt.length() + " characters");
+        System.out.println("Prompt Length: " + prompt.length() + " characters (~" + TokenEstimator.estimate(prompt) + " tokens)");
 
         // Get AI response and extract episode with scenes
         System.out.println("Calling AI service for episode generation...");
-        String json = aiClientService.askModel(prompt);
+        String json = aiClientService.askModel(prompt, episodeCallOptions(project, PromptBuilderService.EPISODE_MAX_SCENES));
 
         System.out.println("=== AI RESPONSE RECEIVED ===");
         System.out.println("Response Length: " + json.length() + " characters");
         System.out.println("Response Preview: " + json.substring(0, Math.min(200, json.length())) + "...");
 
-        // Extract episode with scenes using the updated JSON extractor
-        Episode episode = jsonExtractor.extractEpisodeWithScenes(json, project, episodeNumber);
+        // Extract episode with scenes, keeping the complete ones if the answer was cut off
+        CharacterNameResolver characters = jsonExtractor.characterResolverFor(project);
+        Episode episode = newEpisode(project, episodeNumber);
+        IncrementalSceneParser parser = jsonExtractor.readEpisodeScenes(json, episode, characters, true, episode.getScenes()::add);
+        applyEpisodeHeader(episode, parser);
+        if (parser.isTruncated()) {
+            continueTruncatedEpisode(project, episode, characterNames, characters, episode.getScenes()::add);
+        }
+        System.out.println("Character links: " + characters.summary());
 
         System.out.println("=== EPISODE EXTRACTION COMPLETE ===");
         System.out.println("Episode Title: " + episode.getTitle());
@@ -66,15 +220,142 @@ public class EpisodeService {
             }
             System.out.println("Total character-scene associations: " + totalCharacterAssociations);
         }
+        return episode;
+    }
 
-        // Save and return the episode
-        Episode savedEpisode = episodeRepository.save(episode);
-        System.out.println("Episode saved with ID: " + savedEpisode.getId());
-        System.out.println("=== EPISODE GENERATION COMPLETE ===");
+    private String episodePrompt(Project project, int episodeNumber, String characterNames) {
+        int totalEpisodes = project.getEpisodeCount() == null ? episodeNumber : Math.max(episodeNumber, project.getEpisodeCount());
+        return promptBuilderService.singleEpisodePrompt(project.getDescription(), episodeNumber, totalEpisodes, characterNames);
+    }
+
+    // Streaming variant: each scene is saved as soon as the model closes it, so scenes
+    // become readable while the rest of the episode is still being generated
+    public Episode generateEpisodeWithScenesStreaming(Project project, int episodeNumber, String characterNames) throws Exception {
+        System.out.println("=== STREAMING EPISODE " + episodeNumber + " ===");
+        System.out.println("Project: " + project.getTitle());
+        System.out.println("Available Characters: " + characterNames);
 
+        String prompt = episodePrompt(project, episodeNumber, characterNames);
+        System.out.println("Prompt Length: " + prompt.length() + " characters (~" + TokenEstimator.estimate(prompt) + " tokens)");
+
+        // Save the episode shell first so scenes can reference it
+        Episode savedEpisode = screenplayPersistenceService.saveEpisodeWithScenes(newEpisode(project, episodeNumber));
+
+        CharacterNameResolver characters = jsonExtractor.characterResolverFor(project);
+        Consumer<Scene> saveScene = scene -> {
+            savedEpisode.getScenes().add(screenplayPersistenceService.saveScene(scene));
+            System.out.println("Streamed episode " + episodeNumber + " scene " + scene.getSceneNumber() +
+                    " with " + scene.getCharacters().size() + " characters");
+        };
+        IncrementalSceneParser parser = new IncrementalSceneParser(parsed -> saveScene.accept(
+                jsonExtractor.toEpisodeScene(parsed, savedEpisode, savedEpisode.getScenes().size() + 1, characters)));
+
+        try {
+            aiClientService.streamModel(prompt, episodeCallOptions(project, PromptBuilderService.EPISODE_MAX_SCENES), parser::feed);
+            parser.finish(true);
+            if (parser.isTruncated()) {
+                continueTruncatedEpisode(project, savedEpisode, characterNames, characters, saveScene);
+            }
+        } catch (Exception e) {
+            // Nothing usable was generated: drop the partially written episode
+            screenplayPersistenceService.deleteEpisode(savedEpisode.getId());
+            throw e;
+        }
+
+        applyEpisodeHeader(savedEpisode, parser);
+
+        screenplayPersistenceService.updateEpisodeHeader(savedEpisode.getId(), savedEpisode.getTitle(),
+                savedEpisode.getSummary(), savedEpisode.getDurationMinutes());
+        System.out.println("=== EPISODE STREAMING COMPLETE: " + parser.getSceneCount() + " scenes ===");
+        System.out.println("Character links: " + characters.summary());
         return savedEpisode;
     }
 
+    private Episode newEpisode(Project project, int episodeNumber) {
+        Episode episode = new Episode();
+        episode.setProject(project);
+        episode.setEpisodeNumber(episodeNumber);
+        episode.setTitle("Episode " + episodeNumber);
+        episode.setSummary(project.getDescription());
+        episode.setScenes(new HashSet<>());
+        return episode;
+    }
+
+    // Model-provided title / summary / duration, when present
+    private void applyEpisodeHeader(Episode episode, IncrementalSceneParser parser) {
+        if (parser.getTitle() != null) {
+            episode.setTitle(parser.getTitle());
+        }
+        if (parser.getSummary() != null) {
+            episode.setSummary(parser.getSummary());
+        }
+        if (parser.getDurationMinutes() != null) {
+            episode.setDurationMinutes(parser.getDurationMinutes());
+        }
+    }
+
+    /**
+     * The answer for this episode was cut off by the token limit. The scenes that closed before
+     * the cut are kept and follow-up prompts ask only for the scenes after them, instead of paying
+     * for the whole episode again. Outcomes are counted in ai.truncation.recovery{outcome}:
+     * continued (episode completed), partial (kept what was recovered) or failed (nothing usable).
+     */
+    private void continueTruncatedEpisode(Project project, Episode episode, String characterNames,
+                                          CharacterNameResolver characters, Consumer<Scene> onScene) throws Exception {
+        int episodeNumber = episode.getEpisodeNumber();
+        int recovered = episode.getScenes().size();
+        meterRegistry.summary("ai.truncation.recovered.scenes").record(recovered);
+        if (recovered == 0) {
+            recordRecovery("failed");
+            throw new RuntimeException("AI response was truncated - try reducing prompt size or increasing token limits");
+        }
+        System.out.println("Episode " + episodeNumber + " was truncated, recovered " + recovered + " complete scenes");
+
+        boolean complete = false;
+        for (int attempt = 1; attempt <= maxContinuations && !complete; attempt++) {
+            int before = episode.getScenes().size();
+            try {
+                String json = aiClientService.askModel(continuationPrompt(project, episode, characterNames),
+                        episodeCallOptions(project, Math.max(1, PromptBuilderService.EPISODE_MAX_SCENES - episode.getScenes().size())));
+                complete = !jsonExtractor.readEpisodeScenes(json, episode, characters, true, onScene).isTruncated();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                System.err.println("Continuation " + attempt + " of episode " + episodeNumber + " failed: " + e.getMessage());
+            }
+            int added = episode.getScenes().size() - before;
+            System.out.println("Continuation " + attempt + " of episode " + episodeNumber + " added " + added + " scenes");
+            if (!complete && added == 0) {
+                break;
+            }
+        }
+        recordRecovery(complete ? "continued" : "partial");
+    }
+
+    private AiCallOptions episodeCallOptions(Project project, int expectedScenes) {
+        return AiCallOptions.builder()
+                .companyId(project.getCompany().getId())
+                .responseSchema(AiResponseSchema.EPISODE)
+                .expectedScenes(expectedScenes)
+                .context(project.getDescription())
+                .build();
+    }
+
+    private String continuationPrompt(Project project, Episode episode, String characterNames) {
+        List<String> slugs = episode.getScenes().stream()
+                .sorted(Comparator.comparing(Scene::getSceneNumber))
+                .map(Scene::getSetting)
+                .toList();
+        int totalEpisodes = project.getEpisodeCount() == null ? episode.getEpisodeNumber()
+                : Math.max(episode.getEpisodeNumber(), project.getEpisodeCount());
+        return promptBuilderService.episodeContinuationPrompt(project.getDescription(), episode.getEpisodeNumber(),
+                totalEpisodes, characterNames, slugs);
+    }
+
+    private void recordRecovery(String outcome) {
+        meterRegistry.counter("ai.truncation.recovery", "outcome", outcome).increment();
+    }
+
     // UTILITY METHOD: Validate episode character consistency
     public void validateEpisodeCharacterConsistency(Episode episode, String expectedCharacterNames) {
         if (episode.getScenes() == null || expectedCharacterNames == null) {
@@ -144,10 +425,11 @@ public class EpisodeService {
                 .map(FilmCharacters::getName)
                 .collect(Collectors.joining(", "));
 
-        // Generate episodes 1, 2, 3... up to the project's episode count
-        for (int episodeNumber = 1; episodeNumber <= project.getEpisodeCount(); episodeNumber++) {
-            generateEpisodeWithScenes(project, episodeNumber, characterNames);
-        }
+        // Generate episodes 1, 2, 3... up to the project's episode count. The characters are copied
+        // into a plain set because the episodes are built on other threads.
+        project.setCharacters(new HashSet<>(characters));
+        List<Integer> episodeNumbers = IntStream.rangeClosed(1, project.getEpisodeCount()).boxed().toList();
+        generateEpisodes(project, episodeNumbers, characterNames, episode -> { });
     }
 
     // Get project episode with authorization
@@ -7,8 +7,10 @@ import com.example.claquetteai.DTO.SceneDTOOUT;
 import com.example.claquetteai.Model.*;
 import com.example.claquetteai.Repository.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -24,6 +26,10 @@ public class FilmService {
     private final JsonExtractor jsonExtractor;
     private final PromptBuilderService promptBuilderService;
     private final AiClientService aiClientService;
+    private final ScreenplayPersistenceService screenplayPersistenceService;
+
+    @Value("${openai.streaming.enabled:true}")
+    private boolean streamingEnabled;
 
     // Main film generation method (similar to episode generation pattern)
     public void generateFilm(Integer userId, Integer projectId) throws Exception {
@@ -68,6 +74,10 @@ public class FilmService {
 
     // Core film generation method with character consistency
     public Film generateFilmWithScenes(Project project, String characterNames) throws Exception {
+        if (streamingEnabled) {
+            return generateFilmWithScenesStreaming(project, characterNames);
+        }
+
         System.out.println("=== GENERATING FILM ===");
         System.out.println("Project: " + project.getTitle());
         System.out.println("Available Characters: " + characterNames);
@@ -77,11 +87,11 @@ public class FilmService {
 
         System.out.println("=== FILM PROMPT PREVIEW ===");
         System.out.println("Character Names Injected: " + characterNames);
-        System.out.println("Prompt Length: " + prompt.length() + " characters");
+        System.out.println("Prompt Length: " + prompt.length() + " characters (~" + TokenEstimator.estimate(prompt) + " tokens)");
 
         // Get AI response and extract film with scenes
         System.out.println("Calling AI service for film generation...");
-        String json = aiClientService.askModel(prompt);
+        String json = aiClientService.askModel(prompt, filmCallOptions(project));
 
         System.out.println("=== AI RESPONSE RECEIVED ===");
         System.out.println("Response Length: " + json.length() + " characters");
@@ -108,14 +118,70 @@ public class FilmService {
             System.out.println("Total character-scene associations: " + totalCharacterAssociations);
         }
 
-        // Save and return the film
-        Film savedFilm = filmRepository.save(film);
+        // Save and return the film (short transaction, the model call above ran outside it)
+        Film savedFilm = screenplayPersistenceService.saveFilmWithScenes(film);
         System.out.println("Film saved with ID: " + savedFilm.getId());
         System.out.println("=== FILM GENERATION COMPLETE ===");
 
         return savedFilm;
     }
 
+    // Streaming variant: each scene is saved as soon as the model closes it
+    public Film generateFilmWithScenesStreaming(Project project, String characterNames) throws Exception {
+        System.out.println("=== STREAMING FILM ===");
+        System.out.println("Project: " + project.getTitle());
+        System.out.println("Available Characters: " + characterNames);
+
+        String prompt = promptBuilderService.filmPrompt(project.getDescription(), characterNames);
+        System.out.println("Prompt Length: " + prompt.length() + " characters (~" + TokenEstimator.estimate(prompt) + " tokens)");
+
+        // Save the film shell first so scenes can reference it
+        Film film = new Film();
+        film.setProject(project);
+        film.setTitle(project.getTitle());
+        film.setSummary(project.getDescription());
+        film.setScenes(new HashSet<>());
+        Film savedFilm = screenplayPersistenceService.saveFilmWithScenes(film);
+
+        CharacterNameResolver characters = jsonExtractor.characterResolverFor(project);
+        IncrementalSceneParser parser = new IncrementalSceneParser(parsed -> {
+            Scene scene = jsonExtractor.toFilmScene(parsed, savedFilm, savedFilm.getScenes().size() + 1, characters);
+            savedFilm.getScenes().add(screenplayPersistenceService.saveScene(scene));
+            System.out.println("Streamed film scene " + scene.getSceneNumber() +
+                    " with " + scene.getCharacters().size() + " characters");
+        });
+
+        try {
+            aiClientService.streamModel(prompt, filmCallOptions(project), parser::feed);
+            parser.finish();
+        } catch (Exception e) {
+            // Keep the old all-or-nothing behaviour: drop the partially written film
+            screenplayPersistenceService.deleteFilm(savedFilm.getId());
+            throw e;
+        }
+
+        if (parser.getSummary() != null) {
+            savedFilm.setSummary(parser.getSummary());
+        }
+        if (parser.getDurationMinutes() != null) {
+            savedFilm.setDurationMinutes(parser.getDurationMinutes());
+        }
+
+        screenplayPersistenceService.updateFilmHeader(savedFilm.getId(), savedFilm.getSummary(), savedFilm.getDurationMinutes());
+        System.out.println("=== FILM STREAMING COMPLETE: " + parser.getSceneCount() + " scenes ===");
+        System.out.println("Character links: " + characters.summary());
+        return savedFilm;
+    }
+
+    private AiCallOptions filmCallOptions(Project project) {
+        return AiCallOptions.builder()
+                .companyId(project.getCompany().getId())
+                .responseSchema(AiResponseSchema.FILM)
+                .expectedScenes(PromptBuilderService.FILM_MAX_SCENES)
+                .context(project.getDescription())
+                .build();
+    }
+
     // Get project film with authorization (returning DTO)
     public FilmDTOOUT getProjectFilm(Integer userId, Integer projectId) {
         User user = userRepository.findUserById(userId);
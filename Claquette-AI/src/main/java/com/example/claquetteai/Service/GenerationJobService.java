@@ -0,0 +1,246 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Api.ApiException;
+import com.example.claquetteai.Api.TooManyRequestsException;
+import com.example.claquetteai.DTO.GenerationJobDTOOUT;
+import com.example.claquetteai.Model.GenerationJob;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.User;
+import com.example.claquetteai.Repository.GenerationJobRepository;
+import com.example.claquetteai.Repository.ProjectRepository;
+import com.example.claquetteai.Repository.UserRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Runs screenplay generation as background jobs.
+ * The request thread saves a QUEUED row and returns its id; a bounded worker pool claims the
+ * row, runs AiInteractionService.generateFullScreenplay and writes stage/progress back to the
+ * row, so clients poll instead of holding an HTTP request open for minutes.
+ * One active job per project is enforced by a unique key on the row, not by a check before the insert.
+ * Jobs left QUEUED are dispatched again on startup (claiming is atomic, so a job another node also
+ * queued still runs once). A RUNNING job is only taken back by the node that claimed it, or by any
+ * node once its row has not moved for stale-minutes, so a restart never restarts another live node's work.
+ */
+@Service
+public class GenerationJobService {
+
+    private static final List<String> ACTIVE_STATUSES = List.of("QUEUED", "RUNNING");
+
+    private final GenerationJobRepository generationJobRepository;
+    private final ProjectRepository projectRepository;
+    private final UserRepository userRepository;
+    private final AiInteractionService aiInteractionService;
+    private final ThreadPoolTaskExecutor generationJobExecutor;
+    private final TransactionTemplate newTransaction;
+
+    @Value("${generation.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${generation.jobs.retry-after-seconds:30}")
+    private long retryAfterSeconds;
+
+    @Value("${generation.jobs.node-id:${HOSTNAME:local}}")
+    private String nodeId;
+
+    // Progress updates touch the row; a RUNNING job silent for this long lost its node
+    @Value("${generation.jobs.stale-minutes:30}")
+    private long staleMinutes;
+
+    public GenerationJobService(GenerationJobRepository generationJobRepository,
+                                ProjectRepository projectRepository,
+                                UserRepository userRepository,
+                                AiInteractionService aiInteractionService,
+                                @Qualifier("generationJobExecutor") ThreadPoolTaskExecutor generationJobExecutor,
+                                PlatformTransactionManager transactionManager) {
+        this.generationJobRepository = generationJobRepository;
+        this.projectRepository = projectRepository;
+        this.userRepository = userRepository;
+        this.aiInteractionService = aiInteractionService;
+        this.generationJobExecutor = generationJobExecutor;
+        // Progress and status rows commit on their own, whatever the caller is doing
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public GenerationJobDTOOUT submit(Integer userId, Integer projectId) {
+        User user = userRepository.findUserById(userId);
+        if (user == null) {
+            throw new ApiException("user not found");
+        }
+        if (!user.getCompany().getIsSubscribed() && user.getUseAI() <= 0) {
+            throw new ApiException("you cannot generate project using AI subscribe");
+        }
+        Project project = projectRepository.findProjectById(projectId);
+        if (project == null) {
+            throw new ApiException("project not found");
+        }
+        if (!project.getCompany().getUser().equals(user)) {
+            throw new ApiException("not authorized");
+        }
+        if (generationJobExecutor.getThreadPoolExecutor().getQueue().remainingCapacity() == 0) {
+            throw new TooManyRequestsException("Too many generations waiting, please try again shortly", retryAfterSeconds);
+        }
+
+        GenerationJob job = new GenerationJob();
+        job.setStatus("QUEUED");
+        job.setStage("queued");
+        job.setUserId(userId);
+        job.setProject(project);
+        job.setActiveProjectId(project.getId());
+        try {
+            job = generationJobRepository.saveAndFlush(job);
+        } catch (DataIntegrityViolationException e) {
+            throw new ApiException("a generation is already running for this project");
+        }
+
+        dispatch(job.getId());
+        return toDTO(job);
+    }
+
+    public GenerationJobDTOOUT getJob(Integer userId, Integer jobId) {
+        GenerationJob job = generationJobRepository.findGenerationJobById(jobId);
+        if (job == null) {
+            throw new ApiException("job not found");
+        }
+        if (!job.getUserId().equals(userId)) {
+            throw new ApiException("not authorized");
+        }
+        return toDTO(job);
+    }
+
+    public GenerationJobDTOOUT getLatestProjectJob(Integer userId, Integer projectId) {
+        Project project = projectRepository.findProjectById(projectId);
+        if (project == null) {
+            throw new ApiException("project not found");
+        }
+        if (!project.getCompany().getUser().getId().equals(userId)) {
+            throw new ApiException("not authorized");
+        }
+        GenerationJob job = generationJobRepository.findTopByProjectOrderByIdDesc(project);
+        if (job == null) {
+            throw new ApiException("no generation job found for this project");
+        }
+        return toDTO(job);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<GenerationJob> unfinished = generationJobRepository.findGenerationJobsByStatusInOrderByIdAsc(ACTIVE_STATUSES);
+        LocalDateTime staleBefore = LocalDateTime.now().minusMinutes(staleMinutes);
+        int resumed = 0;
+        for (GenerationJob job : unfinished) {
+            if ("RUNNING".equals(job.getStatus())) {
+                boolean ours = job.getNodeId() == null || job.getNodeId().equals(nodeId);
+                boolean stale = job.getUpdatedAt() == null || job.getUpdatedAt().isBefore(staleBefore);
+                if (!ours && !stale) {
+                    // Still running on another node
+                    continue;
+                }
+                // The node stopped while this job was running
+                if (job.getAttempts() >= maxAttempts) {
+                    finish(job.getId(), "FAILED", "Generation was interrupted too many times");
+                    continue;
+                }
+                job.setStatus("QUEUED");
+                job.setStage("queued");
+                generationJobRepository.save(job);
+            }
+            resumed++;
+            try {
+                dispatch(job.getId());
+            } catch (TooManyRequestsException e) {
+                System.out.println("Generation queue full while resuming, job " + job.getId() + " marked failed");
+            }
+        }
+        if (resumed > 0) {
+            System.out.println("Resumed " + resumed + " unfinished generation jobs on node " + nodeId);
+        }
+    }
+
+    private void dispatch(Integer jobId) {
+        try {
+            generationJobExecutor.execute(() -> run(jobId));
+        } catch (TaskRejectedException e) {
+            finish(jobId, "FAILED", "Generation queue is full");
+            throw new TooManyRequestsException("Too many generations waiting, please try again shortly", retryAfterSeconds);
+        }
+    }
+
+    private void run(Integer jobId) {
+        Integer claimed = newTransaction.execute(status -> generationJobRepository.claim(jobId, nodeId));
+        if (claimed == null || claimed != 1) {
+            return;
+        }
+
+        GenerationJob job = generationJobRepository.findGenerationJobById(jobId);
+        long start = System.currentTimeMillis();
+        System.out.println("=== GENERATION JOB " + jobId + " STARTED (project " + job.getProject().getId() + ") ===");
+        try {
+            aiInteractionService.generateFullScreenplay(job.getProject().getId(), job.getUserId(),
+                    (stage, completedSteps, totalSteps) -> updateProgress(jobId, stage, completedSteps, totalSteps));
+            finish(jobId, "COMPLETED", null);
+            System.out.println("=== GENERATION JOB " + jobId + " COMPLETED in " + (System.currentTimeMillis() - start) + " ms ===");
+        } catch (Exception e) {
+            System.err.println("Generation job " + jobId + " failed: " + e.getMessage());
+            finish(jobId, "FAILED", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    private void updateProgress(Integer jobId, String stage, int completedSteps, int totalSteps) {
+        newTransaction.executeWithoutResult(status ->
+                generationJobRepository.updateProgress(jobId, stage, completedSteps, totalSteps));
+    }
+
+    private void finish(Integer jobId, String status, String errorMessage) {
+        newTransaction.executeWithoutResult(tx -> {
+            GenerationJob job = generationJobRepository.findGenerationJobById(jobId);
+            job.setStatus(status);
+            job.setErrorMessage(errorMessage);
+            job.setFinishedAt(LocalDateTime.now());
+            // Frees the project for its next job
+            job.setActiveProjectId(null);
+            if ("COMPLETED".equals(status)) {
+                job.setStage("done");
+                job.setCompletedSteps(job.getTotalSteps());
+            }
+            generationJobRepository.save(job);
+        });
+    }
+
+    private GenerationJobDTOOUT toDTO(GenerationJob job) {
+        int total = job.getTotalSteps() == null ? 0 : job.getTotalSteps();
+        int completed = job.getCompletedSteps() == null ? 0 : job.getCompletedSteps();
+        LocalDateTime from = job.getStartedAt() != null ? job.getStartedAt() : job.getCreatedAt();
+        LocalDateTime to = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+        long elapsed = from == null ? 0 : Duration.between(from, to).getSeconds();
+
+        return new GenerationJobDTOOUT(
+                job.getId(),
+                job.getProject().getId(),
+                job.getStatus(),
+                job.getStage(),
+                completed,
+                total,
+                total == 0 ? 0 : completed * 100 / total,
+                elapsed,
+                job.getErrorMessage(),
+                job.getCreatedAt(),
+                job.getStartedAt(),
+                job.getFinishedAt()
+        );
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.claquetteai.Service;
+
+/**
+ * Receives stage changes while a screenplay is generated
+ */
+@FunctionalInterface
+public interface GenerationProgressListener {
+
+    GenerationProgressListener NONE = (stage, completedSteps, totalSteps) -> { };
+
+    void onStage(String stage, int completedSteps, int totalSteps);
+}
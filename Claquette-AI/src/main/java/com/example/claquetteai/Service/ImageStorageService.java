@@ -0,0 +1,392 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Api.ApiException;
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Repository.StoredImageRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Content-addressed image files: the raw bytes are written once to
+ * storage.images.dir/ab/cd/abcd…(SHA-256) and described by a stored_image row (type, size, hash).
+ * Projects and users point at the row. Downloads stream the file as it is, nothing is decoded.
+ * Files are immutable, so a file that exists under its hash is always complete and correct.
+ * With more than one node the directory has to be shared (NFS / EFS volume).
+ */
+@Service
+public class ImageStorageService {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final StoredImageRepository storedImageRepository;
+    private final TransactionTemplate newTransaction;
+    private final Path root;
+
+    // Larger uploads are refused before anything decodes them
+    @Value("${storage.images.max-dimension:8000}")
+    private int maxDimension = 8000;
+
+    public ImageStorageService(StoredImageRepository storedImageRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${storage.images.dir:data/images}") String dir) {
+        this.storedImageRepository = storedImageRepository;
+        // The row is committed on its own: a duplicate hash must not roll back the caller's transaction
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.root = Path.of(dir);
+    }
+
+    /**
+     * Stores the bytes (once per distinct content) and returns their row.
+     * contentType may be null; it is then taken from the file signature.
+     */
+    public StoredImage store(byte[] bytes, String contentType) {
+        if (bytes == null || bytes.length == 0) {
+            throw new ApiException("image is empty");
+        }
+        return store(out -> out.write(bytes), contentType);
+    }
+
+    /**
+     * Same, for content written by the caller: the bytes go to a temporary file and are hashed
+     * on the way, so a large image is never held in memory
+     */
+    public StoredImage store(ImageWriter writer, String contentType) {
+        return store(writer, file -> contentType != null ? contentType : sniffContentType(head(file, 12)));
+    }
+
+    /**
+     * An upload: the multipart body is copied to storage (at most maxBytes of it, hashed on the way)
+     * and its format and dimensions are read from the image header, without decoding any pixels,
+     * before the file is kept. The type stored is the one found in the file, not the one declared.
+     */
+    public StoredImage storeUpload(MultipartFile file, long maxBytes, Set<String> allowedTypes) {
+        return store(out -> {
+            try (InputStream in = file.getInputStream()) {
+                copyAtMost(in, out, maxBytes);
+            }
+        }, temp -> {
+            ImageInfo info = probe(temp);
+            if (info == null || !allowedTypes.contains(info.contentType())) {
+                throw new IllegalArgumentException("Invalid image");
+            }
+            if (info.width() <= 0 || info.height() <= 0 || info.width() > maxDimension || info.height() > maxDimension) {
+                throw new IllegalArgumentException("Invalid image size (max " + maxDimension + " px per side)");
+            }
+            return info.contentType();
+        });
+    }
+
+    public record ImageInfo(String contentType, int width, int height) {
+    }
+
+    /**
+     * Format and dimensions from the header: ImageIO readers stop after the header when only the size
+     * is asked for; WebP, which the JDK cannot read, is taken from its VP8 / VP8L / VP8X chunk
+     */
+    public static ImageInfo probe(Path file) throws IOException {
+        byte[] head = head(file, 30);
+        String contentType = sniffContentType(head);
+        if (MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(contentType)) {
+            return null;
+        }
+        if ("image/webp".equals(contentType)) {
+            return webpInfo(head);
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new ImageInfo(contentType, reader.getWidth(0), reader.getHeight(0));
+            } catch (IOException e) {
+                // not a readable header
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private StoredImage store(ImageWriter writer, ContentTypeCheck contentTypeCheck) {
+        Path temp = null;
+        try {
+            Files.createDirectories(root);
+            temp = Files.createTempFile(root, "incoming", ".tmp");
+            MessageDigest digest = newDigest();
+            try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), digest)) {
+                writer.writeTo(out);
+            }
+            long size = Files.size(temp);
+            if (size == 0) {
+                throw new ApiException("image is empty");
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            String contentType = contentTypeCheck.contentTypeOf(temp);
+
+            StoredImage existing = storedImageRepository.findStoredImageBySha256(sha256);
+            Path target = pathOf(sha256);
+            if (existing == null || !Files.exists(target)) {
+                // Moved into place whole, so a reader never sees half a file. A row that outlived
+                // its file (restored database, lost volume) gets the file back here.
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (existing != null) {
+                return existing;
+            }
+
+            StoredImage image = new StoredImage();
+            image.setSha256(sha256);
+            image.setContentType(contentType);
+            image.setSizeBytes(size);
+            try {
+                return newTransaction.execute(status -> storedImageRepository.saveAndFlush(image));
+            } catch (DataIntegrityViolationException e) {
+                // Someone stored the same image at the same time; their row is committed
+                return newTransaction.execute(status -> storedImageRepository.findStoredImageBySha256(sha256));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store image", e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // only left over when the image was not stored
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface ImageWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Content type of the written file; throws to refuse it
+    @FunctionalInterface
+    private interface ContentTypeCheck {
+        String contentTypeOf(Path file) throws IOException;
+    }
+
+    public Resource open(StoredImage image) {
+        Path path = pathOf(image.getSha256());
+        if (!Files.exists(path)) {
+            throw new ApiException("image file is missing");
+        }
+        return new FileSystemResource(path);
+    }
+
+    /**
+     * 200 with the file. Without a Range header on a connector that supports it (Tomcat NIO), the
+     * body is handed to sendfile and goes from the page cache to the socket without passing through
+     * the JVM; otherwise the resource converter streams it, and a Range request gets a 206 with
+     * the requested parts. Either way the hash is the ETag.
+     */
+    public ResponseEntity<Resource> imageResponse(StoredImage image, String fileName) {
+        Resource file = open(image);
+        HttpHeaders headers = cacheHeaders(image.getSha256());
+        headers.setContentType(MediaType.parseMediaType(image.getContentType()));
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + extension(image.getContentType()) + "\"");
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (sendFile(image)) {
+            headers.setContentLength(image.getSizeBytes());
+            return new ResponseEntity<>(headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(file, headers, HttpStatus.OK);
+    }
+
+    /**
+     * True when the If-None-Match header names this hash, so the client's copy is still current
+     */
+    public boolean isCurrent(String ifNoneMatch, String sha256) {
+        if (ifNoneMatch == null || sha256 == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("\"" + sha256 + "\"") || value.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ResponseEntity<Resource> notModified(String sha256) {
+        return new ResponseEntity<>(cacheHeaders(sha256), HttpStatus.NOT_MODIFIED);
+    }
+
+    private HttpHeaders cacheHeaders(String sha256) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.maxAge(Duration.ofDays(7)).cachePrivate());
+        headers.setETag("\"" + sha256 + "\"");
+        return headers;
+    }
+
+    // Same request attributes Tomcat's DefaultServlet uses; Tomcat writes the file once the response is committed
+    private boolean sendFile(StoredImage image) {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return false;
+        }
+        HttpServletRequest request = attributes.getRequest();
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                || !"GET".equals(request.getMethod())
+                || request.getHeader(HttpHeaders.RANGE) != null) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME, pathOf(image.getSha256()).toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, 0L);
+        request.setAttribute(SENDFILE_END, image.getSizeBytes());
+        return true;
+    }
+
+    // Two directory levels keep any one directory small
+    private Path pathOf(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    static String sniffContentType(byte[] bytes) {
+        if (startsWith(bytes, 0, 0x89, 'P', 'N', 'G')) {
+            return MediaType.IMAGE_PNG_VALUE;
+        }
+        if (startsWith(bytes, 0, 0xFF, 0xD8, 0xFF)) {
+            return MediaType.IMAGE_JPEG_VALUE;
+        }
+        if (startsWith(bytes, 0, 'G', 'I', 'F', '8')) {
+            return MediaType.IMAGE_GIF_VALUE;
+        }
+        if (startsWith(bytes, 0, 'R', 'I', 'F', 'F') && startsWith(bytes, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, int... signature) {
+        if (bytes.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((bytes[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String extension(String contentType) {
+        return switch (contentType) {
+            case MediaType.IMAGE_JPEG_VALUE -> ".jpg";
+            case MediaType.IMAGE_GIF_VALUE -> ".gif";
+            case "image/webp" -> ".webp";
+            default -> ".png";
+        };
+    }
+
+    private static byte[] head(Path file, int bytes) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readNBytes(bytes);
+        }
+    }
+
+    private static void copyAtMost(InputStream in, OutputStream out, long maxBytes) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > maxBytes) {
+                throw new IllegalArgumentException("File too large (max " + maxBytes / (1024 * 1024) + "MB)");
+            }
+            out.write(buffer, 0, read);
+        }
+    }
+
+    // RIFF....WEBP then the first chunk, see the WebP container specification
+    private static ImageInfo webpInfo(byte[] head) {
+        if (head.length < 30) {
+            return null;
+        }
+        String chunk = new String(head, 12, 4, StandardCharsets.US_ASCII);
+        switch (chunk) {
+            case "VP8X":
+                return new ImageInfo("image/webp", 1 + littleEndian(head, 24, 3), 1 + littleEndian(head, 27, 3));
+            case "VP8L": {
+                if ((head[20] & 0xFF) != 0x2F) {
+                    return null;
+                }
+                int bits = littleEndian(head, 21, 4);
+                return new ImageInfo("image/webp", 1 + (bits & 0x3FFF), 1 + ((bits >> 14) & 0x3FFF));
+            }
+            case "VP8 ":
+                if (!startsWith(head, 23, 0x9D, 0x01, 0x2A)) {
+                    return null;
+                }
+                return new ImageInfo("image/webp", littleEndian(head, 26, 2) & 0x3FFF, littleEndian(head, 28, 2) & 0x3FFF);
+            default:
+                return null;
+        }
+    }
+
+    private static int littleEndian(byte[] bytes, int offset, int length) {
+        int value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
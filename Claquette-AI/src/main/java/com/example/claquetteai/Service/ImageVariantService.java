@@ -0,0 +1,181 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Model.StoredImageVariant;
+import com.example.claquetteai.Repository.StoredImageVariantRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Thumbnails of stored images, one per size in storage.images.variant-sizes (longest side in
+ * pixels), made once in plain Java (ImageIO + Java2D) and kept in the image store like any other
+ * image, so each has its own file and ETag. List views ask for ?size=256 instead of the original.
+ * Variants are made right after an upload or a generated poster; an image stored before that,
+ * or a size added later, gets its variant the first time it is asked for.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final StoredImageVariantRepository storedImageVariantRepository;
+    private final ImageStorageService imageStorageService;
+    private final TransactionTemplate newTransaction;
+    private final List<Integer> sizes;
+
+    public ImageVariantService(StoredImageVariantRepository storedImageVariantRepository,
+                               ImageStorageService imageStorageService,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${storage.images.variant-sizes:128,256,512}") List<Integer> sizes) {
+        this.storedImageVariantRepository = storedImageVariantRepository;
+        this.imageStorageService = imageStorageService;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.sizes = sizes.stream().sorted().toList();
+    }
+
+    // A failed thumbnail never fails the upload; it is tried again when first asked for
+    public void createVariants(StoredImage original) {
+        for (Integer size : sizes) {
+            try {
+                variant(original, size);
+            } catch (RuntimeException e) {
+                System.out.println("Could not make the " + size + " px variant of image " + original.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The image to serve for a requested size: the smallest variant at least that large, or the
+     * original when no size was asked for, the size is above every variant, or it cannot be decoded
+     */
+    public StoredImage variant(StoredImage original, Integer requestedSize) {
+        Integer size = sizeFor(requestedSize);
+        if (size == null) {
+            return original;
+        }
+        StoredImageVariant existing = storedImageVariantRepository.findStoredImageVariantByOriginalAndLongestSide(original, size);
+        if (existing != null) {
+            return existing.getImage();
+        }
+        StoredImage image = render(original, size);
+        if (image == null) {
+            return original;
+        }
+
+        StoredImageVariant variant = new StoredImageVariant();
+        variant.setOriginal(original);
+        variant.setLongestSide(size);
+        variant.setImage(image);
+        try {
+            newTransaction.executeWithoutResult(status -> storedImageVariantRepository.saveAndFlush(variant));
+        } catch (DataIntegrityViolationException e) {
+            // Made at the same time by another request; the file is the same
+        }
+        return image;
+    }
+
+    // Hash of a variant already made, for answering If-None-Match without loading anything
+    public String variantSha256(String originalSha256, Integer requestedSize) {
+        Integer size = sizeFor(requestedSize);
+        if (originalSha256 == null || size == null) {
+            return originalSha256;
+        }
+        return storedImageVariantRepository.findVariantSha256(originalSha256, size);
+    }
+
+    public Integer sizeFor(Integer requestedSize) {
+        if (requestedSize == null) {
+            return null;
+        }
+        return sizes.stream().filter(size -> size >= requestedSize).findFirst().orElse(null);
+    }
+
+    // Null when the JDK has no reader for the format (WebP)
+    private StoredImage render(StoredImage original, int size) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(imageStorageService.open(original).getFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            BufferedImage source;
+            int width;
+            int height;
+            try {
+                reader.setInput(in, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                if (Math.max(width, height) <= size) {
+                    // Already small enough, never scaled up
+                    return original;
+                }
+                // Only every n-th pixel is decoded, down to about twice the target, so a large
+                // original is never fully in memory; the last step is a smooth scale
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (size * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+
+            double scale = (double) size / Math.max(width, height);
+            int targetWidth = Math.max(1, (int) Math.round(width * scale));
+            int targetHeight = Math.max(1, (int) Math.round(height * scale));
+            boolean alpha = source.getColorModel().hasAlpha();
+            BufferedImage thumbnail = new BufferedImage(targetWidth, targetHeight,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = thumbnail.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+            } finally {
+                g.dispose();
+            }
+
+            // Transparent images stay PNG; everything else is much smaller as JPEG
+            return alpha
+                    ? imageStorageService.store(out -> ImageIO.write(thumbnail, "png", out), MediaType.IMAGE_PNG_VALUE)
+                    : imageStorageService.store(out -> writeJpeg(thumbnail, out), MediaType.IMAGE_JPEG_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to make a " + size + " px variant", e);
+        }
+    }
+
+    private static void writeJpeg(BufferedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
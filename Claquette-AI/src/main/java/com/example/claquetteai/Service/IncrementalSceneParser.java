@@ -0,0 +1,331 @@
+package com.example.claquetteai.Service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Incremental (non-blocking) parser for episode / film responses.
+ * Text is fed chunk by chunk as it arrives from the model and every scene object
+ * is handed to the callback as soon as it closes, without building a JsonNode tree.
+ *
+ * Recognised layouts: {"episode": {...}}, {"episodes": [{...}, ...]} (first entry only)
+ * and {"film": {...}}; the scenes live in the "scenes" array of that object.
+ *
+ * parse(String, Consumer) runs the same state machine over a complete response with a
+ * blocking parser, so non-streamed answers are validated and bound in a single pass too.
+ *
+ * In salvage mode a response cut off by the token limit is not an error: every scene that
+ * closed before the cut has already been emitted, the partial tail is dropped and
+ * isTruncated() tells the caller to ask for the missing scenes.
+ */
+public class IncrementalSceneParser {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .build();
+
+    private final JsonParser parser;
+    // null when parsing a complete response
+    private final ByteArrayFeeder feeder;
+    private final Consumer<ParsedScene> onScene;
+
+    private boolean started;
+    private boolean finished;
+    private int depth;
+
+    private int episodesArrayDepth = -1;
+    private boolean unitSeen;
+    private int unitDepth = -1;
+    private boolean scenesSeen;
+    private int scenesArrayDepth = -1;
+    private int sceneDepth = -1;
+    private int dialogueArrayDepth = -1;
+    private int lineDepth = -1;
+
+    private ParsedScene currentScene;
+    private DialogueLine currentLine;
+
+    @Getter
+    private int sceneCount;
+    @Getter
+    private boolean truncated;
+    @Getter
+    private String title;
+    @Getter
+    private String summary;
+    @Getter
+    private Integer durationMinutes;
+
+    public IncrementalSceneParser(Consumer<ParsedScene> onScene) {
+        this.onScene = onScene;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    private IncrementalSceneParser(Consumer<ParsedScene> onScene, JsonParser parser) {
+        this.onScene = onScene;
+        this.parser = parser;
+        this.feeder = null;
+        this.started = true;
+    }
+
+    /**
+     * Parses a complete response in one pass: no JsonNode tree and no cleaned copy of the text.
+     * Prose or a markdown fence before the root object and anything after it are ignored.
+     * Fails with the same messages as the streaming path for truncated or malformed JSON.
+     */
+    public static IncrementalSceneParser parse(String json, Consumer<ParsedScene> onScene) {
+        return parse(json, onScene, false);
+    }
+
+    /**
+     * Same as parse(String, Consumer); with salvage a truncated response returns the parser
+     * (isTruncated() == true) after emitting its complete scenes instead of throwing
+     */
+    public static IncrementalSceneParser parse(String json, Consumer<ParsedScene> onScene, boolean salvage) {
+        int start = json == null ? -1 : json.indexOf('{');
+        if (start == -1) {
+            throw new RuntimeException("No valid JSON object found in AI response");
+        }
+        IncrementalSceneParser sceneParser = null;
+        try {
+            Reader reader = new StringReader(json);
+            reader.skip(start);
+            sceneParser = new IncrementalSceneParser(onScene, JSON_FACTORY.createParser(reader));
+            sceneParser.drain();
+        } catch (JsonEOFException e) {
+            if (salvage && sceneParser != null) {
+                sceneParser.finish(true);
+                return sceneParser;
+            }
+            throw new RuntimeException("AI response was truncated - try reducing prompt size or increasing token limits", e);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not parse AI response as valid JSON", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read AI response", e);
+        }
+        sceneParser.finish();
+        return sceneParser;
+    }
+
+    /**
+     * Feeds the next chunk of model output and emits every scene completed by it
+     */
+    public void feed(String chunk) {
+        if (finished || chunk == null || chunk.isEmpty()) {
+            return;
+        }
+
+        // Skip markdown fences or any prose before the JSON object starts
+        if (!started) {
+            int firstBrace = chunk.indexOf('{');
+            if (firstBrace == -1) {
+                return;
+            }
+            chunk = chunk.substring(firstBrace);
+            started = true;
+        }
+
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            drain();
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not parse AI response as valid JSON", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read AI response", e);
+        }
+    }
+
+    /**
+     * Signals end of input; fails when the root object never closed (truncated output)
+     */
+    public void finish() {
+        finish(false);
+    }
+
+    /**
+     * Signals end of input; with salvage a root object that never closed only marks the
+     * response as truncated, keeping the scenes emitted so far and dropping the open one
+     */
+    public void finish(boolean salvage) {
+        if (!started) {
+            throw new RuntimeException("No valid JSON object found in AI response");
+        }
+        if (!finished) {
+            System.err.println("Incremental parser stopped at depth " + depth + " after " + sceneCount + " complete scenes"
+                    + (currentScene != null ? ", dropping the unfinished one" : ""));
+            if (!salvage) {
+                throw new RuntimeException("AI response was truncated - try reducing prompt size or increasing token limits");
+            }
+            truncated = true;
+            currentScene = null;
+            currentLine = null;
+        }
+    }
+
+    public boolean isComplete() {
+        return finished;
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT -> {
+                depth++;
+                String name = parser.currentName();
+                if (!unitSeen && depth == 2 && ("episode".equals(name) || "film".equals(name))) {
+                    startUnit();
+                } else if (!unitSeen && episodesArrayDepth > 0 && depth == episodesArrayDepth + 1) {
+                    startUnit();
+                } else if (scenesArrayDepth > 0 && depth == scenesArrayDepth + 1) {
+                    sceneDepth = depth;
+                    currentScene = new ParsedScene();
+                } else if (dialogueArrayDepth > 0 && depth == dialogueArrayDepth + 1) {
+                    lineDepth = depth;
+                    currentLine = new DialogueLine();
+                }
+            }
+            case START_ARRAY -> {
+                depth++;
+                String name = parser.currentName();
+                if (depth == 2 && "episodes".equals(name)) {
+                    episodesArrayDepth = depth;
+                } else if (unitDepth > 0 && depth == unitDepth + 1 && "scenes".equals(name) && !scenesSeen) {
+                    scenesSeen = true;
+                    scenesArrayDepth = depth;
+                } else if (sceneDepth > 0 && depth == sceneDepth + 1 && "dialogue".equals(name)) {
+                    dialogueArrayDepth = depth;
+                }
+            }
+            case END_OBJECT -> {
+                if (depth == lineDepth) {
+                    currentScene.getDialogue().add(currentLine);
+                    currentLine = null;
+                    lineDepth = -1;
+                } else if (depth == sceneDepth) {
+                    sceneCount++;
+                    ParsedScene scene = currentScene;
+                    currentScene = null;
+                    sceneDepth = -1;
+                    onScene.accept(scene);
+                } else if (depth == unitDepth) {
+                    unitDepth = -1;
+                }
+                depth--;
+                if (depth == 0) {
+                    finished = true;
+                }
+            }
+            case END_ARRAY -> {
+                if (depth == dialogueArrayDepth) {
+                    dialogueArrayDepth = -1;
+                } else if (depth == scenesArrayDepth) {
+                    scenesArrayDepth = -1;
+                } else if (depth == episodesArrayDepth) {
+                    episodesArrayDepth = -1;
+                }
+                depth--;
+            }
+            case VALUE_STRING, VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_TRUE, VALUE_FALSE -> handleScalar();
+            default -> {
+                // FIELD_NAME, VALUE_NULL, VALUE_EMBEDDED_OBJECT: nothing to bind
+            }
+        }
+    }
+
+    private void startUnit() {
+        unitSeen = true;
+        unitDepth = depth;
+    }
+
+    private void handleScalar() throws IOException {
+        String name = parser.currentName();
+        if (name == null) {
+            return;
+        }
+        String value = parser.getText();
+
+        if (lineDepth > 0 && depth == lineDepth) {
+            switch (name) {
+                case "character" -> currentLine.setCharacter(value);
+                case "line" -> currentLine.setLine(value);
+                case "aside" -> currentLine.setAside(value);
+                default -> { }
+            }
+        } else if (sceneDepth > 0 && depth == sceneDepth) {
+            switch (name) {
+                case "slug" -> currentScene.setSlug(value);
+                case "sound" -> currentScene.setSound(value);
+                case "mood_light" -> currentScene.setMoodLight(value);
+                case "purpose" -> currentScene.setPurpose(value);
+                case "action" -> currentScene.setAction(value);
+                case "turning_point" -> currentScene.setTurningPoint(value);
+                default -> { }
+            }
+        } else if (unitDepth > 0 && depth == unitDepth) {
+            switch (name) {
+                case "title" -> title = value;
+                case "summary" -> summary = value;
+                case "duration_minutes" -> durationMinutes = parseIntOrNull(value);
+                default -> { }
+            }
+        }
+    }
+
+    private static Integer parseIntOrNull(String value) {
+        try {
+            return (int) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One scene object as it appears in the model output
+     */
+    @Getter
+    @Setter
+    public static class ParsedScene {
+        private String slug;
+        private String sound;
+        private String moodLight;
+        private String purpose;
+        private String action;
+        private String turningPoint;
+        private List<DialogueLine> dialogue = new ArrayList<>();
+    }
+
+    @Getter
+    @Setter
+    public static class DialogueLine {
+        private String character;
+        private String line;
+        private String aside;
+    }
+}
@@ -2,11 +2,20 @@ package com.example.claquetteai.Service;
 
 import com.example.claquetteai.Model.*;
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.io.JsonEOFException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -14,41 +23,26 @@ import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.Consumer;
 
 @Service
+@RequiredArgsConstructor
 public class JsonExtractor {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    // Free-form answers may carry a trailing comma, accepted here instead of repairing the text
+    private final ObjectMapper mapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_TRAILING_COMMA).build();
+    private final MeterRegistry meterRegistry;
+
     /**
      * Extracts Film with scenes from AI JSON response
-     * Creates Film entity with scenes and character associations
+     * Creates Film entity with scenes and character associations.
+     * Validation and binding happen in one pass of IncrementalSceneParser (no JsonNode tree).
      */
     public Film extractFilmWithScenes(String json, Project project) throws Exception {
         if (json == null || json.trim().isEmpty()) {
             throw new RuntimeException("Empty JSON response from AI service");
         }
-        // Clean the JSON response first
-        json = cleanJsonResponse(json);
 
-        // Validate JSON structure before parsing
-        if (!isValidJsonStructure(json)) {
-            System.err.println("=== MALFORMED JSON DETECTED ===");
-            System.err.println("Response length: " + json.length());
-            System.err.println("Response ends with: " + json.substring(Math.max(0, json.length() - 100)));
-            System.err.println("Expected to end with '}' or ']', but ends with: '" + json.charAt(json.length() - 1) + "'");
-            throw new RuntimeException("AI service returned incomplete JSON. Response appears to be truncated.");
-        }
-
-        JsonNode root;
-        try {
-            root = mapper.readTree(json);
-        } catch (JsonEOFException e) {
-            System.err.println("JSON EOF Exception - response was cut off");
-            throw new RuntimeException("AI response was truncated - try reducing prompt size or increasing token limits", e);
-        } catch (Exception e) {
-            System.err.println("JSON parsing failed: " + e.getMessage());
-            throw new RuntimeException("Could not parse AI response as valid JSON", e);
-        }
         // Create Film entity
         Film film = new Film();
         film.setProject(project);
@@ -56,242 +50,110 @@ public class JsonExtractor {
         film.setCreatedAt(LocalDateTime.now());
         film.setUpdatedAt(LocalDateTime.now());
 
-        // Extract film details
-        JsonNode filmNode = root.path("film");
-        if (filmNode.has("summary")) {
-            film.setSummary(filmNode.path("summary").asText());
-        } else {
-            film.setSummary(project.getDescription());
-        }
-
-        if (filmNode.has("duration_minutes")) {
-            film.setDurationMinutes(filmNode.path("duration_minutes").asInt());
-        }
-
-        // Create character map for linking scenes to characters
-        Map<String, FilmCharacters> characterMap = createCharacterMapFromProject(project);
+        // Resolver for linking scenes to characters
+        CharacterNameResolver characters = characterResolverFor(project);
 
         // Extract scenes for this film with character associations
-        Set<Scene> scenes = extractScenesForFilm(filmNode, film, characterMap);
+        Set<Scene> scenes = new HashSet<>();
+        IncrementalSceneParser parser = parseScenes(json, parsed ->
+                scenes.add(toFilmScene(parsed, film, scenes.size() + 1, characters)));
         film.setScenes(scenes);
+        System.out.println("Character links: " + characters.summary());
 
-        return film;
-    }
-
-    private boolean isValidJsonStructure(String json) {
-        if (json == null || json.trim().isEmpty()) {
-            return false;
-        }
-
-        json = json.trim();
-
-        // Basic structure validation
-        if (json.startsWith("{") && !json.endsWith("}")) {
-            System.err.println("JSON starts with '{' but doesn't end with '}'");
-            return false;
-        }
-
-        if (json.startsWith("[") && !json.endsWith("]")) {
-            System.err.println("JSON starts with '[' but doesn't end with ']'");
-            return false;
+        // Extract film details
+        film.setSummary(parser.getSummary() != null ? parser.getSummary() : project.getDescription());
+        if (parser.getDurationMinutes() != null) {
+            film.setDurationMinutes(parser.getDurationMinutes());
         }
 
-        // Try a quick parse test
-        try {
-            mapper.readTree(json);
-            return true;
-        } catch (Exception e) {
-            System.err.println("JSON structure validation failed: " + e.getMessage());
-            return false;
-        }
+        return film;
     }
 
-    /**
-     * COMPLETELY REWRITTEN: Extracts scenes for film with proper character-dialogue separation
-     */
-    private Set<Scene> extractScenesForFilm(JsonNode filmNode, Film film, Map<String, FilmCharacters> characterMap) {
-        Set<Scene> scenes = new HashSet<>();
-        int sceneCounter = 1;
-
-        for (JsonNode sceneNode : filmNode.path("scenes")) {
-            Scene scene = new Scene();
-
-            scene.setSceneNumber(sceneCounter++);
-            scene.setSetting(sceneNode.path("slug").asText());
-            scene.setActions(sceneNode.path("action").asText());
-            scene.setFilm(film);
-
-            // COMPLETELY NEW APPROACH: Process dialogue and characters separately
-            Set<FilmCharacters> sceneCharacters = new HashSet<>();
-            String formattedDialogue = processSceneDialogueAndCharacters(sceneNode, characterMap, sceneCharacters);
-
-            scene.setDialogue(formattedDialogue);
-            scene.setCharacters(sceneCharacters);
-
-            // Technical notes
-            StringBuilder notes = new StringBuilder();
-            if (sceneNode.has("sound")) {
-                notes.append("Sound: ").append(sceneNode.path("sound").asText()).append(" | ");
-            }
-            if (sceneNode.has("mood_light")) {
-                notes.append("Mood: ").append(sceneNode.path("mood_light").asText()).append(" | ");
-            }
-            if (sceneNode.has("purpose")) {
-                notes.append("Purpose: ").append(sceneNode.path("purpose").asText()).append(" | ");
-            }
-            scene.setDepartmentNotes(notes.toString().trim());
-
-            scene.setCreatedAt(LocalDateTime.now());
-            scene.setUpdatedAt(LocalDateTime.now());
+    // Logs the tail of a response the parser rejected (truncated / malformed), then rethrows
+    private IncrementalSceneParser parseScenes(String json, Consumer<IncrementalSceneParser.ParsedScene> onScene) {
+        return parseScenes(json, onScene, false);
+    }
 
-            scenes.add(scene);
+    private IncrementalSceneParser parseScenes(String json, Consumer<IncrementalSceneParser.ParsedScene> onScene, boolean salvage) {
+        try {
+            return IncrementalSceneParser.parse(json, onScene, salvage);
+        } catch (RuntimeException e) {
+            System.err.println("=== MALFORMED JSON DETECTED ===");
+            System.err.println("Response length: " + json.length());
+            System.err.println("Response ends with: " + json.substring(Math.max(0, json.length() - 100)));
+            System.err.println("JSON parsing failed: " + e.getMessage());
+            throw e;
         }
-
-        return scenes;
     }
 
     /**
-     * Extracts single episode with scenes from AI JSON response
+     * Extracts single episode with scenes from AI JSON response ({"episode": {...}} or the first
+     * entry of {"episodes": [...]}), in one pass of IncrementalSceneParser
      */
     public Episode extractEpisodeWithScenes(String json, Project project, int episodeNumber) throws Exception {
-        // ADD JSON VALIDATION BEFORE PARSING
         if (json == null || json.trim().isEmpty()) {
             throw new RuntimeException("Empty JSON response from AI service");
         }
 
-        // Clean the JSON response first
-        json = cleanJsonResponse(json);
-
-        // Validate JSON structure before parsing
-        if (!isValidJsonStructure(json)) {
-            System.err.println("=== MALFORMED JSON DETECTED ===");
-            System.err.println("Response length: " + json.length());
-            System.err.println("Response ends with: " + json.substring(Math.max(0, json.length() - 100)));
-            throw new RuntimeException("AI service returned incomplete JSON. Response appears to be truncated.");
-        }
-
-        // WRAP THE EXISTING LINE WITH TRY-CATCH
-        JsonNode root;
-        try {
-            root = mapper.readTree(json);
-        } catch (JsonEOFException e) {
-            System.err.println("JSON EOF Exception - response was cut off");
-            throw new RuntimeException("AI response was truncated - try reducing prompt size or increasing token limits", e);
-        } catch (Exception e) {
-            System.err.println("JSON parsing failed: " + e.getMessage());
-            throw new RuntimeException("Could not parse AI response as valid JSON", e);
-        }
         Episode episode = new Episode();
         episode.setProject(project);
         episode.setEpisodeNumber(episodeNumber);
         episode.setCreatedAt(LocalDateTime.now());
         episode.setUpdatedAt(LocalDateTime.now());
 
-        // Look for episode data in the JSON
-        JsonNode episodeNode = null;
-
-        // Try different possible structures
-        if (root.has("episode")) {
-            episodeNode = root.path("episode");
-        } else if (root.has("episodes") && root.path("episodes").isArray() && root.path("episodes").size() > 0) {
-            episodeNode = root.path("episodes").get(0);
-        } else {
-            // Fallback - use project data
-            episode.setTitle("Episode " + episodeNumber);
-            episode.setSummary(project.getDescription());
-            episode.setScenes(new HashSet<>());
-            return episode;
-        }
+        // Resolver for linking scenes to characters
+        CharacterNameResolver characters = characterResolverFor(project);
+
+        // Extract scenes for this episode with character associations
+        episode.setScenes(new HashSet<>());
+        IncrementalSceneParser parser = readEpisodeScenes(json, episode, characters, false, episode.getScenes()::add);
+        System.out.println("Character links: " + characters.summary());
 
-        // Use user-provided data or fallback to project description
-        episode.setTitle(episodeNode.path("title").asText("Episode " + episodeNumber));
-        episode.setSummary(episodeNode.path("summary").asText(project.getDescription()));
+        // Use model-provided data or fallback to project description
+        episode.setTitle(parser.getTitle() != null ? parser.getTitle() : "Episode " + episodeNumber);
+        episode.setSummary(parser.getSummary() != null ? parser.getSummary() : project.getDescription());
 
         // Only set duration if provided by AI
-        if (episodeNode.has("duration_minutes")) {
-            episode.setDurationMinutes(episodeNode.path("duration_minutes").asInt());
+        if (parser.getDurationMinutes() != null) {
+            episode.setDurationMinutes(parser.getDurationMinutes());
         }
 
-        // Create character map for linking scenes to characters
-        Map<String, FilmCharacters> characterMap = createCharacterMapFromProject(project);
-
-        // Extract scenes for this episode with character associations
-        Set<Scene> scenes = extractScenesFromEpisodeNode(episodeNode, episode, characterMap);
-        episode.setScenes(scenes);
-
         return episode;
     }
 
-
     /**
-     * COMPLETELY REWRITTEN: Extracts scenes from episode node with proper character-dialogue separation
+     * Reads the scenes of an episode response and hands each one to onScene, numbered after the
+     * scenes the episode already has (onScene is expected to add it to episode.getScenes()).
+     * With salvage, a response cut off by the token limit keeps every scene that closed before
+     * the cut; check isTruncated() on the returned parser.
      */
-    private Set<Scene> extractScenesFromEpisodeNode(JsonNode parentNode, Episode episode, Map<String, FilmCharacters> characterMap) {
-        Set<Scene> scenes = new HashSet<>();
-        int sceneCounter = 1;
-
-        for (JsonNode sceneNode : parentNode.path("scenes")) {
-            Scene scene = new Scene();
-
-            // Set basic scene information
-            scene.setSceneNumber(sceneCounter++);
-            scene.setSetting(sceneNode.path("slug").asText());
-            scene.setActions(sceneNode.path("action").asText());
-            scene.setEpisode(episode);
-
-            // COMPLETELY NEW APPROACH: Process dialogue and characters separately
-            Set<FilmCharacters> sceneCharacters = new HashSet<>();
-            String formattedDialogue = processSceneDialogueAndCharacters(sceneNode, characterMap, sceneCharacters);
-
-            scene.setDialogue(formattedDialogue);
-            scene.setCharacters(sceneCharacters);
-
-            // Combine technical notes into department notes
-            StringBuilder notes = new StringBuilder();
-            if (sceneNode.has("sound")) {
-                notes.append("Sound: ").append(sceneNode.path("sound").asText()).append(" | ");
-            }
-            if (sceneNode.has("mood_light")) {
-                notes.append("Mood: ").append(sceneNode.path("mood_light").asText()).append(" | ");
-            }
-            if (sceneNode.has("purpose")) {
-                notes.append("Purpose: ").append(sceneNode.path("purpose").asText()).append(" | ");
-            }
-            if (sceneNode.has("turning_point")) {
-                notes.append("Turning: ").append(sceneNode.path("turning_point").asText());
-            }
-            scene.setDepartmentNotes(notes.toString().trim());
-
-            // Set timestamps
-            scene.setCreatedAt(LocalDateTime.now());
-            scene.setUpdatedAt(LocalDateTime.now());
-
-            scenes.add(scene);
+    public IncrementalSceneParser readEpisodeScenes(String json, Episode episode, CharacterNameResolver characters,
+                                                    boolean salvage, Consumer<Scene> onScene) {
+        if (json == null || json.trim().isEmpty()) {
+            throw new RuntimeException("Empty JSON response from AI service");
         }
-
-        return scenes;
+        return parseScenes(json, parsed ->
+                onScene.accept(toEpisodeScene(parsed, episode, episode.getScenes().size() + 1, characters)), salvage);
     }
 
     /**
-     * COMPLETELY NEW METHOD: Processes dialogue and characters with proper validation and cleanup
+     * Formats dialogue lines and links each speaker to a project character
      */
-    private String processSceneDialogueAndCharacters(JsonNode sceneNode, Map<String, FilmCharacters> characterMap, Set<FilmCharacters> sceneCharacters) {
-        StringBuilder dialogueBuilder = new StringBuilder();
+    private String processSceneDialogueAndCharacters(List<IncrementalSceneParser.DialogueLine> entries, CharacterNameResolver characters, Set<FilmCharacters> sceneCharacters) {
         List<String> dialogueLines = new ArrayList<>();
 
         System.out.println("=== PROCESSING SCENE DIALOGUE ===");
 
-        // Check if dialogue node exists and is not empty
-        JsonNode dialogueNode = sceneNode.path("dialogue");
-        if (dialogueNode.isMissingNode() || dialogueNode.isEmpty()) {
+        // Check if dialogue exists and is not empty
+        if (entries == null || entries.isEmpty()) {
             System.out.println("WARNING: No dialogue found in scene");
             return "";
         }
 
         // Process each dialogue entry
-        for (JsonNode dialogueEntry : dialogueNode) {
-            String characterName = dialogueEntry.path("character").asText();
-            String line = dialogueEntry.path("line").asText();
+        for (IncrementalSceneParser.DialogueLine dialogueEntry : entries) {
+            String characterName = dialogueEntry.getCharacter() == null ? "" : dialogueEntry.getCharacter();
+            String line = dialogueEntry.getLine() == null ? "" : dialogueEntry.getLine();
 
             // Skip empty dialogue entries
             if (characterName.trim().isEmpty() || line.trim().isEmpty()) {
@@ -301,8 +163,8 @@ public class JsonExtractor {
 
             // Handle stage directions/asides
             String aside = "";
-            if (dialogueEntry.has("aside") && !dialogueEntry.path("aside").asText().trim().isEmpty()) {
-                aside = " (" + dialogueEntry.path("aside").asText() + ")";
+            if (dialogueEntry.getAside() != null && !dialogueEntry.getAside().trim().isEmpty()) {
+                aside = " (" + dialogueEntry.getAside() + ")";
             }
 
             // Format the dialogue line
@@ -312,23 +174,9 @@ public class JsonExtractor {
             System.out.println("Processing dialogue: " + characterName + " -> " + line.substring(0, Math.min(50, line.length())) + "...");
 
             // Find and associate character with scene
-            FilmCharacters character = findCharacterByNameImproved(characterName, characterMap);
-            if (character != null) {
-                sceneCharacters.add(character);
+            FilmCharacters character = characters.resolve(characterName);
+            if (character != null && sceneCharacters.add(character)) {
                 System.out.println("✓ Associated character " + character.getName() + " (ID: " + character.getId() + ") with scene");
-            } else {
-                System.out.println("✗ Character '" + characterName + "' not found in project characters");
-
-                // Try to find closest match
-                String closestMatch = findClosestCharacterName(characterName, characterMap);
-                if (closestMatch != null) {
-                    System.out.println("  Suggestion: Did you mean '" + closestMatch + "'?");
-                    FilmCharacters suggestedChar = characterMap.get(closestMatch);
-                    if (suggestedChar != null) {
-                        sceneCharacters.add(suggestedChar);
-                        System.out.println("  ✓ Using suggested character " + suggestedChar.getName() + " (ID: " + suggestedChar.getId() + ")");
-                    }
-                }
             }
         }
 
@@ -346,182 +194,115 @@ public class JsonExtractor {
     }
 
     /**
-     * Creates character map from project's already-saved characters
+     * Builds an episode Scene from a scene emitted by IncrementalSceneParser
      */
-    private Map<String, FilmCharacters> createCharacterMapFromProject(Project project) {
-        Map<String, FilmCharacters> characterMap = new HashMap<>();
-        if (project.getCharacters() != null) {
-            for (FilmCharacters character : project.getCharacters()) {
-                if (character.getName() != null) {
-                    // Store with exact name and normalized name for flexible matching
-                    characterMap.put(character.getName(), character);
-                    characterMap.put(character.getName().toLowerCase().trim(), character);
-                    System.out.println("Added character to map: " + character.getName() + " (ID: " + character.getId() + ")");
-                }
-            }
-        }
-        System.out.println("Character map created with " + (characterMap.size()/2) + " unique characters");
-        return characterMap;
+    public Scene toEpisodeScene(IncrementalSceneParser.ParsedScene parsed, Episode episode, int sceneNumber, CharacterNameResolver characters) {
+        Scene scene = toScene(parsed, sceneNumber, characters, true);
+        scene.setEpisode(episode);
+        return scene;
     }
 
     /**
-     * IMPROVED: Finds a character by name using flexible matching with better debugging
+     * Builds a film Scene from a scene emitted by IncrementalSceneParser
      */
-    private FilmCharacters findCharacterByNameImproved(String characterName, Map<String, FilmCharacters> characterMap) {
-        if (characterName == null || characterName.trim().isEmpty()) {
-            return null;
-        }
+    public Scene toFilmScene(IncrementalSceneParser.ParsedScene parsed, Film film, int sceneNumber, CharacterNameResolver characters) {
+        Scene scene = toScene(parsed, sceneNumber, characters, false);
+        scene.setFilm(film);
+        return scene;
+    }
 
-        String cleanName = characterName.trim();
+    private Scene toScene(IncrementalSceneParser.ParsedScene parsed, int sceneNumber, CharacterNameResolver characters, boolean withTurningPoint) {
+        Scene scene = new Scene();
+        scene.setSceneNumber(sceneNumber);
+        scene.setSetting(parsed.getSlug() == null ? "" : parsed.getSlug());
+        scene.setActions(parsed.getAction() == null ? "" : parsed.getAction());
 
-        // Try exact match first
-        FilmCharacters character = characterMap.get(cleanName);
-        if (character != null) {
-            return character;
-        }
+        Set<FilmCharacters> sceneCharacters = new HashSet<>();
+        scene.setDialogue(processSceneDialogueAndCharacters(parsed.getDialogue(), characters, sceneCharacters));
+        scene.setCharacters(sceneCharacters);
 
-        // Try normalized match
-        character = characterMap.get(cleanName.toLowerCase().trim());
-        if (character != null) {
-            return character;
+        StringBuilder notes = new StringBuilder();
+        if (parsed.getSound() != null) {
+            notes.append("Sound: ").append(parsed.getSound()).append(" | ");
         }
-
-        // Try partial matching
-        String normalizedSearch = cleanName.toLowerCase().trim();
-        for (Map.Entry<String, FilmCharacters> entry : characterMap.entrySet()) {
-            String mapKey = entry.getKey().toLowerCase().trim();
-            if (mapKey.contains(normalizedSearch) || normalizedSearch.contains(mapKey)) {
-                return entry.getValue();
-            }
+        if (parsed.getMoodLight() != null) {
+            notes.append("Mood: ").append(parsed.getMoodLight()).append(" | ");
         }
-
-        return null; // Character not found
-    }
-
-    /**
-     * NEW METHOD: Finds the closest character name for suggestions
-     */
-    private String findClosestCharacterName(String targetName, Map<String, FilmCharacters> characterMap) {
-        String normalizedTarget = targetName.toLowerCase().trim();
-        String closestMatch = null;
-        int minDistance = Integer.MAX_VALUE;
-
-        for (String characterName : characterMap.keySet()) {
-            String normalizedChar = characterName.toLowerCase().trim();
-
-            // Skip if this is just a normalized version of another entry
-            if (characterMap.get(characterName) == null) continue;
-
-            // Simple distance calculation
-            int distance = Math.abs(normalizedTarget.length() - normalizedChar.length());
-
-            // Check for partial matches
-            if (normalizedChar.contains(normalizedTarget) || normalizedTarget.contains(normalizedChar)) {
-                distance = 0;
-            }
-
-            if (distance < minDistance) {
-                minDistance = distance;
-                closestMatch = characterName;
-            }
+        if (parsed.getPurpose() != null) {
+            notes.append("Purpose: ").append(parsed.getPurpose()).append(" | ");
+        }
+        if (withTurningPoint && parsed.getTurningPoint() != null) {
+            notes.append("Turning: ").append(parsed.getTurningPoint());
         }
+        scene.setDepartmentNotes(notes.toString().trim());
 
-        return closestMatch;
+        scene.setCreatedAt(LocalDateTime.now());
+        scene.setUpdatedAt(LocalDateTime.now());
+        return scene;
     }
 
     /**
-     * Fixes problematic assumptions formatting in JSON
+     * Character resolver for linking dialogue speakers, built once per generation call
      */
-    private String fixAssumptionsFormat(String json) {
-        // Simple regex replacement for assumptions object
-        if (json.contains("\"assumptions\": {")) {
-            // Replace the entire assumptions object with empty array
-            json = json.replaceAll("\"assumptions\"\\s*:\\s*\\{[^}]*\\}", "\"assumptions\": []");
-        }
-        return json;
+    public CharacterNameResolver characterResolverFor(Project project) {
+        CharacterNameResolver resolver = new CharacterNameResolver(project.getCharacters(), meterRegistry);
+        System.out.println("Character resolver created with " + (project.getCharacters() == null ? 0 : project.getCharacters().size()) + " characters");
+        return resolver;
     }
 
     /**
-     * Extracts assumptions from JsonNode (handles array, object, or string)
+     * Extracts character information from AI JSON response, bound straight to CharacterEntry records
      */
-    private List<String> extractAssumptions(JsonNode assumptionsNode) {
-        List<String> assumptions = new ArrayList<>();
-
-        if (assumptionsNode.isArray()) {
-            // Normal case - assumptions is an array
-            for (JsonNode assumption : assumptionsNode) {
-                assumptions.add(assumption.asText());
-            }
-        } else if (assumptionsNode.isObject()) {
-            // AI returned object instead of array - extract all values
-            assumptionsNode.fields().forEachRemaining(entry -> {
-                assumptions.add(entry.getValue().asText());
-            });
-        } else if (assumptionsNode.isTextual()) {
-            // Single string assumption
-            assumptions.add(assumptionsNode.asText());
-        }
-
-        return assumptions;
-    }
-
-    /**
-     * Extracts character information from AI JSON response
-     */
-    public Set<FilmCharacters> extractCharacters(JsonNode root, Project project) {
+    public Set<FilmCharacters> extractCharacters(String json, Project project) throws Exception {
+        CharactersResponse response = mapper.readValue(json, CharactersResponse.class);
         Set<FilmCharacters> characters = new HashSet<>();
         Set<String> seen = new HashSet<>(); // Prevent duplicate characters
+        if (response.characters() == null) {
+            return characters;
+        }
 
-        for (JsonNode charNode : root.path("characters")) {
+        for (CharacterEntry entry : response.characters()) {
             // Create unique key to avoid duplicates
-            String uniqueKey = charNode.path("name").asText() + "-" + charNode.path("age").asInt();
-            if (seen.contains(uniqueKey)) continue;
-            seen.add(uniqueKey);
+            int age = entry.age() == null ? 0 : entry.age();
+            String uniqueKey = entry.name() + "-" + age;
+            if (!seen.add(uniqueKey)) continue;
 
             FilmCharacters character = new FilmCharacters();
 
             // Set basic character information
             character.setProject(project);
-            character.setName(charNode.path("name").asText());
-            character.setAge(charNode.path("age").asInt());
-            character.setRoleInStory(charNode.path("role").asText());
-
-            // Extract and combine personality traits
-            if (charNode.has("traits")) {
-                List<String> traitsList = new ArrayList<>();
-                for (JsonNode trait : charNode.path("traits")) {
-                    traitsList.add(trait.asText());
-                }
-                character.setPersonalityTraits(String.join(" | ", traitsList));
+            character.setName(entry.name() == null ? "" : entry.name());
+            character.setAge(age);
+            character.setRoleInStory(entry.role() == null ? "" : entry.role());
+
+            // Combine personality traits
+            if (entry.traits() != null) {
+                character.setPersonalityTraits(String.join(" | ", entry.traits()));
             }
 
             // Build comprehensive background information
             List<String> backgroundParts = new ArrayList<>();
-            if (charNode.has("backstory")) {
-                backgroundParts.add(charNode.path("backstory").asText());
+            if (entry.backstory() != null) {
+                backgroundParts.add(entry.backstory());
             }
-            if (charNode.has("relationships")) {
-                List<String> relationships = new ArrayList<>();
-                for (JsonNode rel : charNode.path("relationships")) {
-                    relationships.add(rel.asText());
-                }
-                backgroundParts.add("العلاقات: " + String.join(" | ", relationships));
+            if (entry.relationships() != null) {
+                backgroundParts.add("العلاقات: " + String.join(" | ", entry.relationships()));
             }
-            if (charNode.has("goal")) {
-                backgroundParts.add("الهدف: " + charNode.path("goal").asText());
+            if (entry.goal() != null) {
+                backgroundParts.add("الهدف: " + entry.goal());
             }
-            if (charNode.has("obstacle")) {
-                backgroundParts.add("العقبة: " + charNode.path("obstacle").asText());
+            if (entry.obstacle() != null) {
+                backgroundParts.add("العقبة: " + entry.obstacle());
             }
             character.setBackground(String.join(" | ", backgroundParts));
 
             // Build character arc information
             List<String> arcParts = new ArrayList<>();
-            if (charNode.has("arc")) {
-                arcParts.add(charNode.path("arc").asText());
+            if (entry.arc() != null) {
+                arcParts.add(entry.arc());
             }
-            if (charNode.has("voice_notes")) {
-                arcParts.add("ملاحظات الصوت: " + charNode.path("voice_notes").asText());
+            if (entry.voiceNotes() != null) {
+                arcParts.add("ملاحظات الصوت: " + entry.voiceNotes());
             }
             character.setCharacterArc(String.join(" | ", arcParts));
 
@@ -535,14 +316,21 @@ public class JsonExtractor {
         return characters;
     }
 
+    // Shape of the characters answer (see resources/ai-schemas/characters.schema.json)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record CharactersResponse(List<CharacterEntry> characters) { }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record CharacterEntry(String name, Integer age, String role, List<String> traits, String backstory,
+                          List<String> relationships, String goal, String obstacle, String arc,
+                          @JsonProperty("voice_notes") String voiceNotes) { }
+
     /**
-     * FIXED: Extracts casting recommendations from AI JSON response with robust error handling
+     * FIXED: Extracts casting recommendations from AI JSON response with robust error handling.
+     * The "casting" array is read token by token (readCastingEntries), without a JsonNode tree.
      */
     public Set<CastingRecommendation> extractCasting(String json, Project project) throws Exception {
         try {
-            // Clean and validate JSON before parsing
-            json = cleanJsonResponse(json);
-
             if (json == null || json.trim().isEmpty()) {
                 System.out.println("ERROR: Empty or null JSON response for casting");
                 return new HashSet<>();
@@ -552,59 +340,37 @@ public class JsonExtractor {
             System.out.println("JSON length: " + json.length());
             System.out.println("First 200 characters: " + json.substring(0, Math.min(200, json.length())));
 
-            JsonNode root = mapper.readTree(json);
+            List<CastingEntry> entries = readCastingEntries(json);
             Set<CastingRecommendation> castingRecommendations = new HashSet<>();
 
-            // Create a map of character names to FilmCharacters for easy lookup
-            Map<String, FilmCharacters> characterMap = new HashMap<>();
-
-            if (project.getCharacters() != null) {
-                for (FilmCharacters character : project.getCharacters()) {
-                    // Store with exact name and normalized name for flexible matching
-                    characterMap.put(character.getName(), character);
-                    characterMap.put(character.getName().toLowerCase().trim(), character);
-                    System.out.println("Added character to casting map: " + character.getName() + " (ID: " + character.getId() + ")");
-                }
-            }
+            CharacterNameResolver characters = characterResolverFor(project);
 
             System.out.println("=== PROCESSING CASTING RECOMMENDATIONS ===");
-            System.out.println("Available characters: " + characterMap.size()/2);
 
             // Check if casting node exists
-            JsonNode castingNode = root.path("casting");
-            if (castingNode.isMissingNode() || !castingNode.isArray()) {
+            if (entries == null) {
                 System.out.println("WARNING: No 'casting' array found in JSON response");
                 return castingRecommendations;
             }
 
             // Process each character's casting suggestions
-            for (JsonNode castNode : castingNode) {
-                String characterName = castNode.path("character").asText();
+            for (CastingEntry castNode : entries) {
+                String characterName = castNode.character == null ? "" : castNode.character;
                 System.out.println("Processing casting for character: " + characterName);
 
-                // Find the corresponding FilmCharacters entity using flexible matching
-                FilmCharacters filmCharacter = findCharacterForCasting(characterName, characterMap);
+                // Find the corresponding FilmCharacters entity
+                FilmCharacters filmCharacter = characters.resolve(characterName);
                 if (filmCharacter == null) {
-                    System.out.println("Warning: Character '" + characterName + "' not found in project characters");
-                    // Try to find closest match
-                    String closestMatch = findClosestCharacterName(characterName, characterMap);
-                    if (closestMatch != null) {
-                        System.out.println("Suggestion: Did you mean '" + closestMatch + "'?");
-                        filmCharacter = characterMap.get(closestMatch);
-                    }
-
-                    if (filmCharacter == null) {
-                        System.out.println("Skipping casting for unknown character: " + characterName);
-                        continue; // Skip if character not found
-                    }
+                    System.out.println("Skipping casting for unknown character: " + characterName);
+                    continue; // Skip if character not found
                 }
 
                 // Process ALL suggestions for this character (One-to-Many)
-                JsonNode suggestions = castNode.path("suggestions");
-                if (suggestions.isArray() && suggestions.size() > 0) {
+                List<Map<String, String>> suggestions = castNode.suggestions;
+                if (!suggestions.isEmpty()) {
                     int priority = 1; // Start with highest priority
 
-                    for (JsonNode suggestion : suggestions) {
+                    for (Map<String, String> suggestion : suggestions) {
                         // Take up to 3 suggestions per character to avoid too many recommendations
                         if (priority > 3) break;
 
@@ -656,25 +422,28 @@ public class JsonExtractor {
 
             System.out.println("=== CASTING SUMMARY ===");
             System.out.println("Total casting recommendations created: " + castingRecommendations.size());
+            System.out.println("Character links: " + characters.summary());
             System.out.println("========================");
 
             return castingRecommendations;
 
         } catch (JsonParseException e) {
-            System.out.println("ERROR: JSON parsing failed at line " + e.getLocation().getLineNr() +
-                    ", column " + e.getLocation().getColumnNr());
             System.out.println("Error message: " + e.getMessage());
-            System.out.println("Problematic JSON snippet around error:");
-
-            // Try to show the problematic area
-            String[] lines = json.split("\n");
-            int errorLine = (int) e.getLocation().getLineNr() - 1; // Convert to 0-based
-            int startLine = Math.max(0, errorLine - 2);
-            int endLine = Math.min(lines.length - 1, errorLine + 2);
-
-            for (int i = startLine; i <= endLine; i++) {
-                String prefix = (i == errorLine) ? ">>> " : "    ";
-                System.out.println(prefix + "Line " + (i + 1) + ": " + lines[i]);
+            if (e.getLocation() != null) {
+                System.out.println("ERROR: JSON parsing failed at line " + e.getLocation().getLineNr() +
+                        ", column " + e.getLocation().getColumnNr());
+                System.out.println("Problematic JSON snippet around error:");
+
+                // Try to show the problematic area (lines are counted from the root object)
+                String[] lines = json.substring(Math.max(0, json.indexOf('{'))).split("\n");
+                int errorLine = (int) e.getLocation().getLineNr() - 1; // Convert to 0-based
+                int startLine = Math.max(0, errorLine - 2);
+                int endLine = Math.min(lines.length - 1, errorLine + 2);
+
+                for (int i = startLine; i <= endLine; i++) {
+                    String prefix = (i == errorLine) ? ">>> " : "    ";
+                    System.out.println(prefix + "Line " + (i + 1) + ": " + lines[i]);
+                }
             }
 
             throw new Exception("Failed to parse casting JSON: " + e.getMessage(), e);
@@ -687,156 +456,137 @@ public class JsonExtractor {
     }
 
     /**
-     * NEW: Cleans and validates JSON response to handle common formatting issues
+     * One entry of the "casting" array: the character name and the scalar fields of each suggestion
      */
-    private String cleanJsonResponse(String json) {
-        if (json == null) return null;
-
-        // Remove any leading/trailing whitespace
-        json = json.trim();
-
-        // Remove any potential markdown code block markers
-        if (json.startsWith("```json")) {
-            json = json.substring(7);
-        }
-        if (json.startsWith("```")) {
-            json = json.substring(3);
-        }
-        if (json.endsWith("```")) {
-            json = json.substring(0, json.length() - 3);
-        }
-
-        json = json.trim();
-
-        // Basic validation - must start with { or [
-        if (!json.startsWith("{") && !json.startsWith("[")) {
-            System.out.println("WARNING: JSON doesn't start with { or [, attempting to find JSON start");
-            int jsonStart = json.indexOf("{");
-            if (jsonStart == -1) {
-                jsonStart = json.indexOf("[");
-            }
-            if (jsonStart > 0) {
-                json = json.substring(jsonStart);
-            }
-        }
-
-        return json;
+    private static class CastingEntry {
+        private String character;
+        private final List<Map<String, String>> suggestions = new ArrayList<>();
     }
 
     /**
-     * NEW: Safely extracts text value from JsonNode with fallback
+     * Reads the "casting" array of the root object token by token.
+     * Anything before the root object (prose, markdown fence) and after it is ignored.
+     * Returns null when the response has no "casting" array.
      */
-    private String safeGetTextValue(JsonNode node, String fieldName, String defaultValue) {
-        try {
-            JsonNode fieldNode = node.path(fieldName);
-            if (fieldNode.isMissingNode() || fieldNode.isNull()) {
-                return defaultValue;
+    private List<CastingEntry> readCastingEntries(String json) throws IOException {
+        int start = json.indexOf('{');
+        if (start == -1) {
+            throw new JsonParseException(null, "No JSON object found in casting response");
+        }
+        Reader reader = new StringReader(json);
+        reader.skip(start);
+
+        List<CastingEntry> entries = null;
+        try (JsonParser parser = mapper.getFactory().createParser(reader)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("casting".equals(field) && value == JsonToken.START_ARRAY && entries == null) {
+                    entries = new ArrayList<>();
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == JsonToken.START_OBJECT) {
+                            entries.add(readCastingEntry(parser));
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
             }
-
-            String value = fieldNode.asText();
-            return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
-
-        } catch (Exception e) {
-            System.out.println("WARNING: Failed to extract text field '" + fieldName + "', using default: " + defaultValue);
-            return defaultValue;
         }
+        return entries;
     }
 
-    /**
-     * NEW: Safely extracts double value from JsonNode with fallback
-     */
-    private double safeGetDoubleValue(JsonNode node, String fieldName, double defaultValue) {
-        try {
-            JsonNode fieldNode = node.path(fieldName);
-            if (fieldNode.isMissingNode() || fieldNode.isNull()) {
-                return defaultValue;
-            }
-
-            if (fieldNode.isNumber()) {
-                return fieldNode.asDouble();
-            }
-
-            // Try to parse as string if it's not a number
-            String textValue = fieldNode.asText();
-            if (textValue != null && !textValue.trim().isEmpty()) {
-                // Remove any non-numeric characters except decimal point
-                textValue = textValue.replaceAll("[^0-9.]", "");
-                if (!textValue.isEmpty()) {
-                    return Double.parseDouble(textValue);
+    private CastingEntry readCastingEntry(JsonParser parser) throws IOException {
+        CastingEntry entry = new CastingEntry();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("character".equals(field) && value.isScalarValue()) {
+                entry.character = parser.getText();
+            } else if ("suggestions".equals(field) && value == JsonToken.START_ARRAY) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.START_OBJECT) {
+                        entry.suggestions.add(readScalarFields(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
                 }
+            } else {
+                parser.skipChildren();
             }
+        }
+        return entry;
+    }
 
-            return defaultValue;
-
-        } catch (Exception e) {
-            System.out.println("WARNING: Failed to extract double field '" + fieldName + "', using default: " + defaultValue);
-            return defaultValue;
+    // Scalar fields of the current object as text; nested values and nulls are skipped
+    private Map<String, String> readScalarFields(JsonParser parser) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                fields.put(field, parser.getText());
+            } else {
+                parser.skipChildren();
+            }
         }
+        return fields;
     }
 
     /**
-     * NEW: Safely extracts integer value from JsonNode with fallback
+     * NEW: Safely extracts text value with fallback
      */
-    private int safeGetIntValue(JsonNode node, String fieldName, int defaultValue) {
-        try {
-            JsonNode fieldNode = node.path(fieldName);
-            if (fieldNode.isMissingNode() || fieldNode.isNull()) {
-                return defaultValue;
-            }
-
-            if (fieldNode.isNumber()) {
-                return fieldNode.asInt();
-            }
-
-            // Try to parse as string if it's not a number
-            String textValue = fieldNode.asText();
-            if (textValue != null && !textValue.trim().isEmpty()) {
-                // Remove any non-numeric characters
-                textValue = textValue.replaceAll("[^0-9]", "");
-                if (!textValue.isEmpty()) {
-                    return Integer.parseInt(textValue);
-                }
-            }
+    private String safeGetTextValue(Map<String, String> fields, String fieldName, String defaultValue) {
+        String value = fields.get(fieldName);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
 
+    /**
+     * NEW: Safely extracts double value with fallback; accepts numbers and text such as "85%"
+     */
+    private double safeGetDoubleValue(Map<String, String> fields, String fieldName, double defaultValue) {
+        String textValue = fields.get(fieldName);
+        if (textValue == null || textValue.trim().isEmpty()) {
             return defaultValue;
-
-        } catch (Exception e) {
-            System.out.println("WARNING: Failed to extract int field '" + fieldName + "', using default: " + defaultValue);
+        }
+        try {
+            return Double.parseDouble(textValue.trim());
+        } catch (NumberFormatException e) {
+            // Remove any non-numeric characters except decimal point
+            textValue = textValue.replaceAll("[^0-9.]", "");
+        }
+        try {
+            return textValue.isEmpty() ? defaultValue : Double.parseDouble(textValue);
+        } catch (NumberFormatException e) {
+            System.out.println("WARNING: Failed to extract double field '" + fieldName + "', using default: " + defaultValue);
             return defaultValue;
         }
     }
 
     /**
-     * Helper method to find character with flexible matching
+     * NEW: Safely extracts integer value with fallback; accepts numbers and text such as "30 سنة"
      */
-    private FilmCharacters findCharacterForCasting(String characterName, Map<String, FilmCharacters> characterMap) {
-        if (characterName == null || characterName.trim().isEmpty()) {
-            return null;
-        }
-
-        String cleanName = characterName.trim();
-
-        // Try exact match first
-        FilmCharacters character = characterMap.get(cleanName);
-        if (character != null) {
-            return character;
+    private int safeGetIntValue(Map<String, String> fields, String fieldName, int defaultValue) {
+        String textValue = fields.get(fieldName);
+        if (textValue == null || textValue.trim().isEmpty()) {
+            return defaultValue;
         }
-
-        // Try normalized match
-        character = characterMap.get(cleanName.toLowerCase().trim());
-        if (character != null) {
-            return character;
+        try {
+            return (int) Double.parseDouble(textValue.trim());
+        } catch (NumberFormatException e) {
+            // Remove any non-numeric characters
+            textValue = textValue.replaceAll("[^0-9]", "");
         }
-
-        // Try partial matching
-        String normalizedSearch = cleanName.toLowerCase().trim();
-        for (Map.Entry<String, FilmCharacters> entry : characterMap.entrySet()) {
-            String mapKey = entry.getKey().toLowerCase().trim();
-            if (mapKey.contains(normalizedSearch) || normalizedSearch.contains(mapKey)) {
-                return entry.getValue();
-            }
+        try {
+            return textValue.isEmpty() ? defaultValue : Integer.parseInt(textValue);
+        } catch (NumberFormatException e) {
+            System.out.println("WARNING: Failed to extract int field '" + fieldName + "', using default: " + defaultValue);
+            return defaultValue;
         }
-
-        return null; // Character not found
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Api.ApiException;
+import com.example.claquetteai.Api.TooManyRequestsException;
+import com.example.claquetteai.DTO.PosterStatusDTOOUT;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Repository.ProjectRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Generates project posters in the background.
+ * A request marks the project PENDING and returns; a small worker pool calls the image model and
+ * writes the image to the image store as it is decoded, and the client polls the status.
+ * Requests for the same company and description share one model call while it runs (single
+ * flight), and a description the company already has a poster for gets that poster again
+ * instead of a new call, unless a new one is asked for.
+ */
+@Service
+public class PosterService {
+
+    private final ProjectRepository projectRepository;
+    private final AiClientService aiClientService;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final ThreadPoolTaskExecutor posterExecutor;
+    private final TransactionTemplate newTransaction;
+
+    // company:description hash -> the call every request for it waits on
+    private final Map<String, CompletableFuture<StoredImage>> inFlight = new ConcurrentHashMap<>();
+
+    // A PENDING poster older than this was lost (restart) and may be requested again
+    @Value("${generation.poster.stale-minutes:10}")
+    private long staleMinutes;
+
+    @Value("${generation.jobs.retry-after-seconds:30}")
+    private long retryAfterSeconds;
+
+    public PosterService(ProjectRepository projectRepository,
+                         AiClientService aiClientService,
+                         ImageStorageService imageStorageService,
+                         ImageVariantService imageVariantService,
+                         @Qualifier("posterExecutor") ThreadPoolTaskExecutor posterExecutor,
+                         PlatformTransactionManager transactionManager) {
+        this.projectRepository = projectRepository;
+        this.aiClientService = aiClientService;
+        this.imageStorageService = imageStorageService;
+        this.imageVariantService = imageVariantService;
+        this.posterExecutor = posterExecutor;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Starts generating the project's poster and returns its status right away.
+     * Asking again while it runs, or for a description that already has a poster, costs nothing.
+     */
+    public PosterStatusDTOOUT submit(Integer userId, Integer projectId, boolean regenerate) {
+        Project project = ownedProject(userId, projectId);
+        String promptSha256 = promptKey(project.getDescription());
+        if (!regenerate && "COMPLETED".equals(project.getPosterStatus()) && promptSha256.equals(project.getPosterPromptSha256())) {
+            return toDTO(project);
+        }
+
+        Integer claimed = newTransaction.execute(status ->
+                projectRepository.claimPoster(projectId, LocalDateTime.now().minusMinutes(staleMinutes)));
+        if (claimed == null || claimed == 0) {
+            // Already being generated
+            return new PosterStatusDTOOUT(projectId, "PENDING", null, project.getPosterRequestedAt());
+        }
+        // The project loaded above predates the update, so the answer is built from what was written
+        LocalDateTime requestedAt = LocalDateTime.now();
+
+        Integer companyId = project.getCompany().getId();
+        List<StoredImage> existing = regenerate ? List.of() : projectRepository.findPostersByPrompt(companyId, promptSha256);
+        if (!existing.isEmpty()) {
+            complete(projectId, existing.get(0), promptSha256);
+            return new PosterStatusDTOOUT(projectId, "COMPLETED", null, requestedAt);
+        }
+
+        CompletableFuture<StoredImage> poster;
+        try {
+            poster = render(companyId, project.getDescription());
+        } catch (TooManyRequestsException e) {
+            fail(projectId, e);
+            throw e;
+        }
+        poster.whenComplete((image, error) -> {
+            if (error != null) {
+                fail(projectId, error instanceof CompletionException ? error.getCause() : error);
+            } else {
+                complete(projectId, image, promptSha256);
+            }
+        });
+        return new PosterStatusDTOOUT(projectId, "PENDING", null, requestedAt);
+    }
+
+    public PosterStatusDTOOUT getStatus(Integer userId, Integer projectId) {
+        return toDTO(ownedProject(userId, projectId));
+    }
+
+    /**
+     * The poster for a description, generated on the poster workers; joins the running call
+     * when the same company already asked for the same description
+     */
+    public CompletableFuture<StoredImage> render(Integer companyId, String description) {
+        String key = companyId + ":" + promptKey(description);
+        CompletableFuture<StoredImage> created = new CompletableFuture<>();
+        CompletableFuture<StoredImage> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            return running;
+        }
+        try {
+            posterExecutor.execute(() -> {
+                try {
+                    StoredImage image = aiClientService.generatePhoto(description, AiCallOptions.forCompany(companyId),
+                            photo -> imageStorageService.store(photo, null));
+                    // Thumbnails are made here too, off the request thread
+                    imageVariantService.createVariants(image);
+                    inFlight.remove(key, created);
+                    created.complete(image);
+                } catch (Throwable e) {
+                    inFlight.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            throw new TooManyRequestsException("Too many posters waiting, please try again shortly", retryAfterSeconds);
+        }
+        return created;
+    }
+
+    // Same description, same key: whitespace at the ends does not make a new poster
+    public static String promptKey(String description) {
+        try {
+            byte[] text = (description == null ? "" : description.strip()).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void complete(Integer projectId, StoredImage image, String promptSha256) {
+        newTransaction.executeWithoutResult(status -> projectRepository.completePoster(projectId, image, promptSha256));
+    }
+
+    private void fail(Integer projectId, Throwable error) {
+        System.out.println("Poster generation failed for project " + projectId + ": " + error.getMessage());
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        String trimmed = message.length() > 500 ? message.substring(0, 500) : message;
+        newTransaction.executeWithoutResult(status -> projectRepository.failPoster(projectId, trimmed));
+    }
+
+    private Project ownedProject(Integer userId, Integer projectId) {
+        Project project = projectRepository.findProjectById(projectId);
+        if (project == null) {
+            throw new ApiException("project not found");
+        }
+        if (!project.getCompany().getUser().getId().equals(userId)) {
+            throw new ApiException("not authorised");
+        }
+        return project;
+    }
+
+    private PosterStatusDTOOUT toDTO(Project project) {
+        return new PosterStatusDTOOUT(project.getId(),
+                project.getPosterStatus() == null ? "NONE" : project.getPosterStatus(),
+                project.getPosterError(),
+                project.getPosterRequestedAt());
+    }
+}
@@ -3,21 +3,20 @@ package com.example.claquetteai.Service;
 import com.example.claquetteai.Api.ApiException;
 import com.example.claquetteai.DTO.CharactersDTOOUT;
 import com.example.claquetteai.DTO.ProjectDTOOUT;
+import com.example.claquetteai.DTO.CompanyStatsDTOOUT;
 import com.example.claquetteai.Model.Company;
 import com.example.claquetteai.Model.FilmCharacters;
 import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.StoredImage;
 import com.example.claquetteai.Model.User;
 import com.example.claquetteai.Repository.*;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -29,9 +28,11 @@ public class ProjectService {
     private final CompanyRepository companyRepository;
     private final CharacterRepository characterRepository;
     private final UserRepository userRepository;
-    private final AiClientService aiClientService;
     private final SceneRepository sceneRepository;
     private final AiInteractionService aiInteractionService;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+    private final CompanyStatsService companyStatsService;
 
     public List<ProjectDTOOUT> getAllProjects() {
         return projectRepository.findAll().stream()
@@ -146,18 +147,12 @@ public class ProjectService {
 
 
     public Integer projectsCount(Integer userId){
-        List<Project> projects = projectRepository.findProjectsByCompany_User_Id(userId);
-        return projects.size();
+        return projectRepository.countProjectsByCompany_User_Id(userId);
     }
 
 
     public Double getTotalBudget(Integer userId){
-        List<Project> projects = projectRepository.findProjectsByCompany_User_Id(userId);
-        Double total = 0.0;
-        for (Project p : projects){
-            total+=p.getBudget();
-        }
-        return total;
+        return projectRepository.sumBudgetByCompanyUserId(userId);
     }
 
     public List<CharactersDTOOUT> projectCharacters(Integer userId, Integer projectId){
@@ -183,24 +178,15 @@ public class ProjectService {
 
 
     @Transactional
-    public Project generateAndAttachPoster(Integer userId,Integer projectId) throws Exception {
-        User user = userRepository.findUserById(userId);
-        if (user == null){
-            throw new ApiException("user not found");
+    public ResponseEntity<Resource> getPosterPngResponse(Integer userId, Integer projectId, Integer size, String ifNoneMatch) {
+        // A cached copy that is still current is confirmed from the hash alone
+        if (ifNoneMatch != null) {
+            String sha256 = imageVariantService.variantSha256(projectRepository.findPosterSha256(projectId, userId), size);
+            if (imageStorageService.isCurrent(ifNoneMatch, sha256)) {
+                return imageStorageService.notModified(sha256);
+            }
         }
-        Project project = projectRepository.findProjectById(projectId);
-        if (project == null) throw new IllegalArgumentException("Project not found: " + projectId);
 
-        if (!project.getCompany().getUser().equals(user)){
-            throw new ApiException("not authorised");
-        }
-
-        String b64 = aiClientService.generatePhoto(project.getDescription()); // you can pass nulls; defaults handled inside
-        project.setPosterImageBase64(b64);
-        return projectRepository.save(project);
-    }
-
-    public ResponseEntity<byte[]> getPosterPngResponse(Integer userId,Integer projectId) {
         Project p = projectRepository.findProjectById(projectId);
 
         if (p == null) {
@@ -216,29 +202,13 @@ public class ProjectService {
             throw new ApiException("not authorised");
         }
 
-        String b64 = p.getPosterImageBase64();
-        if (b64 == null || b64.isBlank()) {
+        StoredImage poster = p.getPoster();
+        if (poster == null) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
         }
-
-        byte[] bytes;
-        try {
-            bytes = Base64.getDecoder().decode(b64);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .contentType(MediaType.TEXT_PLAIN)
-                    .body(("Invalid poster base64 for project " + projectId)
-                            .getBytes(StandardCharsets.UTF_8));
-        }
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_PNG);
-        headers.setContentLength(bytes.length);
-        headers.setCacheControl(CacheControl.maxAge(Duration.ofDays(7)).cachePublic());
-        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"project-" + projectId + "-poster.png\"");
-        headers.setETag("\"" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"");
-
-        return new ResponseEntity<>(bytes, headers, HttpStatus.OK);
+        Integer variantSize = imageVariantService.sizeFor(size);
+        return imageStorageService.imageResponse(imageVariantService.variant(poster, size),
+                "project-" + projectId + "-poster" + (variantSize == null ? "" : "-" + variantSize));
     }
 
 
@@ -260,27 +230,15 @@ public class ProjectService {
             throw new ApiException("not authorised");
         }
 
-        byte[] bytes;
-        try { bytes = file.getBytes(); }
-        catch (IOException e) { throw new RuntimeException("Failed to read upload", e); }
-
-        // quick sanity: ensure decodable image
-        try (var in = new ByteArrayInputStream(bytes)) {
-            var img = javax.imageio.ImageIO.read(in);
-            if (img == null || img.getWidth() <= 0 || img.getHeight() <= 0)
-                throw new IllegalArgumentException("Invalid image");
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid image", e);
-        }
-
-        String b64 = java.util.Base64.getEncoder().encodeToString(bytes);
-
-        Project p = projectRepository.findById(projectId)
-                .orElseThrow(() -> new NoSuchElementException("Project not found"));
-
-        p.setPosterImageBase64(b64);      // LONGTEXT Base64 string
-
-        projectRepository.save(p);
+        // streamed to storage; the header is checked, the pixels are never decoded
+        StoredImage poster = imageStorageService.storeUpload(file, MAX_BYTES, Set.of("image/png", "image/jpeg", "image/webp", "image/gif"));
+        imageVariantService.createVariants(poster);
+        project.setPoster(poster);
+        // An uploaded poster replaces a generated one; the next generation request makes a new one
+        project.setPosterStatus("COMPLETED");
+        project.setPosterError(null);
+        project.setPosterPromptSha256(null);
+        projectRepository.save(project);
     }
 
     public Project get(Integer id) {
@@ -295,60 +253,25 @@ public class ProjectService {
             throw new ApiException("User not found");
         }
 
-        // Get all projects for the user
-        List<Project> projects = projectRepository.findProjectsByCompany_User_Id(userId);
-
-        // Calculate statistics
-        Integer totalProjects = projects.size();
-        Double totalBudget = projects.stream()
-                .mapToDouble(Project::getBudget)
-                .sum();
-
-        // Get project status breakdown
-        Map<String, Long> projectStatusCounts = projects.stream()
-                .collect(Collectors.groupingBy(
-                        Project::getStatus,
-                        Collectors.counting()
-                ));
-
-        // Get characters count across all projects
-        Integer totalCharacters = projects.stream()
-                .mapToInt(project -> characterRepository.findFilmCharactersByProject(project).size())
-                .sum();
-
-        // Get projects
-        List<ProjectDTOOUT> recentProjects = projects.stream()
-                .sorted((p1, p2) -> {
-                    // Sort by startProjectDate descending (most recent first)
-                    if (p1.getStartProjectDate() == null && p2.getStartProjectDate() == null) return 0;
-                    if (p1.getStartProjectDate() == null) return 1;
-                    if (p2.getStartProjectDate() == null) return -1;
-                    return p2.getStartProjectDate().compareTo(p1.getStartProjectDate());
-                })
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        // Figures come from the company's company_stats row; only the project list is queried
+        CompanyStatsDTOOUT stats = companyStatsService.getStats(userId);
+        List<ProjectDTOOUT> recentProjects = projectRepository.findProjectDTOsByCompanyUserIdOrderByStartDesc(userId);
 
-        // Count different project types
-        Map<String, Long> projectTypeCounts = projects.stream()
-                .collect(Collectors.groupingBy(
-                        Project::getProjectType,
-                        Collectors.counting()
-                ));
+        Map<String, Long> projectStatusCounts = stats.getStatusCounts();
+        Map<String, Long> projectTypeCounts = stats.getTypeCounts();
 
         // Count projects depends on the status
-        long activeProjects = projects.stream()
-                .filter(p -> "IN_DEVELOPMENT".equals(p.getStatus()) ||
-                        "IN_PRODUCTION".equals(p.getStatus()) ||
-                        "PRE_PRODUCTION".equals(p.getStatus()))
-                .count();
+        long activeProjects = projectStatusCounts.getOrDefault("IN_DEVELOPMENT", 0L)
+                + projectStatusCounts.getOrDefault("IN_PRODUCTION", 0L)
+                + projectStatusCounts.getOrDefault("PRE_PRODUCTION", 0L);
 
         // Build dashboard summary response
         Map<String, Object> dashboardSummary = new HashMap<>();
 
         // Main statistics
-        dashboardSummary.put("totalProjects", totalProjects);
-        dashboardSummary.put("totalBudget", totalBudget);
-        dashboardSummary.put("totalCharacters", totalCharacters);
+        dashboardSummary.put("totalProjects", stats.getProjectCount());
+        dashboardSummary.put("totalBudget", stats.getTotalBudget());
+        dashboardSummary.put("totalCharacters", stats.getCharacterCount());
         dashboardSummary.put("activeProjects", activeProjects);
 
         // Detailed breakdowns
@@ -362,85 +285,34 @@ public class ProjectService {
         Map<String, Object> contentStats = new HashMap<>();
         contentStats.put("seriesCount", projectTypeCounts.getOrDefault("SERIES", 0L));
         contentStats.put("movieCount", projectTypeCounts.getOrDefault("MOVIE", 0L));
-        contentStats.put("totalCharacters", totalCharacters);
+        contentStats.put("totalCharacters", stats.getCharacterCount());
         dashboardSummary.put("contentStatistics", contentStats);
 
         return dashboardSummary;
     }
 
 
-    // Updated getContentStats method with proper scene counting
     public Map<String, Object> getContentStats(Integer userId) {
         User user = userRepository.findUserById(userId);
         if (user == null) {
             throw new ApiException("User not found with id " + userId);
         }
 
-        List<Project> projects = projectRepository.findProjectsByCompany_User_Id(userId);
-
-        Map<String, Long> projectTypeCounts = projects.stream()
-                .collect(Collectors.groupingBy(
-                        Project::getProjectType,
-                        Collectors.counting()
-                ));
-
-        Integer totalCharacters = projects.stream()
-                .mapToInt(project -> characterRepository.findFilmCharactersByProject(project).size())
-                .sum();
-
-        Integer totalEpisodes = projects.stream()
-                .mapToInt(Project::getEpisodeCount)
-                .sum();
-
-        // Count scenes across all projects (through episodes)
-        Integer totalScenes = projects.stream()
-                .flatMap(project -> project.getEpisodes().stream())
-                .mapToInt(episode -> sceneRepository.findSceneByEpisode(episode).size())
-                .sum();
-
+        CompanyStatsDTOOUT stats = companyStatsService.getStats(userId);
 
         Map<String, Object> contentStats = new HashMap<>();
 
-        contentStats.put("seriesCount", projectTypeCounts.getOrDefault("SERIES", 0L));
-        contentStats.put("filmCount", projectTypeCounts.getOrDefault("FILM", 0L));
-        contentStats.put("totalCharacters", totalCharacters);
-        contentStats.put("totalEpisodes", totalEpisodes);
-        contentStats.put("totalScenes", totalScenes);
-
-        Map<String, Long> contentByStatus = projects.stream()
-                .collect(Collectors.groupingBy(
-                        Project::getStatus,
-                        Collectors.counting()
-                ));
-        contentStats.put("contentByStatus", contentByStatus);
-
-        Map<String, Long> genreCounts = projects.stream()
-                .filter(p -> p.getGenre() != null && !p.getGenre().trim().isEmpty())
-                .collect(Collectors.groupingBy(
-                        Project::getGenre,
-                        Collectors.counting()
-                ));
-        contentStats.put("genreBreakdown", genreCounts);
-
-        Map<Integer, Long> projectsByYear = projects.stream()
-                .filter(p -> p.getStartProjectDate() != null)
-                .collect(Collectors.groupingBy(
-                        p -> p.getStartProjectDate().getYear(),
-                        Collectors.counting()
-                ));
-        contentStats.put("projectsByYear", projectsByYear);
-
-        Double totalContentBudget = projects.stream()
-                .mapToDouble(Project::getBudget)
-                .sum();
-        contentStats.put("totalContentBudget", totalContentBudget);
-
-        Map<String, Double> avgBudgetByType = projects.stream()
-                .collect(Collectors.groupingBy(
-                        Project::getProjectType,
-                        Collectors.averagingDouble(Project::getBudget)
-                ));
-        contentStats.put("averageBudgetByType", avgBudgetByType);
+        contentStats.put("seriesCount", stats.getTypeCounts().getOrDefault("SERIES", 0L));
+        contentStats.put("filmCount", stats.getTypeCounts().getOrDefault("FILM", 0L));
+        contentStats.put("totalCharacters", stats.getCharacterCount());
+        contentStats.put("totalEpisodes", stats.getEpisodeCount());
+        // Scenes across all projects (through episodes)
+        contentStats.put("totalScenes", stats.getSceneCount());
+        contentStats.put("contentByStatus", stats.getStatusCounts());
+        contentStats.put("genreBreakdown", stats.getGenreCounts());
+        contentStats.put("projectsByYear", stats.getYearCounts());
+        contentStats.put("totalContentBudget", stats.getTotalBudget());
+        contentStats.put("averageBudgetByType", stats.getAverageBudgetByType());
 
         return contentStats;
     }
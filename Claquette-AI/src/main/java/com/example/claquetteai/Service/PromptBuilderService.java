@@ -2,8 +2,14 @@ package com.example.claquetteai.Service;
 
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class PromptBuilderService {
+    // Upper bounds of the scene counts the episode / film prompts ask for, used to size the answer
+    public static final int EPISODE_MAX_SCENES = 12;
+    public static final int FILM_MAX_SCENES = 120;
+
     // Base prompt for all AI interactions
     private static final String BASE_PROMPT = """
         Generate a COMPLETE, production-ready ARABIC screenplay in valid JSON (UTF-8) 
@@ -192,6 +198,109 @@ public class PromptBuilderService {
                 formatCharacterNamesForJson(characterNames), characterNames, characterNames,
                 totalEpisodes, totalEpisodes, totalEpisodes, characterNames);
     }
+    /**
+     * Prompt for ONE episode of a series, so episodes can be generated independently (and in parallel).
+     * The total episode count is only given as context for the story arc.
+     */
+    public String singleEpisodePrompt(String projectDescription, int episodeNumber, int totalEpisodes, String characterNames) {
+        return BASE_PROMPT + """
+
+    ### TASK
+    Based on this project description: "%s"
+
+    CRITICAL CHARACTER CONSISTENCY RULE:
+    You must use ONLY these exact character names in all dialogue: %s
+    DO NOT create new characters or change these names. Use these names exactly as provided.
+
+    The series has %d episodes. Generate ONLY episode %d in JSON format:
+
+    {
+      "episode": {
+        "episode_number": %d,
+        "title": "string",
+        "summary": "string (3–4 جمل)",
+        "dramatic_goal": "string",
+        "key_characters": [%s],
+        "scenes": [
+          {
+            "slug": "string (INT./EXT. – المكان – وقت اليوم)",
+            "sound": "string (وصف الأصوات)",
+            "mood_light": "string (إضاءة/جو)",
+            "purpose": "string (Beat درامي)",
+            "action": "string (وصف بصري/حركة/سياق)",
+            "dialogue": [
+              { "character": "string (استخدم فقط من: %s)", "line": "string (جملة/جمل متعددة)", "aside": "string (اختياري: نبرة/فعل موجز)" }
+            ],
+            "internal_monologue": [
+              { "character": "string (استخدم فقط من: %s)", "thought": "string" }
+            ],
+            "turning_point": "string (نقطة تغيير داخل المشهد إن وُجدت)"
+          }
+        ],
+        "climax": "string (ذروة الحلقة)",
+        "tag": "string (خطّاف للحلقة التالية)"
+      }
+    }
+
+    IMPORTANT: Return exactly one episode, number %d of %d.
+    It should have 8-12 scenes and fit its place in the overall story arc.
+
+    DIALOGUE RULES:
+    - Use ONLY these character names: %s
+    - Do NOT invent new characters
+    """.formatted(projectDescription, characterNames, totalEpisodes, episodeNumber, episodeNumber,
+                formatCharacterNamesForJson(characterNames), characterNames, characterNames,
+                episodeNumber, totalEpisodes, characterNames);
+    }
+
+    /**
+     * Follow-up for an episode whose answer was cut off by the token limit: asks only for the
+     * scenes after the ones already recovered, listed by slug so they are not written again.
+     */
+    public String episodeContinuationPrompt(String projectDescription, int episodeNumber, int totalEpisodes,
+                                            String characterNames, List<String> writtenSceneSlugs) {
+        StringBuilder written = new StringBuilder();
+        for (int i = 0; i < writtenSceneSlugs.size(); i++) {
+            written.append(i + 1).append(". ").append(writtenSceneSlugs.get(i)).append("\n");
+        }
+        int nextScene = writtenSceneSlugs.size() + 1;
+        return """
+    Continue an ARABIC screenplay in valid JSON (UTF-8), following Saudi cultural, legal, and moral standards.
+
+    Project description: "%s"
+
+    Episode %d of %d was cut off. These scenes are already written, in order:
+    %s
+    Write ONLY the remaining scenes of episode %d, starting at scene %d, so the episode ends with
+    8-12 scenes in total (at least one more scene). Do not repeat or rewrite the scenes above.
+    Keep every scene concise so the answer is not cut off again.
+
+    Use ONLY these exact character names in dialogue: %s
+
+    Return JSON in this format and nothing else:
+
+    {
+      "episode": {
+        "episode_number": %d,
+        "scenes": [
+          {
+            "slug": "string (INT./EXT. – المكان – وقت اليوم)",
+            "sound": "string (وصف الأصوات)",
+            "mood_light": "string (إضاءة/جو)",
+            "purpose": "string (Beat درامي)",
+            "action": "string (وصف بصري/حركة/سياق)",
+            "dialogue": [
+              { "character": "string (استخدم فقط من: %s)", "line": "string (جملة/جمل متعددة)", "aside": "string (اختياري: نبرة/فعل موجز)" }
+            ],
+            "turning_point": "string (نقطة تغيير داخل المشهد إن وُجدت)"
+          }
+        ]
+      }
+    }
+    """.formatted(projectDescription, episodeNumber, totalEpisodes, written, episodeNumber, nextScene,
+                characterNames, episodeNumber, characterNames);
+    }
+
     /**
      * LEGACY METHOD: Original film prompt (for backward compatibility)
      */
@@ -6,9 +6,10 @@ import com.example.claquetteai.DTO.SceneDTOOUT;
 import com.example.claquetteai.Model.*;
 import com.example.claquetteai.Repository.*;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -21,9 +22,17 @@ public class SceneService {
     private final FilmRepository filmRepository;
     private final CharacterRepository characterRepository;
 
-    public List<SceneDTOOUT> getScenes(Integer userId, Integer projectId){
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Scenes of a project ordered by episode and scene number, read as DTOs in a single query
+     * however many episodes there are. Without a size every scene is returned.
+     */
+    public List<SceneDTOOUT> getScenes(Integer userId, Integer projectId, int page, Integer size){
+        if (page < 0 || (size != null && (size < 1 || size > MAX_PAGE_SIZE))){
+            throw new ApiException("page must be 0 or more and size between 1 and " + MAX_PAGE_SIZE);
+        }
         Project project = projectRepository.findProjectById(projectId);
-        List<Scene> scenes = new ArrayList<>();
         if (project == null){
             throw new ApiException("project not found");
         }
@@ -35,42 +44,18 @@ public class SceneService {
             throw new ApiException("not authorised");
         }
 
-        List<SceneDTOOUT> sceneDTOOUTS = new ArrayList<>();
-
         if(project.getProjectType().equals("FILM")){
-            Film film = filmRepository.findFilmByProject(project);
-            if(film == null){
+            // The film shares its project's id
+            if(!filmRepository.existsById(projectId)){
                 throw new ApiException("Film not found");
             }
-            scenes = sceneRepository.findSceneByFilm_Project(project);
-
-            // For film projects, episode info will be null
-            for (Scene s : scenes){
-                SceneDTOOUT dto = new SceneDTOOUT(s.getDialogue(), null, null);
-                sceneDTOOUTS.add(dto);
-            }
-        }else{
-            // Handle TV series with episodes
-            List<Episode> episodes = episodeRepository.findEpisodesByProject(project);
-            if (episodes.isEmpty()){
-                throw new ApiException("episode not found");
-            }
-
-            // Get scenes from all episodes with episode information
-            for(Episode episode : episodes) {
-                List<Scene> episodeScenes = sceneRepository.findScenesByEpisode(episode);
-                for (Scene s : episodeScenes){
-                    SceneDTOOUT dto = new SceneDTOOUT(
-                            s.getDialogue(),
-                            episode.getEpisodeNumber(),
-                            episode.getTitle()
-                    );
-                    sceneDTOOUTS.add(dto);
-                }
-            }
+        }else if(!episodeRepository.existsByProjectId(projectId)){
+            throw new ApiException("episode not found");
         }
 
-        return sceneDTOOUTS;
+        // For film projects, episode info will be null
+        Pageable pageable = size == null ? Pageable.unpaged() : PageRequest.of(page, size);
+        return sceneRepository.findSceneDTOsByProjectId(projectId, pageable);
     }
 
     public Integer characterScene(Integer userId, Integer projectId){
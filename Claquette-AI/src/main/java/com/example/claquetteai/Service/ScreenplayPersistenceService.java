@@ -0,0 +1,147 @@
+package com.example.claquetteai.Service;
+
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Repository.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Short write transactions for the generation pipeline.
+ * Model calls happen outside any transaction; only the saving of their results runs here.
+ * Entities built by the pipeline point at characters loaded in earlier transactions, so those
+ * are swapped for managed (and fully loaded) copies before persisting.
+ */
+@Service
+@RequiredArgsConstructor
+public class ScreenplayPersistenceService {
+
+    private final SceneRepository sceneRepository;
+    private final EpisodeRepository episodeRepository;
+    private final FilmRepository filmRepository;
+    private final CharacterRepository characterRepository;
+    private final ProjectRepository projectRepository;
+    private final GenerationCheckpointRepository generationCheckpointRepository;
+
+    @Transactional
+    public Scene saveScene(Scene scene) {
+        attachCharacters(List.of(scene));
+        return sceneRepository.save(scene);
+    }
+
+    @Transactional
+    public Episode saveEpisodeWithScenes(Episode episode) {
+        if (episode.getScenes() != null) {
+            attachCharacters(episode.getScenes());
+        }
+        return episodeRepository.save(episode);
+    }
+
+    @Transactional
+    public Film saveFilmWithScenes(Film film) {
+        film.setProject(projectRepository.getReferenceById(film.getProject().getId()));
+        if (film.getScenes() != null) {
+            attachCharacters(film.getScenes());
+        }
+        return filmRepository.save(film);
+    }
+
+    @Transactional
+    public void updateEpisodeHeader(Integer episodeId, String title, String summary, Integer durationMinutes) {
+        Episode episode = episodeRepository.getReferenceById(episodeId);
+        episode.setTitle(title);
+        episode.setSummary(summary);
+        episode.setDurationMinutes(durationMinutes);
+    }
+
+    @Transactional
+    public void updateFilmHeader(Integer filmId, String summary, Integer durationMinutes) {
+        Film film = filmRepository.getReferenceById(filmId);
+        film.setSummary(summary);
+        film.setDurationMinutes(durationMinutes);
+    }
+
+    @Transactional
+    public void savePoster(Integer projectId, StoredImage poster, String promptSha256) {
+        projectRepository.completePoster(projectId, poster, promptSha256);
+    }
+
+    // Removes the episode and its scenes
+    @Transactional
+    public void deleteEpisode(Integer episodeId) {
+        episodeRepository.findById(episodeId).ifPresent(episodeRepository::delete);
+    }
+
+    // Removes the film and its scenes
+    @Transactional
+    public void deleteFilm(Integer filmId) {
+        filmRepository.findById(filmId).ifPresent(film -> {
+            // Otherwise the project's cascade would re-save the film
+            film.getProject().setFilms(null);
+            filmRepository.delete(film);
+        });
+    }
+
+    // ---------- checkpoints ----------
+
+    public Set<String> completedStages(Project project) {
+        return generationCheckpointRepository.findGenerationCheckpointsByProject(project).stream()
+                .map(GenerationCheckpoint::getStage)
+                .collect(Collectors.toSet());
+    }
+
+    @Transactional
+    public void markStageCompleted(Project project, String stage) {
+        if (generationCheckpointRepository.existsByProjectAndStage(project, stage)) {
+            return;
+        }
+        GenerationCheckpoint checkpoint = new GenerationCheckpoint();
+        checkpoint.setProject(projectRepository.getReferenceById(project.getId()));
+        checkpoint.setStage(stage);
+        generationCheckpointRepository.save(checkpoint);
+    }
+
+    @Transactional
+    public void clearCheckpoints(Project project) {
+        generationCheckpointRepository.deleteGenerationCheckpointsByProject(project);
+    }
+
+    // Characters saved by an earlier (failed) run of the same project
+    public Set<FilmCharacters> savedCharacters(Project project) {
+        return new HashSet<>(characterRepository.findFilmCharactersByProject(project));
+    }
+
+    public List<Episode> savedEpisodes(Project project) {
+        return episodeRepository.findEpisodesByProject(project);
+    }
+
+    // One IN query for all characters of the given scenes
+    private void attachCharacters(Collection<Scene> scenes) {
+        Set<Integer> ids = new HashSet<>();
+        for (Scene scene : scenes) {
+            if (scene.getCharacters() != null) {
+                scene.getCharacters().stream().map(FilmCharacters::getId).filter(Objects::nonNull).forEach(ids::add);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Integer, FilmCharacters> managed = characterRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(FilmCharacters::getId, Function.identity()));
+
+        for (Scene scene : scenes) {
+            if (scene.getCharacters() == null || scene.getCharacters().isEmpty()) {
+                continue;
+            }
+            Set<FilmCharacters> attached = new HashSet<>();
+            for (FilmCharacters character : scene.getCharacters()) {
+                attached.add(character.getId() == null ? character : managed.getOrDefault(character.getId(), character));
+            }
+            scene.setCharacters(attached);
+        }
+    }
+}
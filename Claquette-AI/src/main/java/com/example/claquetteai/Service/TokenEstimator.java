@@ -0,0 +1,48 @@
+package com.example.claquetteai.Service;
+
+/**
+ * Cheap token count estimate for mixed Arabic / English prompts, without a tokenizer.
+ * BPE vocabularies pack English into ~4 characters per token but Arabic into fewer
+ * (~2.5-3, more with diacritics), and JSON punctuation often stands alone, so each class
+ * of character is weighted separately. The estimate leans high on purpose: it decides how
+ * much room is left for the answer, and overestimating only costs a little context.
+ * AiTokenBudget compares it with the real usage of every call (ai.tokens.estimate.ratio).
+ */
+public final class TokenEstimator {
+
+    private static final double ARABIC_CHARS_PER_TOKEN = 2.5;
+    private static final double LATIN_CHARS_PER_TOKEN = 4.0;
+    private static final double SYMBOLS_PER_TOKEN = 1.5;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int arabic = 0;
+        int latin = 0;
+        int symbols = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isArabic(c)) {
+                arabic++;
+            } else if (Character.isLetterOrDigit(c)) {
+                latin++;
+            } else if (!Character.isWhitespace(c)) {
+                symbols++;
+            }
+            // whitespace mostly merges into the following token
+        }
+        return (int) Math.ceil(arabic / ARABIC_CHARS_PER_TOKEN + latin / LATIN_CHARS_PER_TOKEN + symbols / SYMBOLS_PER_TOKEN);
+    }
+
+    // Arabic, Arabic Supplement and the two presentation-form blocks
+    private static boolean isArabic(char c) {
+        return (c >= 0x0600 && c <= 0x06FF)
+                || (c >= 0x0750 && c <= 0x077F)
+                || (c >= 0xFB50 && c <= 0xFDFF)
+                || (c >= 0xFE70 && c <= 0xFEFF);
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.claquetteai.LoadTest;
+
+import com.example.claquetteai.Service.AiExchangeRecorder;
+import com.example.claquetteai.Service.TokenEstimator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Local stand-in for the OpenAI API.
+ * Answers from the files AiExchangeRecorder wrote (openai.recording.enabled=true) when the request
+ * matches one; otherwise it makes up an answer that satisfies the request's response_format schema,
+ * so the pipeline can be driven without any recording and without network access.
+ * Latency, streaming speed and error rate are configurable; chat answers are streamed as SSE when
+ * the request asks for a stream.
+ */
+public class AiReplayServer implements AutoCloseable {
+
+    // 1x1 transparent PNG, the made-up poster
+    private static final String PIXEL_PNG = "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, JsonNode> recordings = new HashMap<>();
+
+    // Fixed delay before the first byte of every answer
+    private long latencyMillis = 0;
+    // Multiplier on the latency a recording was made with (0 = ignore it)
+    private double recordedLatencyScale = 0;
+    // Streamed answers are split into chunks of this many characters, one every chunkDelayMillis
+    private int chunkChars = 40;
+    private long chunkDelayMillis = 0;
+    // Share of requests answered with a 429 or 500 instead
+    private double errorRate = 0;
+    // Items in every made-up array; scene lists get scenesPerAnswer
+    private int arrayItems = 3;
+    private int scenesPerAnswer = 6;
+    private Random random = new Random(42);
+
+    private final AtomicInteger replayed = new AtomicInteger();
+    private final AtomicInteger synthesized = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+
+    public AiReplayServer latency(long millis, double recordedLatencyScale) {
+        this.latencyMillis = millis;
+        this.recordedLatencyScale = recordedLatencyScale;
+        return this;
+    }
+
+    public AiReplayServer streaming(int chunkChars, long chunkDelayMillis) {
+        this.chunkChars = chunkChars;
+        this.chunkDelayMillis = chunkDelayMillis;
+        return this;
+    }
+
+    public AiReplayServer errors(double errorRate, long seed) {
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    public AiReplayServer answerSize(int arrayItems, int scenesPerAnswer) {
+        this.arrayItems = arrayItems;
+        this.scenesPerAnswer = scenesPerAnswer;
+        return this;
+    }
+
+    /**
+     * Loads every recording of the directory (a missing directory means synthesized answers only)
+     */
+    public AiReplayServer recordings(Path dir) throws IOException {
+        if (dir == null || !Files.isDirectory(dir)) {
+            return this;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".json"))::iterator) {
+                String name = file.getFileName().toString();
+                recordings.put(name.substring(0, name.length() - ".json".length()), mapper.readTree(file.toFile()));
+            }
+        }
+        return this;
+    }
+
+    public AiReplayServer start() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                try {
+                    return answer(request);
+                } catch (Exception e) {
+                    return new MockResponse().setResponseCode(500)
+                            .setBody("{\"error\": {\"message\": \"replay failed: " + e.getMessage() + "\"}}");
+                }
+            }
+        });
+        server.start();
+        return this;
+    }
+
+    public String url() {
+        return server.url("/").toString().replaceAll("/$", "");
+    }
+
+    public int getRequestCount() {
+        return server.getRequestCount();
+    }
+
+    public int getReplayed() {
+        return replayed.get();
+    }
+
+    public int getSynthesized() {
+        return synthesized.get();
+    }
+
+    public int getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private MockResponse answer(RecordedRequest request) throws Exception {
+        if (injectError()) {
+            injectedErrors.incrementAndGet();
+            // Alternate the two failures the client retries: rate limit and server error
+            return injectedErrors.get() % 2 == 0
+                    ? new MockResponse().setResponseCode(429).setHeader("retry-after", "0")
+                    : new MockResponse().setResponseCode(500).setBody("{\"error\": {\"message\": \"injected\"}}");
+        }
+
+        String body = request.getBody().readUtf8();
+        JsonNode recording = recordings.get(AiExchangeRecorder.key(body));
+        long delay = latencyMillis;
+        if (recording != null) {
+            replayed.incrementAndGet();
+            delay += (long) (recording.path("latencyMillis").asLong() * recordedLatencyScale);
+        } else {
+            synthesized.incrementAndGet();
+        }
+
+        String path = request.getPath() == null ? "" : request.getPath();
+        MockResponse response;
+        if (path.startsWith("/v1/images")) {
+            JsonNode image = recording != null ? recording.path("response").path("body") : syntheticImage();
+            response = json(image);
+        } else {
+            JsonNode chatRequest = mapper.readTree(body);
+            JsonNode answer = recording != null ? recording.path("response") : syntheticChat(chatRequest);
+            response = chatRequest.path("stream").asBoolean() ? stream(answer) : completion(answer);
+        }
+        return response.setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized boolean injectError() {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    private MockResponse completion(JsonNode answer) throws Exception {
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode choice = root.putArray("choices").addObject();
+        choice.putObject("message").put("role", "assistant").put("content", answer.path("content").asText());
+        choice.put("finish_reason", answer.path("finish_reason").asText("stop"));
+        root.set("usage", answer.path("usage"));
+        return json(root);
+    }
+
+    private MockResponse stream(JsonNode answer) throws Exception {
+        String content = answer.path("content").asText();
+        StringBuilder sse = new StringBuilder();
+        for (int i = 0; i < content.length(); i += chunkChars) {
+            ObjectNode chunk = mapper.createObjectNode();
+            chunk.putArray("choices").addObject().putObject("delta")
+                    .put("content", content.substring(i, Math.min(content.length(), i + chunkChars)));
+            sse.append("data: ").append(mapper.writeValueAsString(chunk)).append("\n\n");
+        }
+        ObjectNode last = mapper.createObjectNode();
+        last.putArray("choices").addObject().put("finish_reason", answer.path("finish_reason").asText("stop"));
+        sse.append("data: ").append(mapper.writeValueAsString(last)).append("\n\n");
+        ObjectNode usage = mapper.createObjectNode();
+        usage.putArray("choices");
+        usage.set("usage", answer.path("usage"));
+        sse.append("data: ").append(mapper.writeValueAsString(usage)).append("\n\n");
+        sse.append("data: [DONE]\n\n");
+
+        MockResponse response = new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(sse.toString());
+        if (chunkDelayMillis > 0) {
+            // Roughly one chunk per period; the SSE framing makes chunks a little larger than the text
+            response.throttleBody(chunkChars * 3L, chunkDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private MockResponse json(JsonNode body) throws Exception {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(mapper.writeValueAsString(body));
+    }
+
+    private JsonNode syntheticImage() {
+        ObjectNode root = mapper.createObjectNode();
+        root.putArray("data").addObject().put("b64_json", PIXEL_PNG);
+        return root;
+    }
+
+    // An answer of the requested shape; free-form calls get an empty object
+    private JsonNode syntheticChat(JsonNode request) throws Exception {
+        JsonNode schema = request.path("response_format").path("json_schema").path("schema");
+        JsonNode document = schema.isMissingNode()
+                ? mapper.createObjectNode()
+                : fill(schema, schema, "answer", new AtomicInteger());
+        String content = mapper.writeValueAsString(document);
+
+        int promptTokens = 0;
+        for (JsonNode message : request.path("messages")) {
+            promptTokens += TokenEstimator.estimate(message.path("content").asText());
+        }
+        ObjectNode answer = mapper.createObjectNode();
+        answer.put("content", content);
+        answer.put("finish_reason", "stop");
+        answer.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", TokenEstimator.estimate(content));
+        return answer;
+    }
+
+    // Walks a strict schema: every property is required, so every property gets a value
+    private JsonNode fill(JsonNode schema, JsonNode root, String name, AtomicInteger counter) {
+        if (schema.has("$ref")) {
+            String ref = schema.get("$ref").asText();
+            return fill(root.at(ref.substring(1)), root, name, counter);
+        }
+        if (schema.has("enum")) {
+            return schema.get("enum").get(0);
+        }
+        switch (type(schema)) {
+            case "object": {
+                ObjectNode object = mapper.createObjectNode();
+                Iterator<Map.Entry<String, JsonNode>> properties = schema.path("properties").fields();
+                while (properties.hasNext()) {
+                    Map.Entry<String, JsonNode> property = properties.next();
+                    object.set(property.getKey(), fill(property.getValue(), root, property.getKey(), counter));
+                }
+                return object;
+            }
+            case "array": {
+                ArrayNode array = mapper.createArrayNode();
+                int items = "scenes".equals(name) ? scenesPerAnswer : arrayItems;
+                for (int i = 0; i < items; i++) {
+                    array.add(fill(schema.path("items"), root, name, counter));
+                }
+                return array;
+            }
+            case "integer":
+                return mapper.getNodeFactory().numberNode(counter.incrementAndGet());
+            case "number":
+                return mapper.getNodeFactory().numberNode(50.0 + counter.incrementAndGet() % 50);
+            case "boolean":
+                return mapper.getNodeFactory().booleanNode(true);
+            default:
+                // Numbered so names stay unique within the answer
+                return mapper.getNodeFactory().textNode(name + " " + counter.incrementAndGet());
+        }
+    }
+
+    // ["string", "null"] is a nullable string
+    private String type(JsonNode schema) {
+        JsonNode type = schema.path("type");
+        if (type.isArray()) {
+            for (JsonNode t : type) {
+                if (!"null".equals(t.asText())) {
+                    return t.asText();
+                }
+            }
+        }
+        return type.asText("object");
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.claquetteai.LoadTest;
+
+import com.example.claquetteai.Model.Company;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.User;
+import com.example.claquetteai.Repository.ProjectRepository;
+import com.example.claquetteai.Repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of the full generation pipeline (REST -> job queue -> model calls -> MySQL-mode H2)
+ * against AiReplayServer instead of OpenAI, so it runs offline and costs nothing.
+ * Every simulated company submits one project and polls its job until it finishes; the report
+ * gives throughput, p50/p99 of the submit call and of the whole job, time spent in model calls
+ * versus time connections were held, and how close the Hikari pool came to running dry.
+ *
+ * Not part of the normal build: mvn -B test -P load-test
+ * Tunables (-D): load.companies, load.episodes, load.latency-ms, load.chunk-delay-ms,
+ * load.error-rate, load.recordings (a directory written by openai.recording.enabled=true),
+ * plus any application property, e.g. -Dopenai.streaming.enabled=false or
+ * -Dspring.datasource.hikari.maximum-pool-size=5
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:load;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,MONTH,YEAR,VALUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.jakarta.persistence.validation.mode=none",
+        "spring.ai.openai.api-key=replay",
+        "moyasar.api.key=replay",
+        "watheq.api.key=replay",
+        "spring.mail.username=load@test.local",
+        "spring.mail.password=replay",
+        "openai.client.http2-enabled=false",
+        "openai.cache.enabled=false",
+        "openai.resilience.base-delay-ms=10",
+        "openai.limiter.free-plan-max=4",
+        "openai.limiter.advanced-plan-max=4",
+        "storage.images.dir=target/load-test-images"
+})
+class GenerationLoadTest {
+
+    private static final String PASSWORD = "Load@1234";
+    private static final int COMPANIES = Integer.getInteger("load.companies", 8);
+    private static final int EPISODES = Integer.getInteger("load.episodes", 3);
+    private static final Duration JOB_TIMEOUT = Duration.ofMinutes(10);
+
+    static AiReplayServer replay;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ProjectRepository projectRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    DataSource dataSource;
+
+    final HttpClient http = HttpClient.newHttpClient();
+    final ObjectMapper mapper = new ObjectMapper();
+
+    @DynamicPropertySource
+    static void replayServer(DynamicPropertyRegistry registry) throws Exception {
+        String recordings = System.getProperty("load.recordings");
+        replay = new AiReplayServer()
+                .latency(Long.getLong("load.latency-ms", 200), 0)
+                .streaming(40, Long.getLong("load.chunk-delay-ms", 5))
+                .errors(Double.parseDouble(System.getProperty("load.error-rate", "0.02")), 7)
+                .recordings(recordings == null ? null : Path.of(recordings))
+                .start();
+        registry.add("openai.base-url", replay::url);
+    }
+
+    @AfterAll
+    static void stopReplayServer() throws Exception {
+        replay.close();
+    }
+
+    @Test
+    void concurrentGenerationTest() throws Exception {
+        List<Seeded> seeded = new ArrayList<>();
+        for (int i = 0; i < COMPANIES; i++) {
+            seeded.add(seed(i));
+        }
+
+        // First requests pay for class loading and JIT; keep that out of the numbers
+        for (Seeded s : seeded) {
+            send(s, "GET", "/api/v1/company/my-company");
+        }
+
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        PoolSampler sampler = new PoolSampler(pool);
+        ScheduledExecutorService sampling = Executors.newSingleThreadScheduledExecutor();
+        sampling.scheduleAtFixedRate(sampler, 0, 20, TimeUnit.MILLISECONDS);
+
+        double modelSecondsBefore = timerSeconds("ai.route.latency");
+        double dbSecondsBefore = timerSeconds("hikaricp.connections.usage");
+
+        List<Long> submitMillis = Collections.synchronizedList(new ArrayList<>());
+        List<Long> jobMillis = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(COMPANIES);
+        long start = System.nanoTime();
+        List<Future<?>> runs = new ArrayList<>();
+        for (Seeded s : seeded) {
+            runs.add(clients.submit(() -> {
+                long submitStart = System.nanoTime();
+                JsonNode job = send(s, "POST", "/api/v1/ai-interaction/project/" + s.projectId());
+                submitMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitStart));
+
+                long deadline = System.nanoTime() + JOB_TIMEOUT.toNanos();
+                String status = job.path("status").asText();
+                while (!"COMPLETED".equals(status) && !"FAILED".equals(status) && System.nanoTime() < deadline) {
+                    Thread.sleep(100);
+                    job = send(s, "GET", "/api/v1/ai-interaction/job/" + job.path("jobId").asInt());
+                    status = job.path("status").asText();
+                }
+                jobMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitStart));
+                if (!"COMPLETED".equals(status)) {
+                    failed.incrementAndGet();
+                    System.out.println("Job of project " + s.projectId() + " ended " + status + ": " + job.path("errorMessage").asText());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        clients.shutdown();
+        sampling.shutdown();
+
+        String report = String.join("\n",
+                "=== GENERATION LOAD TEST ===",
+                String.format("companies %d, episodes per series %d, replayed %d, synthesized %d, injected errors %d",
+                        COMPANIES, EPISODES, replay.getReplayed(), replay.getSynthesized(), replay.getInjectedErrors()),
+                String.format("throughput        %.2f jobs/min (%d jobs in %.1f s, %d failed)",
+                        COMPANIES * 60 / wallSeconds, COMPANIES, wallSeconds, failed.get()),
+                String.format("submit latency    p50 %d ms, p99 %d ms", percentile(submitMillis, 50), percentile(submitMillis, 99)),
+                String.format("job duration      p50 %d ms, p99 %d ms", percentile(jobMillis, 50), percentile(jobMillis, 99)),
+                String.format("model time        %.1f s across %d calls", timerSeconds("ai.route.latency") - modelSecondsBefore,
+                        replay.getRequestCount()),
+                String.format("db time           %.1f s connections held", timerSeconds("hikaricp.connections.usage") - dbSecondsBefore),
+                String.format("hikari pool       max %d, peak active %d, peak waiting %d, waiting in %.0f%% of samples, %d timeouts",
+                        pool.getTotalConnections(), sampler.peakActive, sampler.peakWaiting,
+                        sampler.samples == 0 ? 0 : 100.0 * sampler.waitingSamples / sampler.samples,
+                        (long) counterTotal("hikaricp.connections.timeout")),
+                "============================");
+        System.out.println(report);
+        Path out = Path.of("target", "load-test-report.txt");
+        Files.createDirectories(out.getParent());
+        Files.writeString(out, report + "\n", StandardCharsets.UTF_8);
+
+        Assertions.assertEquals(0, failed.get(), "every generation job should complete");
+    }
+
+    private Seeded seed(int i) {
+        User user = new User();
+        user.setFullName("Load Company " + i);
+        user.setEmail("load" + i + "@test.local");
+        user.setPassword(new BCryptPasswordEncoder().encode(PASSWORD));
+        user.setRole("COMPANY");
+        user.setActiveAccount(true);
+
+        Company company = new Company();
+        company.setUser(user);
+        company.setName("Load Company " + i);
+        company.setCommercialRegNo(String.format("70%08d", i));
+        company.setIsSubscribed(true);
+        // Saved with the user (cascade), which gives the company its id
+        user.setCompany(company);
+        user = userRepository.save(user);
+        company = user.getCompany();
+
+        Project project = new Project();
+        project.setTitle("Load project " + i);
+        project.setDescription("قصة عائلة سعودية في الرياض تواجه تحديات العمل والحياة - load project " + i);
+        boolean film = i % 2 == 0;
+        project.setProjectType(film ? "FILM" : "SERIES");
+        project.setEpisodeCount(film ? 1 : EPISODES);
+        project.setGenre("Drama");
+        project.setBudget(1_000_000.0);
+        project.setLocation("Riyadh");
+        project.setTargetAudience("Adults");
+        project.setStatus("IN_DEVELOPMENT");
+        project.setStartProjectDate(LocalDateTime.now());
+        project.setEndProjectDate(LocalDateTime.now().plusMonths(6));
+        project.setCompany(company);
+        project = projectRepository.save(project);
+        return new Seeded(user.getEmail(), project.getId());
+    }
+
+    private JsonNode send(Seeded s, String method, String path) throws Exception {
+        String auth = Base64.getEncoder().encodeToString((s.email() + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Authorization", "Basic " + auth)
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException(method + " " + path + " -> " + response.statusCode() + " " + response.body());
+        }
+        return mapper.readTree(response.body());
+    }
+
+    private double timerSeconds(String name) {
+        return meterRegistry.find(name).timers().stream()
+                .mapToDouble(t -> t.totalTime(TimeUnit.SECONDS))
+                .sum();
+    }
+
+    private double counterTotal(String name) {
+        return meterRegistry.find(name).counters().stream().mapToDouble(c -> c.count()).sum();
+    }
+
+    private static long percentile(List<Long> values, int percentile) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    private record Seeded(String email, Integer projectId) {
+    }
+
+    // Hikari's own gauges are sampled too coarsely for short runs, so the pool is polled directly
+    private static class PoolSampler implements Runnable {
+        private final HikariPoolMXBean pool;
+        volatile int peakActive;
+        volatile int peakWaiting;
+        volatile long samples;
+        volatile long waitingSamples;
+
+        PoolSampler(HikariPoolMXBean pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            int active = pool.getActiveConnections();
+            int waiting = pool.getThreadsAwaitingConnection();
+            peakActive = Math.max(peakActive, active);
+            peakWaiting = Math.max(peakWaiting, waiting);
+            samples++;
+            if (waiting > 0) {
+                waitingSamples++;
+            }
+        }
+    }
+}
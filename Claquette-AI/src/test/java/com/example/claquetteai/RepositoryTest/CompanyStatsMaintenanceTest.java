@@ -0,0 +1,220 @@
+package com.example.claquetteai.RepositoryTest;
+
+import com.example.claquetteai.Config.CompanyStatsListener;
+import com.example.claquetteai.DTO.CompanyStatsDTOOUT;
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Repository.*;
+import com.example.claquetteai.Service.CompanyStatsService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * company_stats follows committed changes to projects, characters and scenes, made through any
+ * repository or cascade, and the rebuild job repairs a row that drifted. Runs real commits, so
+ * every test works on its own company.
+ */
+@DataJpaTest
+@Import({CompanyStatsService.class, CompanyStatsListener.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:companystats;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,MONTH,YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.jakarta.persistence.validation.mode=none"
+})
+class CompanyStatsMaintenanceTest {
+
+    @Autowired
+    EntityManager entityManager;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    CompanyStatsService companyStatsService;
+    @Autowired
+    ProjectRepository projectRepository;
+    @Autowired
+    CharacterRepository characterRepository;
+    @Autowired
+    SceneRepository sceneRepository;
+
+    TransactionTemplate transaction;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void statisticsFollowCommittedChangesTest() {
+        Integer companyId = company("Producer", "1010101010");
+        // The row exists from the first read
+        Assertions.assertEquals(0, companyStatsService.getStats(companyId).getProjectCount());
+
+        Integer projectId = transaction.execute(status -> {
+            Project project = project(companyId, "Series", "Drama", 300.0);
+            characters(project, 2);
+            episode(project, 1, 3);
+            episode(project, 2, 2);
+            return project.getId();
+        });
+
+        CompanyStatsDTOOUT stats = companyStatsService.getStats(companyId);
+        Assertions.assertEquals(1, stats.getProjectCount());
+        Assertions.assertEquals(300.0, stats.getTotalBudget());
+        Assertions.assertEquals(2, stats.getCharacterCount());
+        Assertions.assertEquals(5, stats.getSceneCount());
+        Assertions.assertEquals(Map.of("IN_DEVELOPMENT", 1L), stats.getStatusCounts());
+        Assertions.assertEquals(Map.of("Drama", 1L), stats.getGenreCounts());
+
+        // Counters move with single inserts and deletes
+        transaction.executeWithoutResult(status -> {
+            Project project = projectRepository.findProjectById(projectId);
+            characters(project, 1);
+            Scene scene = sceneRepository.findAll().get(0);
+            scene.getEpisode().getScenes().remove(scene);
+            sceneRepository.delete(scene);
+        });
+        stats = companyStatsService.getStats(companyId);
+        Assertions.assertEquals(3, stats.getCharacterCount());
+        Assertions.assertEquals(4, stats.getSceneCount());
+
+        // A project change recounts the company
+        transaction.executeWithoutResult(status -> {
+            Project project = projectRepository.findProjectById(projectId);
+            project.setStatus("IN_PRODUCTION");
+            project.setBudget(500.0);
+        });
+        stats = companyStatsService.getStats(companyId);
+        Assertions.assertEquals(Map.of("IN_PRODUCTION", 1L), stats.getStatusCounts());
+        Assertions.assertEquals(500.0, stats.getTotalBudget());
+
+        // A rolled back change leaves the figures as they were
+        transaction.executeWithoutResult(status -> {
+            characters(projectRepository.findProjectById(projectId), 4);
+            status.setRollbackOnly();
+        });
+        Assertions.assertEquals(3, companyStatsService.getStats(companyId).getCharacterCount());
+
+        // Deleting the project cascades to everything it counted
+        transaction.executeWithoutResult(status -> projectRepository.delete(projectRepository.findProjectById(projectId)));
+        stats = companyStatsService.getStats(companyId);
+        Assertions.assertEquals(0, stats.getProjectCount());
+        Assertions.assertEquals(0, stats.getCharacterCount());
+        Assertions.assertEquals(0, stats.getSceneCount());
+    }
+
+    @Test
+    void rebuildRepairsDriftTest() {
+        Integer companyId = company("Other", "2020202020");
+        transaction.executeWithoutResult(status -> {
+            Project project = project(companyId, "Film", "Action", 100.0);
+            characters(project, 2);
+        });
+        Assertions.assertEquals(2, companyStatsService.getStats(companyId).getCharacterCount());
+
+        // e.g. a row changed by hand, or a bulk statement that bypassed Hibernate
+        jdbcTemplate.update("UPDATE company_stats SET character_count = 99, project_count = 7 WHERE company_id = ?", companyId);
+        companyStatsService.rebuildAll();
+
+        CompanyStatsDTOOUT stats = companyStatsService.getStats(companyId);
+        Assertions.assertEquals(2, stats.getCharacterCount());
+        Assertions.assertEquals(1, stats.getProjectCount());
+    }
+
+    @Test
+    void firstReadInsideAWritingTransactionCountsItsChangesOnceTest() {
+        Integer companyId = company("Third", "3030303030");
+        Integer projectId = transaction.execute(status -> project(companyId, "Film", "Comedy", 50.0).getId());
+
+        // The row is made while this transaction still holds two uncommitted characters
+        transaction.executeWithoutResult(status -> {
+            characters(projectRepository.findProjectById(projectId), 2);
+            companyStatsService.getStats(companyId);
+        });
+
+        Assertions.assertEquals(2, companyStatsService.getStats(companyId).getCharacterCount());
+        Assertions.assertEquals(1, companyStatsService.getStats(companyId).getProjectCount());
+    }
+
+    private Integer company(String name, String regNo) {
+        return transaction.execute(status -> {
+            User user = new User();
+            user.setFullName(name);
+            user.setEmail(name.toLowerCase() + "@example.com");
+            user.setPassword("secret");
+            user.setRole("COMPANY");
+            entityManager.persist(user);
+
+            Company company = new Company();
+            company.setName(name + " Studio");
+            company.setCommercialRegNo(regNo);
+            company.setUser(user);
+            entityManager.persist(company);
+            return company.getId();
+        });
+    }
+
+    private Project project(Integer companyId, String title, String genre, Double budget) {
+        Project project = new Project();
+        project.setTitle(title);
+        project.setProjectType("SERIES");
+        project.setGenre(genre);
+        project.setBudget(budget);
+        project.setEpisodeCount(2);
+        project.setLocation("Riyadh");
+        project.setStatus("IN_DEVELOPMENT");
+        project.setStartProjectDate(LocalDateTime.of(2025, 3, 1, 0, 0));
+        project.setEndProjectDate(LocalDateTime.of(2025, 12, 1, 0, 0));
+        project.setCompany(entityManager.find(Company.class, companyId));
+        project.setCharacters(new HashSet<>());
+        project.setEpisodes(new HashSet<>());
+        entityManager.persist(project);
+        return project;
+    }
+
+    private void characters(Project project, int count) {
+        for (int c = 0; c < count; c++) {
+            FilmCharacters character = new FilmCharacters();
+            character.setName(project.getTitle() + " character " + UUID.randomUUID());
+            character.setProject(project);
+            project.getCharacters().add(characterRepository.save(character));
+        }
+    }
+
+    private void episode(Project project, int number, int scenes) {
+        Episode episode = new Episode();
+        episode.setEpisodeNumber(number);
+        episode.setTitle("Episode " + number);
+        episode.setProject(project);
+        episode.setScenes(new HashSet<>());
+        for (int s = 1; s <= scenes; s++) {
+            Scene scene = new Scene();
+            scene.setSceneNumber(s);
+            scene.setEpisode(episode);
+            episode.getScenes().add(scene);
+        }
+        entityManager.persist(episode);
+        project.getEpisodes().add(episode);
+    }
+}
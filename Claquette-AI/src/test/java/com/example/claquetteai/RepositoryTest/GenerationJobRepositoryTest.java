@@ -0,0 +1,140 @@
+package com.example.claquetteai.RepositoryTest;
+
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Repository.GenerationJobRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * The database allows one QUEUED or RUNNING job per project, whatever two requests checked
+ * before inserting. Runs real commits, like the service does.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:generationjobs;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,MONTH,YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.jakarta.persistence.validation.mode=none"
+})
+class GenerationJobRepositoryTest {
+
+    @Autowired
+    EntityManager entityManager;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    GenerationJobRepository generationJobRepository;
+
+    TransactionTemplate transaction;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void onlyOneActiveJobPerProjectTest() {
+        Project project = project("Producer", "1010101010");
+        GenerationJob first = generationJobRepository.saveAndFlush(job(project));
+
+        Assertions.assertThrows(DataIntegrityViolationException.class,
+                () -> generationJobRepository.saveAndFlush(job(project)));
+
+        // Once the first job finished, the project takes a new one
+        first.setStatus("COMPLETED");
+        first.setActiveProjectId(null);
+        generationJobRepository.saveAndFlush(first);
+        GenerationJob second = generationJobRepository.saveAndFlush(job(project));
+
+        Assertions.assertNotEquals(first.getId(), second.getId());
+        Assertions.assertEquals(second.getId(), generationJobRepository.findTopByProjectOrderByIdDesc(project).getId());
+    }
+
+    @Test
+    void claimRecordsTheNodeTest() {
+        Integer jobId = generationJobRepository.saveAndFlush(job(project("Other", "2020202020"))).getId();
+
+        Assertions.assertEquals(Integer.valueOf(1), transaction.execute(status -> generationJobRepository.claim(jobId, "node-a")));
+        // Already RUNNING: another node's claim does nothing
+        Assertions.assertEquals(Integer.valueOf(0), transaction.execute(status -> generationJobRepository.claim(jobId, "node-b")));
+
+        GenerationJob job = generationJobRepository.findGenerationJobById(jobId);
+        Assertions.assertEquals("RUNNING", job.getStatus());
+        Assertions.assertEquals("node-a", job.getNodeId());
+        Assertions.assertEquals(1, job.getAttempts());
+    }
+
+    @Test
+    void progressOnlyMovesForwardTest() {
+        Integer jobId = generationJobRepository.saveAndFlush(job(project("Third", "3030303030"))).getId();
+        transaction.execute(status -> generationJobRepository.claim(jobId, "node-a"));
+
+        Assertions.assertEquals(Integer.valueOf(1), transaction.execute(status -> generationJobRepository.updateProgress(jobId, "episode 2", 4, 6)));
+        // A slower thread reporting an earlier step does not move it back
+        Assertions.assertEquals(Integer.valueOf(0), transaction.execute(status -> generationJobRepository.updateProgress(jobId, "episode 1", 3, 6)));
+        // The same step under another stage name still shows
+        Assertions.assertEquals(Integer.valueOf(1), transaction.execute(status -> generationJobRepository.updateProgress(jobId, "casting", 4, 6)));
+
+        GenerationJob job = generationJobRepository.findGenerationJobById(jobId);
+        Assertions.assertEquals("casting", job.getStage());
+        Assertions.assertEquals(4, job.getCompletedSteps());
+        Assertions.assertEquals(6, job.getTotalSteps());
+    }
+
+    private GenerationJob job(Project project) {
+        GenerationJob job = new GenerationJob();
+        job.setStatus("QUEUED");
+        job.setStage("queued");
+        job.setUserId(project.getCompany().getUser().getId());
+        job.setProject(project);
+        job.setActiveProjectId(project.getId());
+        return job;
+    }
+
+    private Project project(String name, String regNo) {
+        return transaction.execute(status -> {
+            User user = new User();
+            user.setFullName(name);
+            user.setEmail(name.toLowerCase() + "@example.com");
+            user.setPassword("secret");
+            user.setRole("COMPANY");
+            entityManager.persist(user);
+
+            Company company = new Company();
+            company.setName(name + " Studio");
+            company.setCommercialRegNo(regNo);
+            company.setUser(user);
+            entityManager.persist(company);
+
+            Project project = new Project();
+            project.setTitle(name + " series");
+            project.setProjectType("SERIES");
+            project.setEpisodeCount(2);
+            project.setLocation("Riyadh");
+            project.setStatus("IN_DEVELOPMENT");
+            project.setStartProjectDate(LocalDateTime.now());
+            project.setEndProjectDate(LocalDateTime.now().plusMonths(6));
+            project.setCompany(company);
+            entityManager.persist(project);
+            return project;
+        });
+    }
+}
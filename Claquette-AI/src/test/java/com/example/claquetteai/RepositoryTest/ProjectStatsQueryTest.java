@@ -0,0 +1,182 @@
+package com.example.claquetteai.RepositoryTest;
+
+import com.example.claquetteai.DTO.ProjectDTOOUT;
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Repository.*;
+import com.example.claquetteai.Service.CompanyStatsService;
+import com.example.claquetteai.Service.ProjectService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Dashboard and content statistics are counted by the database: the same few statements and no
+ * project, character or scene entities loaded, however many projects the user has. After the
+ * first read they come from the company's company_stats row. The data is committed first, since
+ * the row is counted in transactions of its own.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stats;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,MONTH,YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.jakarta.persistence.validation.mode=none",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ProjectStatsQueryTest {
+
+    @Autowired
+    EntityManager entityManager;
+    @Autowired
+    ProjectRepository projectRepository;
+    @Autowired
+    CompanyRepository companyRepository;
+    @Autowired
+    CharacterRepository characterRepository;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    SceneRepository sceneRepository;
+    @Autowired
+    CompanyStatsRepository companyStatsRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    ProjectService projectService;
+    TransactionTemplate transaction;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        CompanyStatsService companyStatsService = new CompanyStatsService(companyStatsRepository, companyRepository,
+                projectRepository, characterRepository, sceneRepository, transactionManager);
+        // Image and AI services are not used by the statistics
+        projectService = new ProjectService(projectRepository, companyRepository, characterRepository,
+                userRepository, sceneRepository, null, null, null, companyStatsService);
+    }
+
+    @Test
+    void statisticsAreCountedByTheDatabaseTest() {
+        User user = transaction.execute(status -> {
+            User producer = user("Producer", "1010101010");
+            project(producer, "Film", "FILM", "Drama", 100.0, "IN_PRODUCTION", 2024, 0, 3);
+            project(producer, "Series A", "SERIES", "Drama", 300.0, "IN_DEVELOPMENT", 2025, 2, 2);
+            project(producer, "Series B", "SERIES", " ", null, "COMPLETED", 2025, 3, 1);
+            // Someone else's project is not counted
+            project(user("Other", "2020202020"), "Other", "SERIES", "Comedy", 999.0, "COMPLETED", 2025, 1, 1);
+            return producer;
+        });
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        Map<String, Object> dashboard = projectService.getDashboardSummary(user.getId());
+        Map<String, Object> content = projectService.getContentStats(user.getId());
+
+        // Only the user is loaded, to check it exists
+        Assertions.assertEquals(0, countLoaded(statistics, Project.class, FilmCharacters.class, Scene.class, Episode.class));
+        Assertions.assertTrue(statistics.getPrepareStatementCount() <= 15,
+                "expected a fixed few statements, got " + statistics.getPrepareStatementCount());
+
+        // Once the company has its company_stats row, the figures are one lookup by id
+        statistics.clear();
+        projectService.getContentStats(user.getId());
+        Assertions.assertEquals(1, statistics.getEntityStatistics(CompanyStats.class.getName()).getLoadCount());
+        Assertions.assertEquals(0, countLoaded(statistics, Project.class, FilmCharacters.class, Scene.class, Episode.class));
+
+        Assertions.assertEquals(3, dashboard.get("totalProjects"));
+        Assertions.assertEquals(400.0, dashboard.get("totalBudget"));
+        Assertions.assertEquals(6, dashboard.get("totalCharacters"));
+        Assertions.assertEquals(2L, dashboard.get("activeProjects"));
+        Assertions.assertEquals(Map.of("FILM", 1L, "SERIES", 2L), dashboard.get("projectTypeBreakdown"));
+        List<?> recent = (List<?>) dashboard.get("recentProjects");
+        Assertions.assertEquals(3, recent.size());
+        Assertions.assertEquals("Film", ((ProjectDTOOUT) recent.get(2)).getTitle());
+
+        Assertions.assertEquals(5, content.get("totalEpisodes"));
+        // Two scenes in each of the 2 + 3 episodes
+        Assertions.assertEquals(10, content.get("totalScenes"));
+        Assertions.assertEquals(Map.of("Drama", 2L), content.get("genreBreakdown"));
+        Assertions.assertEquals(Map.of(2024, 1L, 2025, 2L), content.get("projectsByYear"));
+        Assertions.assertEquals(Map.of("IN_PRODUCTION", 1L, "IN_DEVELOPMENT", 1L, "COMPLETED", 1L), content.get("contentByStatus"));
+        Assertions.assertEquals(Map.of("FILM", 100.0, "SERIES", 300.0), content.get("averageBudgetByType"));
+    }
+
+    private static long countLoaded(Statistics statistics, Class<?>... entities) {
+        return Arrays.stream(entities)
+                .mapToLong(entity -> statistics.getEntityStatistics(entity.getName()).getLoadCount())
+                .sum();
+    }
+
+    private User user(String name, String regNo) {
+        User user = new User();
+        user.setFullName(name);
+        user.setEmail(name.toLowerCase() + "@example.com");
+        user.setPassword("secret");
+        user.setRole("COMPANY");
+        entityManager.persist(user);
+
+        Company company = new Company();
+        company.setName(name + " Studio");
+        company.setCommercialRegNo(regNo);
+        company.setUser(user);
+        entityManager.persist(company);
+        user.setCompany(company);
+        return user;
+    }
+
+    private void project(User user, String title, String type, String genre, Double budget, String status,
+                         int year, int episodes, int characters) {
+        Project project = new Project();
+        project.setTitle(title);
+        project.setProjectType(type);
+        project.setGenre(genre);
+        project.setBudget(budget);
+        project.setEpisodeCount(episodes);
+        project.setLocation("Riyadh");
+        project.setStatus(status);
+        project.setStartProjectDate(LocalDateTime.of(year, 3, 1, 0, 0).plusDays(episodes));
+        project.setEndProjectDate(LocalDateTime.of(year, 12, 1, 0, 0));
+        project.setCompany(user.getCompany());
+        entityManager.persist(project);
+
+        for (int c = 0; c < characters; c++) {
+            FilmCharacters character = new FilmCharacters();
+            character.setName(title + " character " + c);
+            character.setProject(project);
+            entityManager.persist(character);
+        }
+        for (int e = 1; e <= episodes; e++) {
+            Episode episode = new Episode();
+            episode.setEpisodeNumber(e);
+            episode.setTitle("Episode " + e);
+            episode.setProject(project);
+            episode.setScenes(new HashSet<>());
+            for (int s = 1; s <= 2; s++) {
+                Scene scene = new Scene();
+                scene.setSceneNumber(s);
+                scene.setEpisode(episode);
+                episode.getScenes().add(scene);
+            }
+            entityManager.persist(episode);
+        }
+    }
+}
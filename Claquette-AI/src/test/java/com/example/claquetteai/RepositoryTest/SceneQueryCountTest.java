@@ -0,0 +1,143 @@
+package com.example.claquetteai.RepositoryTest;
+
+import com.example.claquetteai.DTO.SceneDTOOUT;
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Service.SceneService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Statements SceneService.getScenes runs for a series: the same for 2 episodes as for 12, where
+ * it used to be one scene query per episode plus the characters of every scene.
+ */
+@DataJpaTest
+@Import(SceneService.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:scenes;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,MONTH,YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.jakarta.persistence.validation.mode=none",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class SceneQueryCountTest {
+
+    private static final int SCENES_PER_EPISODE = 5;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    SceneService sceneService;
+
+    @Test
+    void scenesAreReadWithAConstantNumberOfStatementsTest() {
+        User user = user();
+        Project small = series(user, "Small", 2);
+        Project large = series(user, "Large", 12);
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<SceneDTOOUT> smallScenes = sceneService.getScenes(user.getId(), small.getId(), 0, null);
+        long smallStatements = statistics.getPrepareStatementCount();
+
+        entityManager.clear();
+        statistics.clear();
+        List<SceneDTOOUT> largeScenes = sceneService.getScenes(user.getId(), large.getId(), 0, null);
+        long largeStatements = statistics.getPrepareStatementCount();
+
+        Assertions.assertEquals(2 * SCENES_PER_EPISODE, smallScenes.size());
+        Assertions.assertEquals(12 * SCENES_PER_EPISODE, largeScenes.size());
+        Assertions.assertEquals(smallStatements, largeStatements);
+        // Loading the project and user for the ownership check, then one check and one scene query
+        Assertions.assertTrue(largeStatements < 10, "expected a handful of statements, got " + largeStatements);
+        Assertions.assertEquals(1, largeScenes.get(0).getEpisodeNumber());
+        Assertions.assertEquals("Episode 12", largeScenes.get(largeScenes.size() - 1).getEpisodeTitle());
+        Assertions.assertEquals("Large 1.1", largeScenes.get(0).getDialogue());
+    }
+
+    @Test
+    void scenesArePagedInEpisodeOrderTest() {
+        User user = user();
+        Project project = series(user, "Paged", 3);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<SceneDTOOUT> second = sceneService.getScenes(user.getId(), project.getId(), 1, 4);
+
+        Assertions.assertEquals(4, second.size());
+        Assertions.assertEquals("Paged 1.5", second.get(0).getDialogue());
+        Assertions.assertEquals("Paged 2.3", second.get(3).getDialogue());
+        Assertions.assertEquals(2, second.get(3).getEpisodeNumber());
+    }
+
+    private User user() {
+        User user = new User();
+        user.setFullName("Producer");
+        user.setEmail("producer@example.com");
+        user.setPassword("secret");
+        user.setRole("COMPANY");
+        entityManager.persist(user);
+
+        Company company = new Company();
+        company.setName("Studio");
+        company.setCommercialRegNo("1010101010");
+        company.setUser(user);
+        entityManager.persist(company);
+        user.setCompany(company);
+        return user;
+    }
+
+    private Project series(User user, String title, int episodes) {
+        Project project = new Project();
+        project.setTitle(title);
+        project.setProjectType("SERIES");
+        project.setEpisodeCount(episodes);
+        project.setLocation("Riyadh");
+        project.setStatus("IN_DEVELOPMENT");
+        project.setStartProjectDate(LocalDateTime.now());
+        project.setEndProjectDate(LocalDateTime.now().plusMonths(6));
+        project.setCompany(user.getCompany());
+        entityManager.persist(project);
+
+        FilmCharacters character = new FilmCharacters();
+        character.setName(title + " lead");
+        character.setProject(project);
+        entityManager.persist(character);
+
+        // Persisted last episode first, so the order has to come from the query
+        for (int e = episodes; e >= 1; e--) {
+            Episode episode = new Episode();
+            episode.setEpisodeNumber(e);
+            episode.setTitle("Episode " + e);
+            episode.setProject(project);
+            episode.setScenes(new HashSet<>());
+            for (int s = SCENES_PER_EPISODE; s >= 1; s--) {
+                Scene scene = new Scene();
+                scene.setSceneNumber(s);
+                scene.setDialogue(title + " " + e + "." + s);
+                scene.setEpisode(episode);
+                scene.setCharacters(new HashSet<>(Set.of(character)));
+                episode.getScenes().add(scene);
+            }
+            entityManager.persist(episode);
+        }
+        return project;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.claquetteai.RepositoryTest;
+
+import com.example.claquetteai.Model.Episode;
+import com.example.claquetteai.Model.FilmCharacters;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.Scene;
+import com.example.claquetteai.Repository.CharacterRepository;
+import com.example.claquetteai.Repository.EpisodeRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Insert cost of a large generated series (10 episodes x 8 scenes x 3 characters each).
+ * Runs on H2 in MySQL mode with the same batching settings as application.properties and
+ * counts the statements Hibernate prepares; with IDENTITY ids every row was its own INSERT.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:batch;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,MONTH,YEAR,VALUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.jakarta.persistence.validation.mode=none",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ScreenplayBatchInsertTest {
+
+    private static final int EPISODES = 10;
+    private static final int SCENES_PER_EPISODE = 8;
+    private static final int CHARACTERS = 6;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    EpisodeRepository episodeRepository;
+
+    @Autowired
+    CharacterRepository characterRepository;
+
+    @Test
+    void largeSeriesIsInsertedInBatchesTest() {
+        Project project = new Project();
+        project.setTitle("Series");
+        project.setProjectType("SERIES");
+        project.setEpisodeCount(EPISODES);
+        project.setLocation("Riyadh");
+        project.setStatus("IN_DEVELOPMENT");
+        project.setStartProjectDate(LocalDateTime.now());
+        project.setEndProjectDate(LocalDateTime.now().plusMonths(6));
+        entityManager.persist(project);
+        entityManager.flush();
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long start = System.nanoTime();
+
+        List<FilmCharacters> characters = new ArrayList<>();
+        for (int i = 0; i < CHARACTERS; i++) {
+            FilmCharacters character = new FilmCharacters();
+            character.setName("Character " + i);
+            character.setProject(project);
+            characters.add(character);
+        }
+        characters = characterRepository.saveAll(characters);
+
+        List<Episode> episodes = new ArrayList<>();
+        for (int e = 1; e <= EPISODES; e++) {
+            Episode episode = new Episode();
+            episode.setEpisodeNumber(e);
+            episode.setTitle("Episode " + e);
+            episode.setProject(project);
+            episode.setScenes(new HashSet<>());
+            for (int s = 1; s <= SCENES_PER_EPISODE; s++) {
+                Scene scene = new Scene();
+                scene.setSceneNumber(s);
+                scene.setEpisode(episode);
+                scene.setCharacters(new HashSet<>(characters.subList(s % 3, s % 3 + 3)));
+                episode.getScenes().add(scene);
+            }
+            episodes.add(episode);
+        }
+        episodeRepository.saveAll(episodes);
+        entityManager.flush();
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        int rows = CHARACTERS + EPISODES + EPISODES * SCENES_PER_EPISODE * 4;
+        long statements = statistics.getPrepareStatementCount();
+        System.out.println("Inserted " + rows + " rows with " + statements + " statements in " + elapsedMs + " ms");
+
+        Assertions.assertEquals(EPISODES * SCENES_PER_EPISODE,
+                entityManager.createQuery("select count(s) from Scene s", Long.class).getSingleResult());
+        // Three batched inserts per entity type plus a few id block fetches, instead of one per row
+        Assertions.assertTrue(statements < 40, "expected batched inserts, got " + statements + " statements");
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Api.TooManyRequestsException;
+import com.example.claquetteai.Repository.CompanySubscriptionRepository;
+import com.example.claquetteai.Service.AiCallLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+public class AiCallLimiterTest {
+
+    AiCallLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        // No subscription, so company 7 is on the FREE plan: one call at a time, waiters give up after 1 s
+        limiter = new AiCallLimiter(mock(CompanySubscriptionRepository.class), new SimpleMeterRegistry(),
+                4, 10, 1, 15, 1, 4, 60);
+    }
+
+    @Test
+    public void capFollowsThePlanTest() {
+        Assertions.assertEquals(1, limiter.companyCap(7));
+        Assertions.assertEquals(4, limiter.companyCap(null));
+    }
+
+    @Test
+    public void backgroundCallWaitsPastMaxWaitTest() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CompletableFuture<String> holder = CompletableFuture.supplyAsync(() -> call(() -> {
+            holding.countDown();
+            // Long enough that the background call below waits more than max-wait-seconds
+            Thread.sleep(3000);
+            return "first";
+        }));
+        Assertions.assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        // A request gives up after max-wait-seconds...
+        Assertions.assertThrows(TooManyRequestsException.class, () -> limiter.run(7, () -> "request"));
+
+        // ...work on a background pool waits for the permit
+        CompletableFuture<String> background = new CompletableFuture<>();
+        Thread worker = new Thread(AiCallLimiter.backgroundTasks().decorate(
+                () -> background.complete(call(() -> "background"))));
+        worker.start();
+
+        Assertions.assertEquals("first", holder.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("background", background.get(5, TimeUnit.SECONDS));
+    }
+
+    private String call(AiCallLimiter.AiCall<String> call) {
+        try {
+            return limiter.run(7, call);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
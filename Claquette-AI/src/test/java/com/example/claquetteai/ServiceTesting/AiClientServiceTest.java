@@ -0,0 +1,287 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Api.ServiceUnavailableException;
+import com.example.claquetteai.Model.AiRoute;
+import com.example.claquetteai.Repository.AiRouteRepository;
+import com.example.claquetteai.Repository.CompanySubscriptionRepository;
+import com.example.claquetteai.Service.AiCallLimiter;
+import com.example.claquetteai.Service.AiCallOptions;
+import com.example.claquetteai.Service.AiClientService;
+import com.example.claquetteai.Service.AiExchangeRecorder;
+import com.example.claquetteai.Service.AiResilienceService;
+import com.example.claquetteai.Service.AiResponseCacheService;
+import com.example.claquetteai.Service.AiResponseSchema;
+import com.example.claquetteai.Service.AiRoutingService;
+import com.example.claquetteai.Service.AiTokenBudget;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AiClientServiceTest {
+
+    private static final String CHAT_OK = """
+            {"choices": [{"message": {"role": "assistant", "content": "{\\"characters\\": []}"}}]}
+            """;
+    private static final String CHAT_HEDGE = """
+            {"choices": [{"message": {"role": "assistant", "content": "{\\"characters\\": [\\"hedge\\"]}"}}]}
+            """;
+
+    MockWebServer server;
+    AiClientService aiClientService;
+    AiRouteRepository aiRouteRepository;
+    SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        aiRouteRepository = mock(AiRouteRepository.class);
+        aiClientService = client(false);
+    }
+
+    private AiClientService client(boolean hedging) {
+        String baseUrl = server.url("/").toString().replaceAll("/$", "");
+        registry = new SimpleMeterRegistry();
+        AiCallLimiter limiter = new AiCallLimiter(mock(CompanySubscriptionRepository.class), registry,
+                4, 10, 5, 15, 1, 4, 60);
+        // 3 attempts, 1-5 ms backoff, breaker opens after 2 upstream failures, hedges after 200 ms
+        AiResilienceService resilience = new AiResilienceService(registry, limiter, 3, 1, 5, 60, 2, 30, hedging, 200);
+        if (hedging) {
+            // Enough fast answers for a p95, so the 200 ms floor is the hedging deadline
+            for (int i = 0; i < 20; i++) {
+                resilience.hedged(null, Mono.just("warm-up")).block();
+            }
+        }
+
+        AiClientService client = new AiClientService(WebClient.builder().baseUrl(baseUrl).build(),
+                mock(AiResponseCacheService.class), limiter, resilience,
+                new AiTokenBudget(registry, 1000, 500, 50, 1.0),
+                new AiRoutingService(aiRouteRepository, limiter, registry, "gpt-4.1-mini", 0.7, "dall-e-3", 30),
+                new AiExchangeRecorder());
+        ReflectionTestUtils.setField(client, "API_KEY", "test-key");
+        ReflectionTestUtils.setField(client, "structuredOutputEnabled", true);
+        return client;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void retriesRateLimitedCallTest() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("retry-after", "0"));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+
+        String json = aiClientService.askModel("prompt");
+
+        Assertions.assertEquals("{\"characters\": []}", json);
+        Assertions.assertEquals(2, server.getRequestCount());
+        RecordedRequest request = server.takeRequest();
+        Assertions.assertEquals("/v1/chat/completions", request.getPath());
+        Assertions.assertEquals("Bearer test-key", request.getHeader("Authorization"));
+    }
+
+    @Test
+    public void permitIsNotHeldDuringRetryBackoffTest() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("retry-after", "1"));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+
+        CompletableFuture<String> call = CompletableFuture.supplyAsync(() -> {
+            try {
+                return aiClientService.askModel("prompt", AiCallOptions.forCompany(7));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.takeRequest();
+        Thread.sleep(300);
+
+        // Waiting out retry-after, the call holds neither a node-wide nor a company permit
+        Assertions.assertEquals(0.0, registry.get("ai.limiter.active").gauge().value());
+        Assertions.assertEquals("{\"characters\": []}", call.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void hedgeAnswersWhenTheFirstRequestIsSlowTest() throws Exception {
+        AiClientService hedging = client(true);
+        server.enqueue(new MockResponse().setHeadersDelay(3, TimeUnit.SECONDS)
+                .setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_HEDGE));
+
+        long start = System.currentTimeMillis();
+        String json = hedging.askModel("prompt");
+
+        Assertions.assertEquals("{\"characters\": [\"hedge\"]}", json);
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assertions.assertEquals(2, server.getRequestCount());
+        Assertions.assertEquals(1.0, registry.get("ai.resilience.hedges").tag("result", "won").counter().count());
+    }
+
+    @Test
+    public void hedgeStillAnswersAfterTheFirstRequestFailsTest() throws Exception {
+        AiClientService hedging = client(true);
+        // The first request fails once the hedge is on its way; the hedge answers later
+        server.enqueue(new MockResponse().setHeadersDelay(600, TimeUnit.MILLISECONDS).setResponseCode(500));
+        server.enqueue(new MockResponse().setHeadersDelay(1200, TimeUnit.MILLISECONDS)
+                .setHeader("Content-Type", "application/json").setBody(CHAT_HEDGE));
+
+        Assertions.assertEquals("{\"characters\": [\"hedge\"]}", hedging.askModel("prompt"));
+        Assertions.assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void failureBeforeTheHedgingDeadlineIsNotHedgedTest() {
+        AiClientService hedging = client(true);
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\": {\"message\": \"bad\"}}"));
+
+        Assertions.assertThrows(WebClientResponseException.BadRequest.class, () -> hedging.askModel("prompt"));
+        Assertions.assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void hedgeIsNotSentWithoutAFreePermitTest() throws Exception {
+        AiClientService hedging = client(true);
+        server.enqueue(new MockResponse().setHeadersDelay(800, TimeUnit.MILLISECONDS)
+                .setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_HEDGE));
+
+        // Company 7 is on the FREE plan: its one permit is held by the first request
+        Assertions.assertEquals("{\"characters\": []}", hedging.askModel("prompt", AiCallOptions.forCompany(7)));
+        Assertions.assertEquals(1, server.getRequestCount());
+        Assertions.assertEquals(1.0, registry.get("ai.resilience.hedges").tag("result", "skipped").counter().count());
+    }
+
+    @Test
+    public void rateLimitResetLongerThanMaxWaitIsNotRetriedTest() {
+        server.enqueue(new MockResponse().setResponseCode(429)
+                .setHeader("x-ratelimit-remaining-tokens", "0")
+                .setHeader("x-ratelimit-reset-tokens", "6m0s"));
+
+        Assertions.assertThrows(WebClientResponseException.TooManyRequests.class, () -> aiClientService.askModel("prompt"));
+        Assertions.assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void clientErrorIsNotRetriedTest() {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\": {\"message\": \"bad\"}}"));
+
+        Assertions.assertThrows(WebClientResponseException.BadRequest.class, () -> aiClientService.askModel("prompt"));
+        Assertions.assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void breakerOpensAfterRepeatedServerErrorsTest() {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> aiClientService.askModel("prompt"));
+        Assertions.assertEquals(2, server.getRequestCount());
+
+        // Fails fast while open, nothing reaches the server
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> aiClientService.askModel("prompt"));
+        Assertions.assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void schemaIsSentAsStrictResponseFormatTest() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+
+        String json = aiClientService.askModel("prompt", AiCallOptions.forCompany(null, AiResponseSchema.CASTING));
+
+        Assertions.assertEquals("{\"characters\": []}", json);
+        JsonNode body = new ObjectMapper().readTree(server.takeRequest().getBody().readUtf8());
+        JsonNode format = body.path("response_format");
+        Assertions.assertEquals("json_schema", format.path("type").asText());
+        Assertions.assertTrue(format.path("json_schema").path("strict").asBoolean());
+        Assertions.assertEquals("screenplay_casting", format.path("json_schema").path("name").asText());
+        Assertions.assertEquals("array", format.path("json_schema").path("schema").path("properties").path("casting").path("type").asText());
+        // casting expects more than the 500-token test model limit
+        Assertions.assertEquals(500, body.path("max_completion_tokens").asInt());
+    }
+
+    @Test
+    public void freeFormAnswerIsCutOutOfFenceTest() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("""
+                {"choices": [{"message": {"role": "assistant", "content": "```json\\n{\\"characters\\": [],}\\n```"}}]}
+                """));
+
+        String json = aiClientService.askModel("prompt");
+
+        Assertions.assertEquals("{\"characters\": [],}", json);
+        JsonNode body = new ObjectMapper().readTree(server.takeRequest().getBody().readUtf8());
+        Assertions.assertFalse(body.has("response_format"));
+        Assertions.assertFalse(body.has("max_completion_tokens"));
+    }
+
+    @Test
+    public void refusalIsReportedTest() {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("""
+                {"choices": [{"message": {"role": "assistant", "content": null, "refusal": "no"}}]}
+                """));
+
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                () -> aiClientService.askModel("prompt", AiCallOptions.forCompany(null, AiResponseSchema.EPISODE)));
+        Assertions.assertTrue(e.getMessage().contains("refused"));
+    }
+
+    @Test
+    public void nullContentIsNotAnAnswerTest() {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("""
+                {"choices": [{"message": {"role": "assistant", "content": null}, "finish_reason": "content_filter"}]}
+                """));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("""
+                {"choices": [{"message": {"role": "assistant"}, "finish_reason": "tool_calls"}]}
+                """));
+
+        RuntimeException filtered = Assertions.assertThrows(RuntimeException.class,
+                () -> aiClientService.askModel("prompt", AiCallOptions.forCompany(null, AiResponseSchema.EPISODE)));
+        Assertions.assertTrue(filtered.getMessage().contains("content_filter"));
+        Assertions.assertThrows(RuntimeException.class, () -> aiClientService.askModel("prompt"));
+    }
+
+    @Test
+    public void stageIsSentToItsRoutedModelTest() throws Exception {
+        // The limiter sees no subscription, so the company is on the FREE plan
+        when(aiRouteRepository.findAll()).thenReturn(List.of(
+                new AiRoute(1, "CASTING", "ALL", "gpt-4.1", 0.2, 300, 60, null),
+                new AiRoute(2, "CASTING", "ADVANCED", "gpt-4.1-large", 0.2, null, 60, null)));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(CHAT_OK));
+
+        aiClientService.askModel("prompt", AiCallOptions.forCompany(7, AiResponseSchema.CASTING));
+        aiClientService.askModel("prompt");
+
+        JsonNode casting = new ObjectMapper().readTree(server.takeRequest().getBody().readUtf8());
+        Assertions.assertEquals("gpt-4.1", casting.path("model").asText());
+        Assertions.assertEquals(0.2, casting.path("temperature").asDouble());
+        Assertions.assertEquals(300, casting.path("max_completion_tokens").asInt());
+        JsonNode other = new ObjectMapper().readTree(server.takeRequest().getBody().readUtf8());
+        Assertions.assertEquals("gpt-4.1-mini", other.path("model").asText());
+        Assertions.assertEquals(0.7, other.path("temperature").asDouble());
+
+        Assertions.assertEquals(1, registry.get("ai.route.latency").tag("stage", "casting").tag("model", "gpt-4.1")
+                .tag("plan", "FREE").timer().count());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.LoadTest.AiReplayServer;
+import com.example.claquetteai.Repository.AiRouteRepository;
+import com.example.claquetteai.Repository.CompanySubscriptionRepository;
+import com.example.claquetteai.Service.AiCallLimiter;
+import com.example.claquetteai.Service.AiCallOptions;
+import com.example.claquetteai.Service.AiClientService;
+import com.example.claquetteai.Service.AiExchangeRecorder;
+import com.example.claquetteai.Service.AiResilienceService;
+import com.example.claquetteai.Service.AiResponseCacheService;
+import com.example.claquetteai.Service.AiResponseSchema;
+import com.example.claquetteai.Service.AiRoutingService;
+import com.example.claquetteai.Service.AiTokenBudget;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.Mockito.mock;
+
+public class AiExchangeRecorderTest {
+
+    @TempDir
+    Path recordings;
+
+    @Test
+    public void recordedAnswerIsReplayedToAStreamingCallTest() throws Exception {
+        String answer = "{\"characters\": [{\"name\": \"سارة\"}]}";
+        try (MockWebServer openAi = new MockWebServer()) {
+            openAi.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("""
+                    {"choices": [{"message": {"role": "assistant", "content": %s}, "finish_reason": "stop"}],
+                     "usage": {"prompt_tokens": 12, "completion_tokens": 9}}
+                    """.formatted(new ObjectMapper().writeValueAsString(answer))));
+            openAi.start();
+
+            AiExchangeRecorder recorder = new AiExchangeRecorder();
+            ReflectionTestUtils.setField(recorder, "enabled", true);
+            ReflectionTestUtils.setField(recorder, "dir", recordings.toString());
+            client(openAi.url("/").toString(), recorder).askModel("prompt", AiCallOptions.forCompany(null, AiResponseSchema.CHARACTERS));
+        }
+
+        try (var files = Files.list(recordings)) {
+            Assertions.assertEquals(1, files.filter(f -> f.toString().endsWith(".json")).count());
+        }
+
+        try (AiReplayServer replay = new AiReplayServer().recordings(recordings).start()) {
+            StringBuilder streamed = new StringBuilder();
+            client(replay.url(), new AiExchangeRecorder())
+                    .streamModel("prompt", AiCallOptions.forCompany(null, AiResponseSchema.CHARACTERS), streamed::append);
+
+            Assertions.assertEquals(answer, streamed.toString());
+            Assertions.assertEquals(1, replay.getReplayed());
+            Assertions.assertEquals(0, replay.getSynthesized());
+        }
+    }
+
+    @Test
+    public void unrecordedRequestGetsAnAnswerOfTheSchemaTest() throws Exception {
+        try (AiReplayServer replay = new AiReplayServer().answerSize(2, 4).start()) {
+            String json = client(replay.url(), new AiExchangeRecorder())
+                    .askModel("prompt", AiCallOptions.forCompany(null, AiResponseSchema.EPISODE));
+
+            JsonNode episode = new ObjectMapper().readTree(json).path("episode");
+            Assertions.assertEquals(4, episode.path("scenes").size());
+            Assertions.assertEquals(2, episode.path("scenes").path(0).path("dialogue").size());
+            Assertions.assertTrue(episode.path("scenes").path(0).path("slug").isTextual());
+            Assertions.assertEquals(1, replay.getSynthesized());
+        }
+    }
+
+    private AiClientService client(String baseUrl, AiExchangeRecorder recorder) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AiCallLimiter limiter = new AiCallLimiter(mock(CompanySubscriptionRepository.class), registry,
+                4, 10, 5, 15, 1, 4, 60);
+        AiClientService client = new AiClientService(WebClient.builder().baseUrl(baseUrl.replaceAll("/$", "")).build(),
+                mock(AiResponseCacheService.class), limiter,
+                new AiResilienceService(registry, limiter, 1, 1, 5, 60, 2, 30, false, 5000),
+                new AiTokenBudget(registry, 100000, 16000, 700, 1.25),
+                new AiRoutingService(mock(AiRouteRepository.class), limiter, registry, "gpt-4.1-mini", 0.7, "dall-e-3", 30),
+                recorder);
+        ReflectionTestUtils.setField(client, "API_KEY", "test-key");
+        ReflectionTestUtils.setField(client, "structuredOutputEnabled", true);
+        return client;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Repository.CompanySubscriptionRepository;
+import com.example.claquetteai.Repository.ProjectRepository;
+import com.example.claquetteai.Repository.UserRepository;
+import com.example.claquetteai.Service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AiInteractionServiceTest {
+
+    AiInteractionService aiInteractionService;
+    ThreadPoolTaskExecutor stageExecutor;
+    AiCallLimiter aiCallLimiter;
+
+    @Mock
+    ProjectRepository projectRepository;
+    @Mock
+    FilmService filmService;
+    @Mock
+    CharacterService characterService;
+    @Mock
+    EpisodeService episodeService;
+    @Mock
+    CastingService castingService;
+    @Mock
+    UserRepository userRepository;
+    @Mock
+    ScreenplayPersistenceService screenplayPersistenceService;
+    @Mock
+    PosterService posterService;
+    @Mock
+    CompanySubscriptionRepository companySubscriptionRepository;
+
+    Project project;
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        stageExecutor = new ThreadPoolTaskExecutor();
+        stageExecutor.setCorePoolSize(2);
+        stageExecutor.initialize();
+        // The real limiter: no subscription means the FREE plan, one model call at a time,
+        // and a call that waits more than 1 s for its permit is rejected
+        aiCallLimiter = new AiCallLimiter(companySubscriptionRepository, new SimpleMeterRegistry(),
+                4, 10, 1, 15, 1, 4, 60);
+        aiInteractionService = new AiInteractionService(projectRepository, filmService, characterService, episodeService,
+                castingService, userRepository, screenplayPersistenceService, posterService, aiCallLimiter,
+                new SimpleMeterRegistry(), stageExecutor);
+
+        Company company = new Company();
+        company.setId(5);
+        company.setIsSubscribed(true);
+        user = new User();
+        user.setId(1);
+        user.setUseAI(3);
+        user.setCompany(company);
+
+        project = new Project();
+        project.setId(10);
+        project.setProjectType("SERIES");
+        project.setEpisodeCount(3);
+        project.setDescription("story");
+        project.setCompany(company);
+
+        when(projectRepository.findById(10)).thenReturn(Optional.of(project));
+        when(userRepository.findUserById(1)).thenReturn(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stageExecutor.shutdown();
+    }
+
+    @Test
+    public void freshRunCheckpointsEveryStageAndClearsThemTest() throws Exception {
+        FilmCharacters hero = new FilmCharacters();
+        hero.setName("Hero");
+        when(screenplayPersistenceService.completedStages(project)).thenReturn(Set.of());
+        when(characterService.generateCharacters(project, "story")).thenReturn(Set.of(hero));
+        doAnswer(invocation -> {
+            List<Integer> numbers = invocation.getArgument(1);
+            Consumer<Episode> onSaved = invocation.getArgument(4);
+            for (Integer number : numbers) {
+                Episode episode = new Episode();
+                episode.setEpisodeNumber(number);
+                onSaved.accept(episode);
+            }
+            return List.of();
+        }).when(episodeService).generateEpisodes(eq(project), eq(List.of(1, 2, 3)), eq("Hero"), eq(1), any());
+
+        aiInteractionService.generateFullScreenplay(10, 1);
+
+        verify(screenplayPersistenceService).markStageCompleted(project, "characters");
+        verify(screenplayPersistenceService).markStageCompleted(project, "episode 1");
+        verify(screenplayPersistenceService).markStageCompleted(project, "episode 3");
+        verify(screenplayPersistenceService).clearCheckpoints(project);
+        verify(castingService).generateCasting(project);
+        Assertions.assertEquals(2, user.getUseAI());
+    }
+
+    @Test
+    public void resumedRunSkipsCompletedStagesTest() throws Exception {
+        FilmCharacters hero = new FilmCharacters();
+        hero.setName("Hero");
+        Episode finished = new Episode();
+        finished.setId(100);
+        finished.setEpisodeNumber(1);
+        Episode partial = new Episode();
+        partial.setId(200);
+        partial.setEpisodeNumber(2);
+
+        when(screenplayPersistenceService.completedStages(project)).thenReturn(Set.of("characters", "episode 1"));
+        when(screenplayPersistenceService.savedEpisodes(project)).thenReturn(List.of(finished, partial));
+        when(screenplayPersistenceService.savedCharacters(project)).thenReturn(Set.of(hero));
+
+        aiInteractionService.generateFullScreenplay(10, 1);
+
+        verify(characterService, never()).generateCharacters(any(), any());
+        verify(episodeService).generateEpisodes(eq(project), eq(List.of(2, 3)), eq("Hero"), anyInt(), any());
+        // episode 2 was saved without its checkpoint, so it is generated again from scratch
+        verify(screenplayPersistenceService).deleteEpisode(200);
+        verify(screenplayPersistenceService, never()).deleteEpisode(100);
+    }
+
+    @Test
+    public void castingRunsWhileEpisodesAreGeneratedTest() throws Exception {
+        // ADVANCED: 4 permits, one kept for casting and three for the episodes
+        CompanySubscription subscription = new CompanySubscription();
+        subscription.setPlanType("ADVANCED");
+        subscription.setStatus("ACTIVE");
+        when(companySubscriptionRepository.findCompanySubscriptionById(5)).thenReturn(subscription);
+        FilmCharacters hero = new FilmCharacters();
+        hero.setName("Hero");
+        when(screenplayPersistenceService.completedStages(project)).thenReturn(Set.of());
+        when(characterService.generateCharacters(project, "story")).thenReturn(Set.of(hero));
+
+        // Episodes only finish once casting has started, which cannot happen if casting waits for them
+        CountDownLatch castingStarted = new CountDownLatch(1);
+        when(castingService.generateCasting(project)).thenAnswer(invocation -> {
+            castingStarted.countDown();
+            return Set.of();
+        });
+        when(episodeService.generateEpisodes(eq(project), anyList(), eq("Hero"), eq(3), any())).thenAnswer(invocation -> {
+            Assertions.assertTrue(castingStarted.await(5, TimeUnit.SECONDS));
+            return List.of();
+        });
+
+        aiInteractionService.generateFullScreenplay(10, 1);
+
+        verify(screenplayPersistenceService).markStageCompleted(project, "casting");
+    }
+
+    @Test
+    public void castingWaitsForTheEpisodesOnAOneCallPlanTest() throws Exception {
+        FilmCharacters hero = new FilmCharacters();
+        hero.setName("Hero");
+        when(screenplayPersistenceService.completedStages(project)).thenReturn(Set.of());
+        when(characterService.generateCharacters(project, "story")).thenReturn(Set.of(hero));
+
+        // Both stages go through the limiter like AiClientService does. The episodes hold the only
+        // permit for longer than a waiting call may wait, so casting running next to them would be rejected.
+        when(episodeService.generateEpisodes(eq(project), anyList(), eq("Hero"), eq(1), any())).thenAnswer(invocation ->
+                aiCallLimiter.run(5, () -> {
+                    Thread.sleep(1500);
+                    return List.of();
+                }));
+        when(castingService.generateCasting(project)).thenAnswer(invocation ->
+                aiCallLimiter.run(5, () -> Set.<CastingRecommendation>of()));
+
+        aiInteractionService.generateFullScreenplay(10, 1);
+
+        verify(screenplayPersistenceService).markStageCompleted(project, "casting");
+        verify(screenplayPersistenceService).clearCheckpoints(project);
+    }
+
+    @Test
+    public void castingFailureFailsTheRunAfterEpisodesAreSavedTest() throws Exception {
+        when(screenplayPersistenceService.completedStages(project)).thenReturn(Set.of("characters"));
+        when(screenplayPersistenceService.savedCharacters(project)).thenReturn(Set.of());
+        when(castingService.generateCasting(project)).thenThrow(new RuntimeException("casting failed"));
+
+        Exception e = Assertions.assertThrows(RuntimeException.class, () -> aiInteractionService.generateFullScreenplay(10, 1));
+
+        Assertions.assertEquals("casting failed", e.getMessage());
+        verify(episodeService).generateEpisodes(eq(project), eq(List.of(1, 2, 3)), eq(""), anyInt(), any());
+        verify(screenplayPersistenceService, never()).clearCheckpoints(project);
+        Assertions.assertEquals(3, user.getUseAI());
+    }
+}
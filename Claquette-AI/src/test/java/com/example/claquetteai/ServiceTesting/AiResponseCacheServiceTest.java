@@ -0,0 +1,83 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.AiResponseCache;
+import com.example.claquetteai.Repository.AiResponseCacheRepository;
+import com.example.claquetteai.Service.AiResponseCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AiResponseCacheServiceTest {
+
+    @Mock
+    AiResponseCacheRepository aiResponseCacheRepository;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    SimpleMeterRegistry meterRegistry;
+    AiResponseCacheService cacheService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cacheService = new AiResponseCacheService(aiResponseCacheRepository, meterRegistry, transactionManager);
+        ReflectionTestUtils.setField(cacheService, "memoryMaxEntries", 2);
+        ReflectionTestUtils.setField(cacheService, "memoryTtlMinutes", 60L);
+        ReflectionTestUtils.setField(cacheService, "dbTtlDays", 14L);
+    }
+
+    @Test
+    public void keyDependsOnEveryPartTest() {
+        String key = cacheService.key("m", "sys", "prompt", 0.7);
+        Assertions.assertEquals(64, key.length());
+        Assertions.assertEquals(key, cacheService.key("m", "sys", "prompt", 0.7));
+        Assertions.assertNotEquals(key, cacheService.key("m", "sys", "prompt", 0.2));
+        Assertions.assertNotEquals(key, cacheService.key("m", "sysp", "rompt", 0.7));
+    }
+
+    @Test
+    public void storedAnswerComesBackFromDatabaseAfterMemoryEvictionTest() {
+        String key = cacheService.key("m", "sys", "prompt", 0.7);
+        cacheService.put(key, "m", "{\"characters\": []}");
+
+        ArgumentCaptor<AiResponseCache> saved = ArgumentCaptor.forClass(AiResponseCache.class);
+        verify(aiResponseCacheRepository).save(saved.capture());
+
+        // Memory hit: the database is not asked again
+        Assertions.assertEquals("{\"characters\": []}", cacheService.get(key));
+        verify(aiResponseCacheRepository, times(1)).findAiResponseCacheByCacheKey(key);
+
+        // Database hit: the compressed row is decompressed
+        cacheService.evict(key);
+        AiResponseCache row = saved.getValue();
+        row.setId(5);
+        when(aiResponseCacheRepository.findAiResponseCacheByCacheKey(key)).thenReturn(row);
+
+        Assertions.assertEquals("{\"characters\": []}", cacheService.get(key));
+        verify(aiResponseCacheRepository).incrementHitCount(5);
+        Assertions.assertEquals(1.0, meterRegistry.get("ai.cache.lookups").tag("tier", "db").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    public void expiredRowIsAMissTest() {
+        AiResponseCache row = new AiResponseCache();
+        row.setCreatedAt(LocalDateTime.now().minusDays(30));
+        when(aiResponseCacheRepository.findAiResponseCacheByCacheKey("k")).thenReturn(row);
+
+        Assertions.assertNull(cacheService.get("k"));
+        verify(aiResponseCacheRepository, never()).incrementHitCount(any());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.DTO.AiRouteDTOIN;
+import com.example.claquetteai.Model.AiRoute;
+import com.example.claquetteai.Repository.AiRouteRepository;
+import com.example.claquetteai.Service.AiCallLimiter;
+import com.example.claquetteai.Service.AiRoutingService;
+import com.example.claquetteai.Service.AiStage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class AiRoutingServiceTest {
+
+    @Mock
+    AiRouteRepository aiRouteRepository;
+
+    @Mock
+    AiCallLimiter aiCallLimiter;
+
+    AiRoutingService aiRoutingService;
+
+    @BeforeEach
+    void setUp() {
+        aiRoutingService = new AiRoutingService(aiRouteRepository, aiCallLimiter, new SimpleMeterRegistry(),
+                "gpt-4.1-mini", 0.7, "dall-e-3", 180);
+    }
+
+    @Test
+    public void planRowWinsOverAllPlansRowTest() {
+        when(aiCallLimiter.planType(1)).thenReturn("ADVANCED");
+        when(aiCallLimiter.planType(2)).thenReturn("FREE");
+        when(aiRouteRepository.findAll()).thenReturn(List.of(
+                new AiRoute(1, "FILM", "ALL", "gpt-4.1-mini", 0.7, null, null, null),
+                new AiRoute(2, "FILM", "ADVANCED", "gpt-4.1", 0.9, 30000, 300, null)));
+
+        AiRoutingService.Route advanced = aiRoutingService.route(AiStage.FILM, 1);
+        AiRoutingService.Route free = aiRoutingService.route(AiStage.FILM, 2);
+
+        Assertions.assertEquals("gpt-4.1", advanced.model());
+        Assertions.assertEquals(30000, advanced.maxTokens());
+        Assertions.assertEquals(Duration.ofSeconds(300), advanced.timeout());
+        Assertions.assertEquals("gpt-4.1-mini", free.model());
+        Assertions.assertEquals(Duration.ofSeconds(180), free.timeout());
+    }
+
+    @Test
+    public void stageWithoutRowUsesDefaultsTest() {
+        when(aiCallLimiter.planType(null)).thenReturn("FREE");
+        when(aiRouteRepository.findAll()).thenReturn(List.of());
+
+        AiRoutingService.Route characters = aiRoutingService.route(AiStage.CHARACTERS, null);
+        AiRoutingService.Route poster = aiRoutingService.route(AiStage.POSTER, null);
+
+        Assertions.assertEquals("gpt-4.1-mini", characters.model());
+        Assertions.assertEquals(0.7, characters.temperature());
+        Assertions.assertNull(characters.maxTokens());
+        Assertions.assertEquals("dall-e-3", poster.model());
+        Assertions.assertNull(poster.temperature());
+    }
+
+    @Test
+    public void savedRouteAppliesToTheNextCallTest() {
+        when(aiCallLimiter.planType(null)).thenReturn("FREE");
+        AiRoute saved = new AiRoute(3, "EPISODE", "ALL", "gpt-4.1-nano", 0.5, null, null, null);
+        when(aiRouteRepository.findAll()).thenReturn(List.of(), List.of(saved));
+        when(aiRouteRepository.save(any(AiRoute.class))).thenReturn(saved);
+
+        Assertions.assertEquals("gpt-4.1-mini", aiRoutingService.route(AiStage.EPISODE, null).model());
+        aiRoutingService.saveRoute(new AiRouteDTOIN("EPISODE", "ALL", "gpt-4.1-nano", 0.5, null, null));
+
+        Assertions.assertEquals("gpt-4.1-nano", aiRoutingService.route(AiStage.EPISODE, null).model());
+    }
+}
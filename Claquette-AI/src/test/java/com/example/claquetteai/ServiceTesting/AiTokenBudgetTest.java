@@ -0,0 +1,105 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Service.AiCallOptions;
+import com.example.claquetteai.Service.AiResponseSchema;
+import com.example.claquetteai.Service.AiRoutingService;
+import com.example.claquetteai.Service.AiStage;
+import com.example.claquetteai.Service.AiTokenBudget;
+import com.example.claquetteai.Service.TokenEstimator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AiTokenBudgetTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void arabicIsEstimatedDenserThanEnglishTest() {
+        // 20 letters each
+        int english = TokenEstimator.estimate("abcdefghij abcdefghij");
+        int arabic = TokenEstimator.estimate("سارةتدخلالبيت سارةتدخ");
+
+        Assertions.assertEquals(5, english);
+        Assertions.assertEquals(8, arabic);
+        Assertions.assertEquals(0, TokenEstimator.estimate(null));
+    }
+
+    @Test
+    public void episodeBudgetFollowsExpectedScenesTest() {
+        AiTokenBudget budget = new AiTokenBudget(meterRegistry, 100000, 16000, 700, 1.25);
+
+        AiTokenBudget.Plan twelve = budget.plan("system", "prompt", episodeOptions(12, null), route(AiStage.EPISODE, null));
+        AiTokenBudget.Plan three = budget.plan("system", "prompt", episodeOptions(3, null), route(AiStage.EPISODE, null));
+
+        Assertions.assertEquals(11500, twelve.maxTokens());
+        Assertions.assertEquals(3625, three.maxTokens());
+        Assertions.assertNull(budget.plan("system", "prompt", AiCallOptions.defaults(), route(AiStage.OTHER, null)).maxTokens());
+    }
+
+    @Test
+    public void budgetIsCappedAtModelOutputLimitTest() {
+        AiTokenBudget budget = new AiTokenBudget(meterRegistry, 100000, 16000, 700, 1.25);
+
+        AiTokenBudget.Plan film = budget.plan("system", "prompt", AiCallOptions.builder()
+                .responseSchema(AiResponseSchema.FILM).expectedScenes(120).build(), route(AiStage.FILM, null));
+
+        Assertions.assertEquals(16000, film.maxTokens());
+        Assertions.assertEquals(1, meterRegistry.get("ai.tokens.budget.capped").tag("stage", "film").counter().count());
+    }
+
+    @Test
+    public void contextIsTrimmedToFitTheWindowTest() {
+        // 100 tokens of answer leave ~100 for the prompt
+        AiTokenBudget budget = new AiTokenBudget(meterRegistry, 200, 1000, 0, 0.125);
+        String description = "a".repeat(800);
+        String prompt = "Story: \"" + description + "\" write it";
+
+        AiTokenBudget.Plan plan = budget.plan("system", prompt, episodeOptions(0, description), route(AiStage.EPISODE, null));
+
+        Assertions.assertEquals(100, plan.maxTokens());
+        Assertions.assertTrue(plan.prompt().startsWith("Story: \"aaa"));
+        Assertions.assertTrue(plan.prompt().endsWith(" …\" write it"));
+        Assertions.assertTrue(plan.estimatedPromptTokens() <= 100);
+
+        Assertions.assertThrows(RuntimeException.class, () -> budget.plan("system", prompt, episodeOptions(0, null), route(AiStage.EPISODE, null)));
+    }
+
+    @Test
+    public void usageIsRecordedPerStageTest() throws Exception {
+        AiTokenBudget budget = new AiTokenBudget(meterRegistry, 100000, 16000, 700, 1.25);
+        AiTokenBudget.Plan plan = budget.plan("system", "prompt", episodeOptions(12, null), route(AiStage.EPISODE, null));
+
+        budget.recordUsage(plan, new ObjectMapper().readTree("{\"prompt_tokens\": 40, \"completion_tokens\": 9000}"), "length");
+
+        Assertions.assertEquals(9000, meterRegistry.get("ai.tokens").tag("stage", "episode").tag("type", "completion")
+                .summary().totalAmount());
+        Assertions.assertEquals(40, meterRegistry.get("ai.tokens").tag("type", "prompt").summary().totalAmount());
+        Assertions.assertEquals(1, meterRegistry.get("ai.completions.truncated").counter().count());
+    }
+
+    @Test
+    public void routeMaxTokensCapsTheBudgetTest() {
+        AiTokenBudget budget = new AiTokenBudget(meterRegistry, 100000, 16000, 700, 1.25);
+
+        AiTokenBudget.Plan capped = budget.plan("system", "prompt", episodeOptions(12, null), route(AiStage.EPISODE, 4000));
+        AiTokenBudget.Plan free = budget.plan("system", "prompt", AiCallOptions.defaults(), route(AiStage.OTHER, 2000));
+
+        Assertions.assertEquals(4000, capped.maxTokens());
+        Assertions.assertEquals(2000, free.maxTokens());
+        Assertions.assertEquals("gpt-4.1-mini", capped.model());
+    }
+
+    private AiRoutingService.Route route(AiStage stage, Integer maxTokens) {
+        return new AiRoutingService.Route(stage, "FREE", "gpt-4.1-mini", 0.7, maxTokens, null);
+    }
+
+    private AiCallOptions episodeOptions(int expectedScenes, String context) {
+        return AiCallOptions.builder()
+                .responseSchema(AiResponseSchema.EPISODE)
+                .expectedScenes(expectedScenes)
+                .context(context)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.FilmCharacters;
+import com.example.claquetteai.Service.CharacterNameResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class CharacterNameResolverTest {
+
+    SimpleMeterRegistry meterRegistry;
+    CharacterNameResolver resolver;
+    FilmCharacters sara;
+    FilmCharacters khaled;
+    FilmCharacters abdullah;
+    FilmCharacters noura;
+
+    @BeforeEach
+    void setUp() {
+        sara = character(1, "سارة العتيبي");
+        khaled = character(2, "خالد");
+        abdullah = character(3, "عبدالله الحربي");
+        noura = character(4, "Noura Al-Qahtani");
+        meterRegistry = new SimpleMeterRegistry();
+        resolver = new CharacterNameResolver(List.of(sara, khaled, abdullah, noura), meterRegistry);
+    }
+
+    @Test
+    public void spellingVariantsResolveExactlyTest() {
+        Assertions.assertEquals(sara, resolver.resolve("ساره العتيبي"));
+        Assertions.assertEquals(khaled, resolver.resolve("خالِد (بهمس)"));
+        Assertions.assertEquals(noura, resolver.resolve("NOURA AL QAHTANI"));
+        Assertions.assertEquals(3, resolver.getStats().get(CharacterNameResolver.MatchType.EXACT));
+    }
+
+    @Test
+    public void partialNamesResolveByTokenTest() {
+        Assertions.assertEquals(sara, resolver.resolve("سارة"));
+        Assertions.assertEquals(abdullah, resolver.resolve("عبدال"));
+        Assertions.assertEquals(noura, resolver.resolve("Noura"));
+        Assertions.assertEquals(3, resolver.getStats().get(CharacterNameResolver.MatchType.TOKEN));
+    }
+
+    @Test
+    public void typoResolvesBySimilarityTest() {
+        Assertions.assertEquals(khaled, resolver.resolve("خالذ"));
+        Assertions.assertEquals(noura, resolver.resolve("Nora Al-Qahtani"));
+        Assertions.assertEquals(2, resolver.getStats().get(CharacterNameResolver.MatchType.FUZZY));
+    }
+
+    @Test
+    public void sharedTokenIsAmbiguousTest() {
+        FilmCharacters otherSara = character(5, "سارة الزهراني");
+        CharacterNameResolver twoSaras = new CharacterNameResolver(List.of(sara, otherSara), null);
+
+        Assertions.assertNull(twoSaras.resolve("سارة"));
+        Assertions.assertEquals(otherSara, twoSaras.resolve("سارة الزهراني"));
+        Assertions.assertEquals(1, twoSaras.getStats().get(CharacterNameResolver.MatchType.AMBIGUOUS));
+    }
+
+    @Test
+    public void unrelatedNameIsNotLinkedTest() {
+        Assertions.assertNull(resolver.resolve("الراوي"));
+        Assertions.assertNull(resolver.resolve("Unknown"));
+        Assertions.assertNull(resolver.resolve("  "));
+        Assertions.assertEquals(2, resolver.getStats().get(CharacterNameResolver.MatchType.UNRESOLVED));
+    }
+
+    @Test
+    public void repeatedLookupsAreCountedPerCallTest() {
+        for (int i = 0; i < 5; i++) {
+            resolver.resolve("خالد");
+        }
+
+        Assertions.assertEquals(5, meterRegistry.get("ai.character.links").tag("match", "exact").counter().count());
+        Assertions.assertTrue(resolver.summary().contains("exact=5"));
+    }
+
+    private FilmCharacters character(Integer id, String name) {
+        FilmCharacters character = new FilmCharacters();
+        character.setId(id);
+        character.setName(name);
+        return character;
+    }
+}
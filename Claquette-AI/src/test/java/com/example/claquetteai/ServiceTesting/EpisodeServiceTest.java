@@ -0,0 +1,243 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.Company;
+import com.example.claquetteai.Model.Episode;
+import com.example.claquetteai.Model.FilmCharacters;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.Scene;
+import com.example.claquetteai.Repository.CharacterRepository;
+import com.example.claquetteai.Repository.EpisodeRepository;
+import com.example.claquetteai.Repository.ProjectRepository;
+import com.example.claquetteai.Repository.UserRepository;
+import com.example.claquetteai.Service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class EpisodeServiceTest {
+
+    JsonExtractor jsonExtractor = mock(JsonExtractor.class);
+    AiClientService aiClientService = mock(AiClientService.class);
+    AiCallLimiter aiCallLimiter = mock(AiCallLimiter.class);
+    ScreenplayPersistenceService screenplayPersistenceService = mock(ScreenplayPersistenceService.class);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ThreadPoolTaskExecutor executor;
+    EpisodeService episodeService;
+    Project project;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(3);
+        executor.setMaxPoolSize(3);
+        executor.initialize();
+
+        episodeService = new EpisodeService(mock(EpisodeRepository.class), jsonExtractor, new PromptBuilderService(),
+                aiClientService, aiCallLimiter, mock(UserRepository.class), mock(ProjectRepository.class),
+                mock(CharacterRepository.class), screenplayPersistenceService, meterRegistry, executor);
+        ReflectionTestUtils.setField(episodeService, "streamingEnabled", false);
+        ReflectionTestUtils.setField(episodeService, "episodeParallelism", 3);
+
+        Company company = new Company();
+        company.setId(5);
+        project = new Project();
+        project.setEpisodeCount(3);
+        project.setDescription("story");
+        project.setCompany(company);
+
+        when(screenplayPersistenceService.saveEpisodeWithScenes(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        // ADVANCED plan: more permits than the configured width
+        when(aiCallLimiter.companyCap(5)).thenReturn(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void episodesRunInParallelAndAreSavedInOrderTest() throws Exception {
+        // Every model call waits until all three are in flight, so this only finishes when they overlap
+        CountDownLatch allStarted = new CountDownLatch(3);
+        when(aiClientService.askModel(anyString(), any(AiCallOptions.class))).thenAnswer(invocation -> {
+            allStarted.countDown();
+            Assertions.assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+            return "{}";
+        });
+        stubExtraction();
+
+        List<Integer> savedOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Episode> episodes = episodeService.generateEpisodes(project, List.of(1, 2, 3), "Hero",
+                episode -> savedOrder.add(episode.getEpisodeNumber()));
+
+        Assertions.assertEquals(List.of(1, 2, 3), savedOrder);
+        Assertions.assertEquals(3, episodes.size());
+    }
+
+    @Test
+    public void episodesInFlightNeverExceedTheCompanyCapTest() throws Exception {
+        when(aiCallLimiter.companyCap(5)).thenReturn(2);
+        // The first two calls wait for each other, so they overlap; a third must wait for a free lane
+        CountDownLatch twoStarted = new CountDownLatch(2);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(aiClientService.askModel(anyString(), any(AiCallOptions.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            twoStarted.countDown();
+            Assertions.assertTrue(twoStarted.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return "{}";
+        });
+        stubExtraction();
+
+        List<Integer> savedOrder = Collections.synchronizedList(new ArrayList<>());
+        episodeService.generateEpisodes(project, List.of(1, 2, 3), "Hero", episode -> savedOrder.add(episode.getEpisodeNumber()));
+
+        Assertions.assertEquals(2, maxInFlight.get());
+        Assertions.assertEquals(List.of(1, 2, 3), savedOrder);
+    }
+
+    @Test
+    public void episodesRunOnTheCallingThreadWhenTheCompanyHasOnePermitTest() throws Exception {
+        when(aiCallLimiter.companyCap(5)).thenReturn(1);
+        Thread caller = Thread.currentThread();
+        when(aiClientService.askModel(anyString(), any(AiCallOptions.class))).thenAnswer(invocation -> {
+            Assertions.assertSame(caller, Thread.currentThread());
+            return "{}";
+        });
+        stubExtraction();
+
+        List<Episode> episodes = episodeService.generateEpisodes(project, List.of(1, 2, 3), "Hero", episode -> { });
+
+        Assertions.assertEquals(3, episodes.size());
+        verify(aiClientService, times(3)).askModel(anyString(), any(AiCallOptions.class));
+    }
+
+    @Test
+    public void parallelEpisodesAreStreamedSceneBySceneTest() throws Exception {
+        ReflectionTestUtils.setField(episodeService, "streamingEnabled", true);
+        // Overlapping streams: each one only ends once all three have started
+        CountDownLatch allStarted = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            allStarted.countDown();
+            Assertions.assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+            Consumer<String> onDelta = invocation.getArgument(2);
+            onDelta.accept("{\"episode\": {\"title\": \"T\", \"scenes\": [{\"slug\": \"INT. one\"}, ");
+            onDelta.accept("{\"slug\": \"INT. two\"}]}}");
+            return null;
+        }).when(aiClientService).streamModel(anyString(), any(AiCallOptions.class), any());
+        when(jsonExtractor.characterResolverFor(project)).thenReturn(new CharacterNameResolver(List.of(), null));
+        when(jsonExtractor.toEpisodeScene(any(), any(Episode.class), anyInt(), any())).thenAnswer(invocation -> {
+            Scene scene = new Scene();
+            scene.setSceneNumber(invocation.getArgument(2));
+            scene.setCharacters(Set.of());
+            return scene;
+        });
+        when(screenplayPersistenceService.saveScene(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<Integer> savedOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Episode> episodes = episodeService.generateEpisodes(project, List.of(1, 2, 3), "Hero",
+                episode -> savedOrder.add(episode.getEpisodeNumber()));
+
+        Assertions.assertEquals(List.of(1, 2, 3), savedOrder);
+        Assertions.assertEquals(2, episodes.get(0).getScenes().size());
+        // Every scene saved as it was parsed; the fan-in saved no episode a second time
+        verify(screenplayPersistenceService, times(6)).saveScene(any());
+        verify(screenplayPersistenceService, times(3)).saveEpisodeWithScenes(any());
+        verify(aiClientService, never()).askModel(anyString(), any(AiCallOptions.class));
+    }
+
+    @Test
+    public void failedEpisodeDoesNotStopTheOthersTest() throws Exception {
+        when(aiClientService.askModel(anyString(), any(AiCallOptions.class))).thenAnswer(invocation -> {
+            String prompt = invocation.getArgument(0);
+            if (prompt.contains("Generate ONLY episode 2")) {
+                throw new RuntimeException("model failed");
+            }
+            return "{}";
+        });
+        stubExtraction();
+
+        List<Integer> savedOrder = new ArrayList<>();
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> episodeService.generateEpisodes(
+                project, List.of(1, 2, 3), "Hero", episode -> savedOrder.add(episode.getEpisodeNumber())));
+
+        Assertions.assertEquals("model failed", e.getMessage());
+        Assertions.assertEquals(List.of(1, 3), savedOrder);
+    }
+
+    @Test
+    public void truncatedEpisodeIsCompletedByAContinuationTest() throws Exception {
+        FilmCharacters hero = new FilmCharacters();
+        hero.setId(1);
+        hero.setName("Hero");
+        project.setCharacters(Set.of(hero));
+        EpisodeService service = new EpisodeService(mock(EpisodeRepository.class), new JsonExtractor(meterRegistry),
+                new PromptBuilderService(), aiClientService, aiCallLimiter, mock(UserRepository.class), mock(ProjectRepository.class),
+                mock(CharacterRepository.class), screenplayPersistenceService, meterRegistry, executor);
+        ReflectionTestUtils.setField(service, "streamingEnabled", false);
+        ReflectionTestUtils.setField(service, "maxContinuations", 2);
+
+        when(aiClientService.askModel(anyString(), any(AiCallOptions.class))).thenAnswer(invocation -> {
+            String prompt = invocation.getArgument(0);
+            if (prompt.contains("was cut off")) {
+                Assertions.assertTrue(prompt.contains("1. INT. one"));
+                Assertions.assertTrue(prompt.contains("2. INT. two"));
+                return "{\"episode\": {\"scenes\": [{\"slug\": \"INT. three\", \"dialogue\": [{\"character\": \"Hero\", \"line\": \"end\"}]}]}}";
+            }
+            // Cut off in the middle of the third scene
+            return "{\"episode\": {\"title\": \"T\", \"scenes\": [{\"slug\": \"INT. one\"}, {\"slug\": \"INT. two\"}, {\"slug\": \"INT. thr";
+        });
+
+        Episode episode = service.generateEpisodeWithScenes(project, 1, "Hero");
+
+        List<Scene> scenes = episode.getScenes().stream().sorted(Comparator.comparing(Scene::getSceneNumber)).toList();
+        Assertions.assertEquals(List.of("INT. one", "INT. two", "INT. three"), scenes.stream().map(Scene::getSetting).toList());
+        Assertions.assertEquals(List.of(1, 2, 3), scenes.stream().map(Scene::getSceneNumber).toList());
+        Assertions.assertEquals(Set.of(hero), scenes.get(2).getCharacters());
+        Assertions.assertEquals("T", episode.getTitle());
+        verify(aiClientService, times(2)).askModel(anyString(), any(AiCallOptions.class));
+        Assertions.assertEquals(1, meterRegistry.get("ai.truncation.recovery").tag("outcome", "continued").counter().count());
+        Assertions.assertEquals(2, meterRegistry.get("ai.truncation.recovered.scenes").summary().totalAmount());
+    }
+
+    @Test
+    public void truncatedEpisodeWithoutCompleteScenesFailsTest() throws Exception {
+        EpisodeService service = new EpisodeService(mock(EpisodeRepository.class), new JsonExtractor(meterRegistry),
+                new PromptBuilderService(), aiClientService, aiCallLimiter, mock(UserRepository.class), mock(ProjectRepository.class),
+                mock(CharacterRepository.class), screenplayPersistenceService, meterRegistry, executor);
+        ReflectionTestUtils.setField(service, "streamingEnabled", false);
+        when(aiClientService.askModel(anyString(), any(AiCallOptions.class)))
+                .thenReturn("{\"episode\": {\"title\": \"T\", \"scenes\": [{\"slug\": \"INT. on");
+
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                () -> service.generateEpisodeWithScenes(project, 1, "Hero"));
+
+        Assertions.assertTrue(e.getMessage().contains("truncated"));
+        Assertions.assertEquals(1, meterRegistry.get("ai.truncation.recovery").tag("outcome", "failed").counter().count());
+    }
+
+    private void stubExtraction() throws Exception {
+        when(jsonExtractor.characterResolverFor(project)).thenReturn(new CharacterNameResolver(List.of(), null));
+        when(jsonExtractor.readEpisodeScenes(anyString(), any(Episode.class), any(), eq(true), any()))
+                .thenAnswer(invocation -> IncrementalSceneParser.parse("{}", parsed -> { }));
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Repository.StoredImageRepository;
+import com.example.claquetteai.Service.ImageStorageService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ImageStorageServiceTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 1, 2, 3};
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    StoredImageRepository storedImageRepository;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ImageStorageService imageStorageService;
+
+    @BeforeEach
+    void setUp() {
+        imageStorageService = new ImageStorageService(storedImageRepository, transactionManager, dir.toString());
+    }
+
+    @Test
+    public void sameBytesAreStoredOnceTest() throws Exception {
+        when(storedImageRepository.saveAndFlush(any(StoredImage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        StoredImage first = imageStorageService.store(PNG, null);
+
+        Assertions.assertEquals("image/png", first.getContentType());
+        Assertions.assertEquals(PNG.length, first.getSizeBytes());
+        Assertions.assertEquals(64, first.getSha256().length());
+
+        when(storedImageRepository.findStoredImageBySha256(first.getSha256())).thenReturn(first);
+        StoredImage second = imageStorageService.store(PNG.clone(), null);
+
+        Assertions.assertSame(first, second);
+        verify(storedImageRepository, times(1)).saveAndFlush(any(StoredImage.class));
+        try (Stream<Path> files = Files.walk(dir)) {
+            Assertions.assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void imageIsServedAsStoredTest() throws Exception {
+        when(storedImageRepository.findStoredImageBySha256(anyString())).thenReturn(null);
+        when(storedImageRepository.saveAndFlush(any(StoredImage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        StoredImage image = imageStorageService.store(PNG, "image/png");
+
+        ResponseEntity<Resource> response = imageStorageService.imageResponse(image, "project-1-poster");
+
+        Assertions.assertArrayEquals(PNG, response.getBody().getContentAsByteArray());
+        Assertions.assertEquals(PNG.length, response.getBody().contentLength());
+        Assertions.assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        Assertions.assertEquals("\"" + image.getSha256() + "\"", response.getHeaders().getETag());
+        Assertions.assertEquals("inline; filename=\"project-1-poster.png\"",
+                response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+    }
+
+    @Test
+    public void presentedHashIsAnsweredWithNotModifiedTest() {
+        String sha256 = "ab".repeat(32);
+
+        Assertions.assertTrue(imageStorageService.isCurrent("\"" + sha256 + "\"", sha256));
+        Assertions.assertTrue(imageStorageService.isCurrent("\"other\", W/\"" + sha256 + "\"", sha256));
+        Assertions.assertFalse(imageStorageService.isCurrent("\"other\"", sha256));
+        // No poster, or not the caller's project
+        Assertions.assertFalse(imageStorageService.isCurrent("*", null));
+
+        ResponseEntity<Resource> response = imageStorageService.notModified(sha256);
+        Assertions.assertEquals(304, response.getStatusCode().value());
+        Assertions.assertNull(response.getBody());
+        Assertions.assertEquals("\"" + sha256 + "\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    public void uploadIsCheckedFromItsHeaderTest() throws Exception {
+        when(storedImageRepository.saveAndFlush(any(StoredImage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", png);
+        // The declared type is not trusted, the file's own signature is
+        MockMultipartFile file = new MockMultipartFile("file", "poster.jpg", "image/jpeg", png.toByteArray());
+
+        StoredImage image = imageStorageService.storeUpload(file, 1024 * 1024, Set.of("image/png", "image/jpeg"));
+
+        Assertions.assertEquals("image/png", image.getContentType());
+        Assertions.assertEquals(png.size(), image.getSizeBytes());
+        try (Stream<Path> files = Files.walk(dir)) {
+            Path stored = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+            ImageStorageService.ImageInfo info = ImageStorageService.probe(stored);
+            Assertions.assertEquals(40, info.width());
+            Assertions.assertEquals(30, info.height());
+        }
+    }
+
+    @Test
+    public void refusedUploadLeavesNothingBehindTest() throws Exception {
+        MockMultipartFile tooLarge = new MockMultipartFile("file", "big.png", "image/png", new byte[4096]);
+        MockMultipartFile notAnImage = new MockMultipartFile("file", "fake.png", "image/png", "not an image".getBytes());
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> imageStorageService.storeUpload(tooLarge, 1024, Set.of("image/png")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> imageStorageService.storeUpload(notAnImage, 1024, Set.of("image/png")));
+
+        verify(storedImageRepository, never()).saveAndFlush(any(StoredImage.class));
+        try (Stream<Path> files = Files.walk(dir)) {
+            Assertions.assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void webpSizeIsReadFromItsChunkHeaderTest() throws Exception {
+        byte[] webp = new byte[30];
+        System.arraycopy("RIFF".getBytes(), 0, webp, 0, 4);
+        System.arraycopy("WEBPVP8X".getBytes(), 0, webp, 8, 8);
+        // canvas 640 x 480, stored minus one as 24-bit little endian
+        webp[24] = (byte) 0x7F;
+        webp[25] = (byte) 0x02;
+        webp[27] = (byte) 0xDF;
+        webp[28] = (byte) 0x01;
+        Path file = dir.resolve("probe.webp");
+        Files.write(file, webp);
+
+        ImageStorageService.ImageInfo info = ImageStorageService.probe(file);
+
+        Assertions.assertEquals("image/webp", info.contentType());
+        Assertions.assertEquals(640, info.width());
+        Assertions.assertEquals(480, info.height());
+    }
+}
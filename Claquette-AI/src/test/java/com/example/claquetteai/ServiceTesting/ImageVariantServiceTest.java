@@ -0,0 +1,91 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Model.StoredImageVariant;
+import com.example.claquetteai.Repository.StoredImageRepository;
+import com.example.claquetteai.Repository.StoredImageVariantRepository;
+import com.example.claquetteai.Service.ImageStorageService;
+import com.example.claquetteai.Service.ImageVariantService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ImageVariantServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    StoredImageRepository storedImageRepository;
+    @Mock
+    StoredImageVariantRepository storedImageVariantRepository;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ImageStorageService imageStorageService;
+    ImageVariantService imageVariantService;
+
+    @BeforeEach
+    void setUp() {
+        imageStorageService = new ImageStorageService(storedImageRepository, transactionManager, dir.toString());
+        imageVariantService = new ImageVariantService(storedImageVariantRepository, imageStorageService,
+                transactionManager, List.of(512, 128, 256));
+    }
+
+    @Test
+    public void requestedSizeIsRoundedUpToAVariantTest() {
+        Assertions.assertEquals(128, imageVariantService.sizeFor(100));
+        Assertions.assertEquals(256, imageVariantService.sizeFor(256));
+        Assertions.assertEquals(512, imageVariantService.sizeFor(300));
+        Assertions.assertNull(imageVariantService.sizeFor(1024));
+        Assertions.assertNull(imageVariantService.sizeFor(null));
+    }
+
+    @Test
+    public void largePosterIsServedAsASmallJpegTest() throws Exception {
+        when(storedImageRepository.saveAndFlush(any(StoredImage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(1024, 768, BufferedImage.TYPE_INT_RGB), "png", png);
+        StoredImage original = imageStorageService.store(png.toByteArray(), null);
+
+        StoredImage thumbnail = imageVariantService.variant(original, 200);
+
+        Assertions.assertNotSame(original, thumbnail);
+        Assertions.assertEquals("image/jpeg", thumbnail.getContentType());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(
+                imageStorageService.open(thumbnail).getContentAsByteArray()));
+        Assertions.assertEquals(256, decoded.getWidth());
+        Assertions.assertEquals(192, decoded.getHeight());
+        verify(storedImageVariantRepository).saveAndFlush(any(StoredImageVariant.class));
+    }
+
+    @Test
+    public void smallImageIsNeverScaledUpTest() throws Exception {
+        when(storedImageRepository.saveAndFlush(any(StoredImage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(100, 80, BufferedImage.TYPE_INT_ARGB), "png", png);
+        StoredImage original = imageStorageService.store(png.toByteArray(), null);
+
+        Assertions.assertSame(original, imageVariantService.variant(original, 128));
+        // No size asked for, or larger than every variant: the original as it is
+        Assertions.assertSame(original, imageVariantService.variant(original, null));
+        Assertions.assertSame(original, imageVariantService.variant(original, 2048));
+        verify(storedImageRepository, times(1)).saveAndFlush(any(StoredImage.class));
+    }
+}
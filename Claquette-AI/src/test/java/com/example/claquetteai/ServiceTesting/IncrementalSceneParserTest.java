@@ -0,0 +1,100 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Service.IncrementalSceneParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IncrementalSceneParserTest {
+
+    private static final String EPISODE_JSON = """
+            ```json
+            {"episode": {"episode": 1, "title": "البداية", "summary": "ملخص",
+              "scenes": [
+                {"slug": "INT. بيت - ليل", "action": "يدخل سالم",
+                 "dialogue": [{"character": "سالم", "line": "السلام عليكم"}, {"character": "نورة", "line": "وعليكم السلام", "aside": "بهدوء"}],
+                 "turning_point": "مفاجأة"},
+                {"slug": "EXT. شارع - نهار", "action": "مطاردة", "dialogue": []}
+              ],
+              "climax": "ذروة"}}
+            ```
+            """;
+
+    @Test
+    public void emitsEachSceneAsItClosesTest() {
+        List<IncrementalSceneParser.ParsedScene> scenes = new ArrayList<>();
+        IncrementalSceneParser parser = new IncrementalSceneParser(scenes::add);
+
+        String firstScene = "\"turning_point\": \"مفاجأة\"}";
+        int firstSceneEnd = EPISODE_JSON.indexOf(firstScene) + firstScene.length();
+
+        // Feed in small chunks, like SSE deltas
+        feedInChunks(parser, EPISODE_JSON.substring(0, firstSceneEnd));
+        Assertions.assertEquals(1, scenes.size());
+
+        feedInChunks(parser, EPISODE_JSON.substring(firstSceneEnd));
+        parser.finish();
+
+        Assertions.assertTrue(parser.isComplete());
+        Assertions.assertEquals(2, scenes.size());
+        Assertions.assertEquals("البداية", parser.getTitle());
+        Assertions.assertEquals("INT. بيت - ليل", scenes.get(0).getSlug());
+        Assertions.assertEquals("مفاجأة", scenes.get(0).getTurningPoint());
+        Assertions.assertEquals(2, scenes.get(0).getDialogue().size());
+        Assertions.assertEquals("بهدوء", scenes.get(0).getDialogue().get(1).getAside());
+        Assertions.assertTrue(scenes.get(1).getDialogue().isEmpty());
+    }
+
+    @Test
+    public void truncatedResponseKeepsCompletedScenesTest() {
+        List<IncrementalSceneParser.ParsedScene> scenes = new ArrayList<>();
+        IncrementalSceneParser parser = new IncrementalSceneParser(scenes::add);
+
+        parser.feed(EPISODE_JSON.substring(0, EPISODE_JSON.indexOf("مطاردة")));
+
+        RuntimeException ex = Assertions.assertThrows(RuntimeException.class, parser::finish);
+        Assertions.assertTrue(ex.getMessage().contains("truncated"));
+        Assertions.assertEquals(1, scenes.size());
+    }
+
+    @Test
+    public void salvageKeepsCompletedScenesAndDropsTheTailTest() {
+        List<IncrementalSceneParser.ParsedScene> scenes = new ArrayList<>();
+        String truncated = EPISODE_JSON.substring(0, EPISODE_JSON.indexOf("مطاردة"));
+
+        IncrementalSceneParser parser = IncrementalSceneParser.parse(truncated, scenes::add, true);
+
+        Assertions.assertTrue(parser.isTruncated());
+        Assertions.assertFalse(parser.isComplete());
+        Assertions.assertEquals("البداية", parser.getTitle());
+        Assertions.assertEquals(1, scenes.size());
+        Assertions.assertEquals("INT. بيت - ليل", scenes.get(0).getSlug());
+
+        IncrementalSceneParser streamed = new IncrementalSceneParser(parsed -> { });
+        feedInChunks(streamed, truncated);
+        streamed.finish(true);
+        Assertions.assertTrue(streamed.isTruncated());
+        Assertions.assertEquals(1, streamed.getSceneCount());
+    }
+
+    @Test
+    public void firstEntryOfEpisodesArrayTest() {
+        List<IncrementalSceneParser.ParsedScene> scenes = new ArrayList<>();
+        IncrementalSceneParser parser = new IncrementalSceneParser(scenes::add);
+
+        parser.feed("{\"episodes\": [{\"title\": \"أ\", \"scenes\": [{\"slug\": \"s1\"}]}, {\"title\": \"ب\", \"scenes\": [{\"slug\": \"s2\"}]}]}");
+        parser.finish();
+
+        Assertions.assertEquals("أ", parser.getTitle());
+        Assertions.assertEquals(1, scenes.size());
+        Assertions.assertEquals("s1", scenes.get(0).getSlug());
+    }
+
+    private void feedInChunks(IncrementalSceneParser parser, String text) {
+        for (int i = 0; i < text.length(); i += 7) {
+            parser.feed(text.substring(i, Math.min(i + 7, text.length())));
+        }
+    }
+}
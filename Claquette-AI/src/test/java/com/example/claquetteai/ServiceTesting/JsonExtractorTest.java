@@ -0,0 +1,121 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.Model.*;
+import com.example.claquetteai.Service.JsonExtractor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+public class JsonExtractorTest {
+
+    JsonExtractor jsonExtractor = new JsonExtractor(new SimpleMeterRegistry());
+    Project project;
+    FilmCharacters sara;
+
+    @BeforeEach
+    void setUp() {
+        sara = new FilmCharacters();
+        sara.setId(1);
+        sara.setName("سارة");
+        project = new Project();
+        project.setTitle("Title");
+        project.setDescription("description");
+        project.setCharacters(Set.of(sara));
+    }
+
+    @Test
+    public void extractsFirstEpisodeFromFencedResponseTest() throws Exception {
+        String json = """
+                ```json
+                {"episodes": [
+                  {"title": "البداية", "summary": "ملخص", "duration_minutes": "45",
+                   "scenes": [
+                     {"slug": "INT. بيت", "action": "تدخل", "dialogue": [{"character": "سارة", "line": "مرحبا"}]},
+                     {"slug": "EXT. شارع", "action": "تمشي", "dialogue": [], "turning_point": "قرار"}
+                   ]},
+                  {"title": "الثانية", "scenes": [{"slug": "ignored"}]}
+                ]}
+                ```""";
+
+        Episode episode = jsonExtractor.extractEpisodeWithScenes(json, project, 3);
+
+        Assertions.assertEquals("البداية", episode.getTitle());
+        Assertions.assertEquals("ملخص", episode.getSummary());
+        Assertions.assertEquals(45, episode.getDurationMinutes());
+        Assertions.assertEquals(3, episode.getEpisodeNumber());
+        List<Scene> scenes = episode.getScenes().stream().sorted(Comparator.comparing(Scene::getSceneNumber)).toList();
+        Assertions.assertEquals(2, scenes.size());
+        Assertions.assertEquals("سارة: مرحبا", scenes.get(0).getDialogue());
+        Assertions.assertEquals(Set.of(sara), scenes.get(0).getCharacters());
+        Assertions.assertTrue(scenes.get(1).getDepartmentNotes().contains("Turning: قرار"));
+    }
+
+    @Test
+    public void filmWithoutDetailsFallsBackToProjectTest() throws Exception {
+        Film film = jsonExtractor.extractFilmWithScenes("{\"film\": {\"scenes\": [{\"slug\": \"INT.\"}]}}", project);
+
+        Assertions.assertEquals("description", film.getSummary());
+        Assertions.assertEquals(1, film.getScenes().size());
+    }
+
+    @Test
+    public void truncatedResponseIsReportedAsTruncatedTest() {
+        String json = "{\"episode\": {\"title\": \"t\", \"scenes\": [{\"slug\": \"INT. بيت\", \"action\": \"تدخ";
+
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+                () -> jsonExtractor.extractEpisodeWithScenes(json, project, 1));
+
+        Assertions.assertTrue(e.getMessage().contains("truncated"));
+    }
+
+    @Test
+    public void castingReadsMixedValueTypesTest() throws Exception {
+        String json = """
+                Here you go:
+                {"notes": {"ignored": [1, 2]},
+                 "casting": [
+                   {"character": "سارة", "suggestions": [
+                     {"actor": "A", "why": "fits", "match_percent": "85%", "age": 31.0, "profile": null},
+                     {"actor": "B", "match_percent": 70, "age": "40 سنة", "extra": {"x": 1}}
+                   ]},
+                   {"character": "Unknown", "suggestions": []}
+                 ]}""";
+
+        Set<CastingRecommendation> casting = jsonExtractor.extractCasting(json, project);
+
+        List<CastingRecommendation> byPriority = casting.stream()
+                .sorted(Comparator.comparing(CastingRecommendation::getPriority)).toList();
+        Assertions.assertEquals(2, byPriority.size());
+        Assertions.assertEquals("A", byPriority.get(0).getRecommendedActorName());
+        Assertions.assertEquals(0.85, byPriority.get(0).getMatchScore(), 0.0001);
+        Assertions.assertEquals(31, byPriority.get(0).getAge());
+        Assertions.assertEquals("No profile available", byPriority.get(0).getProfile());
+        Assertions.assertEquals("No reasoning provided", byPriority.get(1).getReasoning());
+        Assertions.assertEquals(40, byPriority.get(1).getAge());
+        Assertions.assertEquals(sara, byPriority.get(1).getCharacter());
+    }
+
+    @Test
+    public void charactersAreBoundToTypedEntriesTest() throws Exception {
+        String json = """
+                {"characters": [
+                  {"name": "سارة", "age": 28, "role": "بطلة", "traits": ["ذكية", "عنيدة"], "backstory": "ماضٍ",
+                   "relationships": [], "goal": "هدف", "obstacle": "عقبة", "arc": "تحول", "voice_notes": "هادئة", "extra": 1},
+                  {"name": "سارة", "age": 28},
+                  {"name": "خالد", "age": 40,},
+                ]}""";
+
+        Set<FilmCharacters> characters = jsonExtractor.extractCharacters(json, project);
+
+        Assertions.assertEquals(2, characters.size());
+        FilmCharacters first = characters.stream().filter(c -> c.getName().equals("سارة")).findFirst().orElseThrow();
+        Assertions.assertEquals("ذكية | عنيدة", first.getPersonalityTraits());
+        Assertions.assertEquals("تحول | ملاحظات الصوت: هادئة", first.getCharacterArc());
+        Assertions.assertEquals(project, first.getProject());
+    }
+}
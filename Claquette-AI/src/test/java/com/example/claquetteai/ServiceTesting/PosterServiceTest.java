@@ -0,0 +1,117 @@
+package com.example.claquetteai.ServiceTesting;
+
+import com.example.claquetteai.DTO.PosterStatusDTOOUT;
+import com.example.claquetteai.Model.Company;
+import com.example.claquetteai.Model.Project;
+import com.example.claquetteai.Model.StoredImage;
+import com.example.claquetteai.Model.User;
+import com.example.claquetteai.Repository.ProjectRepository;
+import com.example.claquetteai.Service.AiClientService;
+import com.example.claquetteai.Service.ImageStorageService;
+import com.example.claquetteai.Service.ImageVariantService;
+import com.example.claquetteai.Service.PosterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PosterServiceTest {
+
+    @Mock
+    ProjectRepository projectRepository;
+    @Mock
+    AiClientService aiClientService;
+    @Mock
+    ImageStorageService imageStorageService;
+    @Mock
+    ImageVariantService imageVariantService;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ThreadPoolTaskExecutor posterExecutor;
+    PosterService posterService;
+    Project project;
+
+    @BeforeEach
+    void setUp() {
+        posterExecutor = new ThreadPoolTaskExecutor();
+        posterExecutor.setCorePoolSize(2);
+        posterExecutor.initialize();
+        posterService = new PosterService(projectRepository, aiClientService, imageStorageService, imageVariantService,
+                posterExecutor, transactionManager);
+
+        User user = new User();
+        user.setId(1);
+        Company company = new Company();
+        company.setId(5);
+        company.setUser(user);
+        project = new Project();
+        project.setId(10);
+        project.setDescription("قصة عائلة في الرياض");
+        project.setCompany(company);
+    }
+
+    @AfterEach
+    void tearDown() {
+        posterExecutor.shutdown();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneCallTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StoredImage image = new StoredImage();
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return image;
+        }).when(aiClientService).generatePhoto(anyString(), any(), any());
+
+        CompletableFuture<StoredImage> first = posterService.render(5, "قصة عائلة في الرياض");
+        CompletableFuture<StoredImage> second = posterService.render(5, "  قصة عائلة في الرياض ");
+        CompletableFuture<StoredImage> otherCompany = posterService.render(6, "قصة عائلة في الرياض");
+        release.countDown();
+
+        Assertions.assertSame(first, second);
+        Assertions.assertSame(image, second.get(5, TimeUnit.SECONDS));
+        otherCompany.get(5, TimeUnit.SECONDS);
+        verify(aiClientService, times(2)).generatePhoto(anyString(), any(), any());
+    }
+
+    @Test
+    public void descriptionWithAPosterIsNotGeneratedAgainTest() throws Exception {
+        StoredImage existing = new StoredImage();
+        when(projectRepository.findProjectById(10)).thenReturn(project);
+        when(projectRepository.claimPoster(eq(10), any())).thenReturn(1);
+        when(projectRepository.findPostersByPrompt(5, PosterService.promptKey(project.getDescription()))).thenReturn(List.of(existing));
+
+        posterService.submit(1, 10, false);
+
+        verify(projectRepository).completePoster(10, existing, PosterService.promptKey(project.getDescription()));
+        verify(aiClientService, never()).generatePhoto(anyString(), any(), any());
+    }
+
+    @Test
+    public void requestWhileGeneratingOnlyReportsStatusTest() throws Exception {
+        project.setPosterStatus("PENDING");
+        when(projectRepository.findProjectById(10)).thenReturn(project);
+        when(projectRepository.claimPoster(eq(10), any())).thenReturn(0);
+
+        PosterStatusDTOOUT status = posterService.submit(1, 10, false);
+
+        Assertions.assertEquals("PENDING", status.getStatus());
+        verify(aiClientService, never()).generatePhoto(anyString(), any(), any());
+    }
+}